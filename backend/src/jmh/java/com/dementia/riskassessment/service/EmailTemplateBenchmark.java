@@ -0,0 +1,153 @@
+package com.dementia.riskassessment.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the assessment results body through the precompiled template, the way EmailService
+ * does, against the String.format call it replaced. Run with:
+ * mvn -P jmh compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+    // The assessment results body as EmailService built it before the templates
+    private static final String RESULTS_FORMAT =
+        "<!DOCTYPE html>" +
+        "<html>" +
+        "<head>" +
+        "<meta charset='UTF-8'>" +
+        "<style>" +
+        "  body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; background-color: #f4f4f4; margin: 0; padding: 0; }" +
+        "  .container { max-width: 600px; margin: 0 auto; background-color: #ffffff; }" +
+        "  .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; }" +
+        "  .header h1 { margin: 0; font-size: 28px; font-weight: 600; }" +
+        "  .content { padding: 40px 30px; }" +
+        "  .greeting { font-size: 18px; color: #333; margin-bottom: 20px; }" +
+        "  .message { font-size: 16px; color: #555; margin-bottom: 30px; }" +
+        "  .results-box { background-color: #f8f9fa; border-radius: 12px; padding: 25px; margin: 25px 0; border-left: 4px solid %s; }" +
+        "  .risk-level { font-size: 24px; font-weight: 700; color: %s; margin: 15px 0; }" +
+        "  .details-table { width: 100%%; margin: 20px 0; border-collapse: collapse; }" +
+        "  .details-table td { padding: 10px; border-bottom: 1px solid #e9ecef; }" +
+        "  .details-table td:first-child { font-weight: 600; color: #555; width: 50%%; }" +
+        "  .details-table td:last-child { color: #333; }" +
+        "  .recommendation-box { background-color: #e7f3ff; border-left: 4px solid #2196F3; padding: 20px; margin: 25px 0; border-radius: 4px; }" +
+        "  .recommendation-title { font-weight: 600; color: #1976D2; margin-bottom: 10px; font-size: 16px; }" +
+        "  .disclaimer { background-color: #fff3cd; border-left: 4px solid #ffc107; padding: 15px; margin: 20px 0; border-radius: 4px; font-size: 14px; color: #856404; }" +
+        "  .footer { background-color: #f8f9fa; padding: 25px 30px; text-align: center; border-top: 1px solid #e9ecef; }" +
+        "  .footer-text { color: #666; font-size: 14px; margin: 5px 0; }" +
+        "  .signature { color: #667eea; font-weight: 600; font-size: 16px; margin-top: 10px; }" +
+        "</style>" +
+        "</head>" +
+        "<body>" +
+        "  <div class='container'>" +
+        "    <div class='header'>" +
+        "      <h1>📊 Assessment Results</h1>" +
+        "    </div>" +
+        "    <div class='content'>" +
+        "      <div class='greeting'>Hello %s %s,</div>" +
+        "      <div class='message'>" +
+        "        Thank you for completing your cognitive risk assessment with Cortexa AI. Below are your detailed results." +
+        "      </div>" +
+        "      <div class='results-box'>" +
+        "        <div style='font-weight: 600; color: #555; margin-bottom: 10px;'>Risk Level</div>" +
+        "        <div class='risk-level'>%s %s</div>" +
+        "        <table class='details-table'>" +
+        "          <tr><td>Age</td><td>%d years</td></tr>" +
+        "          <tr><td>Reaction Time</td><td>%.2f ms</td></tr>" +
+        "          <tr><td>Memory Score</td><td>%.2f</td></tr>" +
+        "          <tr><td>Speech Pause</td><td>%.2f ms</td></tr>" +
+        "          <tr><td>Word Repetition Rate</td><td>%.2f</td></tr>" +
+        "          <tr><td>Task Error Rate</td><td>%.2f</td></tr>" +
+        "          <tr><td>Sleep Hours</td><td>%.2f hours</td></tr>" +
+        "        </table>" +
+        "      </div>" +
+        "      <div class='recommendation-box'>" +
+        "        <div class='recommendation-title'>💡 Recommendation</div>" +
+        "        <div style='color: #333;'>%s</div>" +
+        "      </div>" +
+        "      <div class='disclaimer'>" +
+        "        <strong>⚠️ Important Disclaimer:</strong> This assessment is a screening tool and not a medical diagnosis. Please consult with a healthcare professional for a comprehensive evaluation." +
+        "      </div>" +
+        "    </div>" +
+        "    <div class='footer'>" +
+        "      <div class='footer-text'>Need help? Contact our support team.</div>" +
+        "      <div class='signature'>Best regards,<br>Team Cortexa</div>" +
+        "    </div>" +
+        "  </div>" +
+        "</body>" +
+        "</html>";
+
+    private final String riskColor = "#ffc107";
+    private final String firstName = "Jane";
+    private final String lastName = "O'Neil";
+    private final String riskIcon = "⚠️";
+    private final String riskLevel = "Medium Risk";
+    private final String recommendation = "Consider a follow-up assessment with your doctor within 3 months.";
+    private final Integer age = 67;
+    private final Double reactionTime = 512.347;
+    private final Double memoryScore = 21.5;
+    private final Double speechPause = 840.0;
+    private final Double wordRepetition = 0.125;
+    private final Double taskError = 0.0625;
+    private final Double sleepHours = 6.75;
+
+    private EmailTemplate template;
+
+    @Setup
+    public void setup() throws IOException {
+        String name = "templates/email/" + EmailTemplates.ASSESSMENT_RESULTS + ".html";
+        try (InputStream in = EmailTemplateBenchmark.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Template " + name + " is not on the classpath");
+            }
+            template = EmailTemplate.parse(EmailTemplates.ASSESSMENT_RESULTS,
+                new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public String template() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("riskColor", riskColor);
+        values.put("firstName", firstName);
+        values.put("lastName", lastName);
+        values.put("riskIcon", riskIcon);
+        values.put("riskLevel", riskLevel);
+        values.put("age", age);
+        values.put("reactionTime", EmailService.twoDecimals(reactionTime));
+        values.put("memoryScore", EmailService.twoDecimals(memoryScore));
+        values.put("speechPause", EmailService.twoDecimals(speechPause));
+        values.put("wordRepetition", EmailService.twoDecimals(wordRepetition));
+        values.put("taskError", EmailService.twoDecimals(taskError));
+        values.put("sleepHours", EmailService.twoDecimals(sleepHours));
+        values.put("recommendation", recommendation);
+        return template.render(values);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        return String.format(RESULTS_FORMAT, riskColor, riskColor, firstName, lastName, riskIcon, riskLevel, age,
+            reactionTime, memoryScore, speechPause, wordRepetition, taskError, sleepHours, recommendation);
+    }
+}
@@ -0,0 +1,90 @@
+package com.dementia.riskassessment.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * HTTP transport for calls to the ML service: a bounded keep-alive connection pool with
+ * connect, read and overall deadlines, or the JDK client when HTTP/2 is enabled.
+ */
+@Configuration
+public class MLHttpClientConfig {
+    
+    @Bean
+    public RestTemplate mlRestTemplate(
+            @Value("${ml.service.http.max-connections:20}") int maxConnections,
+            @Value("${ml.service.http.connect-timeout-ms:1000}") long connectTimeoutMs,
+            @Value("${ml.service.http.read-timeout-ms:5000}") long readTimeoutMs,
+            @Value("${ml.service.http.deadline-ms:8000}") long deadlineMs,
+            @Value("${ml.service.http.pool-acquire-timeout-ms:1000}") long poolAcquireTimeoutMs,
+            @Value("${ml.service.http.keep-alive-ms:30000}") long keepAliveMs,
+            @Value("${ml.service.http.http2:false}") boolean http2,
+            MeterRegistry meterRegistry) {
+        
+        if (http2) {
+            // The JDK client multiplexes requests over one HTTP/2 connection per replica.
+            // Its request timeout covers the whole exchange, so it doubles as the deadline.
+            HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(Duration.ofMillis(Math.min(readTimeoutMs, deadlineMs)));
+            System.out.println("ML service transport: JDK HttpClient (HTTP/2)");
+            return new RestTemplate(requestFactory);
+        }
+        
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnections)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .build())
+            .build();
+        
+        CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolAcquireTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .build())
+            .setKeepAliveStrategy((response, context) -> TimeValue.ofMilliseconds(keepAliveMs))
+            .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+            .evictExpiredConnections()
+            .build();
+        
+        Gauge.builder("ml.http.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+            .description("ML service connections currently in use")
+            .register(meterRegistry);
+        Gauge.builder("ml.http.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+            .description("Idle keep-alive connections to the ML service")
+            .register(meterRegistry);
+        Gauge.builder("ml.http.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+            .description("Requests waiting for a pooled connection")
+            .register(meterRegistry);
+        Gauge.builder("ml.http.pool.max", connectionManager, cm -> cm.getTotalStats().getMax())
+            .description("Maximum ML service connections")
+            .register(meterRegistry);
+        
+        System.out.println("ML service transport: pooled HTTP/1.1, max " + maxConnections + " connections, deadline "
+            + deadlineMs + "ms");
+        return new RestTemplate(new DeadlineHttpRequestFactory(httpClient, deadlineMs));
+    }
+}
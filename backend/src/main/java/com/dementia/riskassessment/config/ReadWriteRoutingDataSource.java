@@ -0,0 +1,20 @@
+package com.dementia.riskassessment.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends connections requested inside read-only transactions to the read pool and everything
+ * else to the write pool. Must sit behind a LazyConnectionDataSourceProxy so the lookup happens
+ * on first statement, after the transaction's read-only flag has been bound.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String READ = "read";
+    static final String WRITE = "write";
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READ : WRITE;
+    }
+}
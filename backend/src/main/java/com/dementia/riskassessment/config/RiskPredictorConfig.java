@@ -0,0 +1,242 @@
+package com.dementia.riskassessment.config;
+
+import com.dementia.riskassessment.service.AdaptiveConcurrencyLimiter;
+import com.dementia.riskassessment.service.CachingRiskPredictor;
+import com.dementia.riskassessment.service.CandidateModelClient;
+import com.dementia.riskassessment.service.CircuitBreakingRiskPredictor;
+import com.dementia.riskassessment.service.ConcurrencyLimitedRiskPredictor;
+import com.dementia.riskassessment.service.FallbackRiskScorer;
+import com.dementia.riskassessment.service.LocalRiskPredictor;
+import com.dementia.riskassessment.service.MLCircuitBreaker;
+import com.dementia.riskassessment.service.MLServiceClient;
+import com.dementia.riskassessment.service.ModelEvaluationRecorder;
+import com.dementia.riskassessment.service.PredictionCache;
+import com.dementia.riskassessment.service.RandomForestModel;
+import com.dementia.riskassessment.service.RiskPredictor;
+import com.dementia.riskassessment.service.ShadowingRiskPredictor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class RiskPredictorConfig {
+
+    @Value("${ml.predictor:http}")
+    private String predictor;
+
+    @Value("${ml.local.model-path:file:../ml-service/forest_model.json}")
+    private String modelPath;
+
+    // Adaptive (AIMD) limit on concurrent ML service calls (HTTP predictor only)
+    @Value("${ml.limiter.enabled:true}")
+    private boolean limiterEnabled;
+
+    @Value("${ml.limiter.initial-limit:10}")
+    private int limiterInitialLimit;
+
+    @Value("${ml.limiter.min-limit:2}")
+    private int limiterMinLimit;
+
+    @Value("${ml.limiter.max-limit:20}")
+    private int limiterMaxLimit;
+
+    @Value("${ml.limiter.latency-tolerance:2.0}")
+    private double limiterTolerance;
+
+    @Value("${ml.limiter.backoff-ratio:0.9}")
+    private double limiterBackoffRatio;
+
+    @Value("${ml.limiter.queue-timeout-ms:50}")
+    private long limiterQueueTimeoutMs;
+
+    @Value("${ml.limiter.max-queued:100}")
+    private int limiterMaxQueued;
+
+    // Circuit breaker around the ML service (HTTP predictor only)
+    @Value("${ml.circuit-breaker.enabled:true}")
+    private boolean breakerEnabled;
+
+    @Value("${ml.circuit-breaker.window-size:50}")
+    private int breakerWindowSize;
+
+    @Value("${ml.circuit-breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+
+    @Value("${ml.circuit-breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRateThreshold;
+
+    @Value("${ml.circuit-breaker.open-duration-ms:10000}")
+    private long breakerOpenDurationMs;
+
+    @Value("${ml.circuit-breaker.half-open-calls:3}")
+    private int breakerHalfOpenCalls;
+
+    @Value("${ml.circuit-breaker.max-retries:1}")
+    private int breakerMaxRetries;
+
+    @Value("${ml.circuit-breaker.retry-ratio:0.1}")
+    private double breakerRetryRatio;
+
+    @Value("${ml.circuit-breaker.fallback-enabled:true}")
+    private boolean fallbackEnabled;
+
+    @Value("${ml.cache.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${ml.cache.max-entries:65536}")
+    private int cacheMaxEntries;
+
+    @Value("${ml.cache.ttl-seconds:600}")
+    private long cacheTtlSeconds;
+
+    // Bucket width per feature: age, reaction_time_ms, memory_score, speech_pause_ms,
+    // word_repetition_rate, task_error_rate, sleep_hours
+    @Value("${ml.cache.steps:1,10,1,10,0.01,0.01,0.25}")
+    private double[] cacheSteps;
+
+    // Candidate model evaluation: shadow mirrors a fraction of requests off the request thread,
+    // canary answers a fraction of live requests with the candidate
+    @Value("${ml.candidate.url:}")
+    private String candidateUrl;
+
+    @Value("${ml.candidate.shadow-fraction:0.0}")
+    private double shadowFraction;
+
+    @Value("${ml.candidate.canary-fraction:0.0}")
+    private double canaryFraction;
+
+    @Value("${ml.candidate.mirror-threads:2}")
+    private int mirrorThreads;
+
+    @Value("${ml.candidate.mirror-queue:64}")
+    private int mirrorQueue;
+
+    @Value("${ml.candidate.samples:1024}")
+    private int evaluationSamples;
+
+    @Bean
+    @ConditionalOnExpression("!'${ml.candidate.url:}'.isEmpty()")
+    public ModelEvaluationRecorder modelEvaluationRecorder(MeterRegistry meterRegistry) {
+        ModelEvaluationRecorder recorder = new ModelEvaluationRecorder(evaluationSamples);
+        Gauge.builder("ml.candidate.agreement", recorder, ModelEvaluationRecorder::getAgreementRate)
+            .description("Share of mirrored requests where the candidate agreed with the primary model")
+            .register(meterRegistry);
+        return recorder;
+    }
+
+    @Bean
+    @Primary
+    public RiskPredictor riskPredictor(MLServiceClient mlServiceClient, ResourceLoader resourceLoader,
+                                       MeterRegistry meterRegistry, RestTemplate mlRestTemplate,
+                                       ObjectProvider<ModelEvaluationRecorder> evaluationRecorder) throws IOException {
+        RiskPredictor riskPredictor = basePredictor(mlServiceClient, resourceLoader);
+        boolean remote = riskPredictor == mlServiceClient;
+
+        if (remote && limiterEnabled) {
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(limiterInitialLimit, limiterMinLimit,
+                limiterMaxLimit, limiterTolerance, limiterBackoffRatio, limiterQueueTimeoutMs, limiterMaxQueued);
+            Gauge.builder("ml.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit on concurrent ML calls")
+                .register(meterRegistry);
+            Gauge.builder("ml.limiter.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .register(meterRegistry);
+            Gauge.builder("ml.limiter.queued", limiter, AdaptiveConcurrencyLimiter::getQueued)
+                .register(meterRegistry);
+            FunctionCounter.builder("ml.limiter.rejections", limiter, AdaptiveConcurrencyLimiter::getRejections)
+                .description("ML calls rejected as overloaded")
+                .register(meterRegistry);
+            riskPredictor = new ConcurrencyLimitedRiskPredictor(riskPredictor, limiter);
+        }
+
+        if (remote && breakerEnabled) {
+            MLCircuitBreaker breaker = new MLCircuitBreaker(breakerWindowSize, breakerMinimumCalls,
+                breakerFailureRateThreshold, breakerOpenDurationMs, breakerHalfOpenCalls, breakerRetryRatio, 10.0);
+            Gauge.builder("ml.circuit.state", breaker, b -> b.getState().ordinal())
+                .description("ML circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+            Gauge.builder("ml.circuit.failure.rate", breaker, MLCircuitBreaker::getFailureRate)
+                .register(meterRegistry);
+            RiskPredictor fallback = fallbackEnabled ? new FallbackRiskScorer(loadLocalModel(resourceLoader)) : null;
+            riskPredictor = new CircuitBreakingRiskPredictor(riskPredictor, breaker, fallback, breakerMaxRetries);
+        }
+
+        if (cacheEnabled) {
+            PredictionCache cache = new PredictionCache(cacheMaxEntries, TimeUnit.SECONDS.toNanos(cacheTtlSeconds));
+            FunctionCounter.builder("ml.cache.hits", cache, PredictionCache::getHits)
+                .description("Predictions answered from the cache")
+                .register(meterRegistry);
+            FunctionCounter.builder("ml.cache.misses", cache, PredictionCache::getMisses)
+                .description("Predictions that had to be scored")
+                .register(meterRegistry);
+            FunctionCounter.builder("ml.cache.evictions", cache, PredictionCache::getEvictions)
+                .description("Cache entries evicted for capacity or TTL")
+                .register(meterRegistry);
+            System.out.println("Prediction cache enabled: " + cache.getCapacity() + " entries, TTL " + cacheTtlSeconds + "s");
+            riskPredictor = new CachingRiskPredictor(riskPredictor, cache, cacheSteps);
+        }
+
+        ModelEvaluationRecorder recorder = evaluationRecorder.getIfAvailable();
+        if (recorder != null) {
+            // Outermost, so canary traffic bypasses the primary's cache and breaker
+            ThreadPoolExecutor mirrorExecutor = new ThreadPoolExecutor(mirrorThreads, mirrorThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(mirrorQueue), runnable -> {
+                    Thread thread = new Thread(runnable, "ml-shadow");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            CandidateModelClient candidate = new CandidateModelClient(mlRestTemplate, candidateUrl);
+            System.out.println("Candidate model at " + candidate.getBaseUrl() + ": shadow " + shadowFraction
+                + ", canary " + canaryFraction);
+            riskPredictor = new ShadowingRiskPredictor(riskPredictor, candidate, recorder, mirrorExecutor,
+                shadowFraction, canaryFraction);
+        }
+
+        return riskPredictor;
+    }
+
+    private RiskPredictor basePredictor(MLServiceClient mlServiceClient, ResourceLoader resourceLoader) throws IOException {
+        if (!"local".equalsIgnoreCase(predictor)) {
+            System.out.println("Using ML service over HTTP for risk prediction");
+            return mlServiceClient;
+        }
+
+        // In-process scoring: the forest must be exported with ml-service/export_forest.py
+        Resource resource = resourceLoader.getResource(modelPath);
+        try (InputStream in = resource.getInputStream()) {
+            RandomForestModel model = RandomForestModel.load(in);
+            System.out.println("Using in-process random forest for risk prediction: " + model.getTreeCount()
+                + " trees, model version " + model.getVersion());
+            return new LocalRiskPredictor(model);
+        }
+    }
+
+    private LocalRiskPredictor loadLocalModel(ResourceLoader resourceLoader) {
+        // Optional for the fallback scorer, which uses its built-in rules without an exported forest
+        Resource resource = resourceLoader.getResource(modelPath);
+        if (!resource.exists()) {
+            System.out.println("No exported forest at " + modelPath + ", fallback scorer will use built-in rules");
+            return null;
+        }
+        try (InputStream in = resource.getInputStream()) {
+            return new LocalRiskPredictor(RandomForestModel.load(in));
+        } catch (IOException e) {
+            System.err.println("Failed to load exported forest for fallback scoring: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.dementia.riskassessment.controller;
 
 import com.dementia.riskassessment.dto.AssessmentHistoryDTO;
+import com.dementia.riskassessment.dto.AssessmentHistoryPage;
 import com.dementia.riskassessment.dto.AssessmentRequest;
 import com.dementia.riskassessment.dto.AssessmentResponse;
+import com.dementia.riskassessment.dto.AssessmentSummaryDTO;
 import com.dementia.riskassessment.service.AssessmentService;
+import com.dementia.riskassessment.service.MLOverloadedException;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -32,7 +35,15 @@ public class AssessmentController {
     public ResponseEntity<?> submitAssessment(@Valid @RequestBody AssessmentRequest request) {
         try {
             AssessmentResponse response = assessmentService.processAssessment(request);
+            if (response.getTicketId() != null) {
+                // Scoring deferred until the ML service is available again
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            }
             return ResponseEntity.ok(response);
+        } catch (MLOverloadedException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(errorResponse);
         } catch (Exception e) {
             Map<String, String> errorResponse = new HashMap<>();
             errorResponse.put("message", "An error occurred while processing the assessment: " + e.getMessage());
@@ -40,6 +51,17 @@ public class AssessmentController {
         }
     }
     
+    @GetMapping("/assessment/status/{ticketId}")
+    public ResponseEntity<?> getAssessmentStatus(@PathVariable String ticketId) {
+        AssessmentResponse response = assessmentService.getDeferredStatus(ticketId);
+        if (response == null) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Unknown assessment ticket: " + ticketId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        }
+        return ResponseEntity.ok(response);
+    }
+    
     @GetMapping("/assessment/history/{userId}")
     public ResponseEntity<?> getAssessmentHistory(@PathVariable Long userId) {
         try {
@@ -52,6 +74,82 @@ public class AssessmentController {
         }
     }
     
+    @GetMapping("/assessment/history/{userId}/page")
+    public ResponseEntity<?> getAssessmentHistoryPage(@PathVariable Long userId,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "20") int limit) {
+        try {
+            AssessmentHistoryPage page = assessmentService.getAssessmentHistoryPage(userId, cursor, Math.max(1, Math.min(limit, 100)));
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        } catch (Exception e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "An error occurred while fetching assessment history: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
+    @GetMapping("/assessment/summary/{userId}")
+    public ResponseEntity<?> getAssessmentSummary(@PathVariable Long userId) {
+        List<AssessmentSummaryDTO> summaries = assessmentService.getAssessmentSummaries(List.of(userId));
+        if (summaries.isEmpty()) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "No assessments found for user " + userId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        }
+        return ResponseEntity.ok(summaries.get(0));
+    }
+    
+    // Clinician overview: one summary per listed patient, in the order given
+    @GetMapping("/assessment/summary")
+    public ResponseEntity<?> getAssessmentSummaries(@RequestParam List<Long> userIds) {
+        if (userIds.size() > 1000) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "At most 1000 user IDs per request");
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        }
+        try {
+            return ResponseEntity.ok(assessmentService.getAssessmentSummaries(userIds));
+        } catch (Exception e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "An error occurred while fetching assessment summaries: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
+    @PostMapping("/assessment/summary/rebuild")
+    public ResponseEntity<?> rebuildAssessmentSummaries() {
+        try {
+            long start = System.currentTimeMillis();
+            int users = assessmentService.rebuildAssessmentSummaries();
+            Map<String, Object> response = new HashMap<>();
+            response.put("users", users);
+            response.put("durationMs", System.currentTimeMillis() - start);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "An error occurred while rebuilding assessment summaries: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
+    @PostMapping("/assessment/rescore")
+    public ResponseEntity<?> rescoreProvisionalAssessments(@RequestParam(defaultValue = "100") int batchSize) {
+        try {
+            int rescored = assessmentService.rescoreProvisionalAssessments(Math.max(1, Math.min(batchSize, 1000)));
+            Map<String, Object> response = new HashMap<>();
+            response.put("rescored", rescored);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "An error occurred while rescoring assessments: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, Object>> handleValidationExceptions(MethodArgumentNotValidException ex) {
         Map<String, String> errors = new HashMap<>();
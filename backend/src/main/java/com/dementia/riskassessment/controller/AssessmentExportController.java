@@ -0,0 +1,71 @@
+package com.dementia.riskassessment.controller;
+
+import com.dementia.riskassessment.service.AssessmentExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/assessment")
+@CrossOrigin(origins = "http://localhost:3000")
+public class AssessmentExportController {
+
+    private final AssessmentExportService exportService;
+
+    @Autowired
+    public AssessmentExportController(AssessmentExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    /**
+     * Streams assessments as NDJSON or CSV, optionally for one user and a [from, to) time range.
+     * With gzip=true the body is a gzip file (.ndjson.gz / .csv.gz).
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAssessments(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        AssessmentExportService.Format exportFormat;
+        try {
+            exportFormat = AssessmentExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported export format: " + format + " (use ndjson or csv)");
+        }
+        StreamingResponseBody body = exportService.openExport(exportFormat, userId, from, to, gzip);
+
+        String filename = "assessments" + (userId != null ? "-user-" + userId : "") + "." + exportFormat.getExtension()
+            + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+            .body(body);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException e) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON).body(errorResponse);
+    }
+
+    // Raised when max-concurrent exports are already streaming
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, String>> handleBusy(IllegalStateException e) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5")
+            .contentType(MediaType.APPLICATION_JSON).body(errorResponse);
+    }
+}
@@ -0,0 +1,76 @@
+package com.dementia.riskassessment.controller;
+
+import com.dementia.riskassessment.service.AssessmentImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+@RestController
+@RequestMapping("/api/assessment")
+@CrossOrigin(origins = "http://localhost:3000")
+public class AssessmentImportController {
+
+    private final AssessmentImportService importService;
+
+    @Autowired
+    public AssessmentImportController(AssessmentImportService importService) {
+        this.importService = importService;
+    }
+
+    /**
+     * Starts a bulk import from the raw request body (NDJSON, or CSV with a header row; gzip=true
+     * for a gzipped body). Returns 202 with the job; poll the Location URL for progress and errors.
+     * Form-encoded bodies are refused because the servlet container would consume them as parameters.
+     */
+    @PostMapping(value = "/import", consumes = "!application/x-www-form-urlencoded")
+    public ResponseEntity<?> importAssessments(@RequestParam(defaultValue = "ndjson") String format,
+                                               @RequestParam(defaultValue = "false") boolean gzip,
+                                               HttpServletRequest request) throws IOException {
+        AssessmentImportService.Format importFormat;
+        try {
+            importFormat = AssessmentImportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported import format: " + format + " (use ndjson or csv)");
+        }
+        InputStream body = gzip ? new GZIPInputStream(request.getInputStream(), 64 * 1024) : request.getInputStream();
+        AssessmentImportService.ImportJob job = importService.startImport(importFormat, body);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .header(HttpHeaders.LOCATION, "/api/assessment/import/" + job.getJobId())
+            .body(job);
+    }
+
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<?> getImportJob(@PathVariable String jobId) {
+        AssessmentImportService.ImportJob job = importService.getJob(jobId);
+        if (job == null) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Unknown import job: " + jobId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException e) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+    }
+
+    // Raised when max-concurrent imports are already running
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, String>> handleBusy(IllegalStateException e) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").body(errorResponse);
+    }
+}
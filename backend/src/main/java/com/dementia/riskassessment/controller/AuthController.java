@@ -1,6 +1,7 @@
 package com.dementia.riskassessment.controller;
 
 import com.dementia.riskassessment.dto.AuthResponse;
+import com.dementia.riskassessment.dto.EmailDeliveryRequest;
 import com.dementia.riskassessment.dto.LoginRequest;
 import com.dementia.riskassessment.dto.ResendVerificationRequest;
 import com.dementia.riskassessment.dto.SignupRequest;
@@ -97,6 +98,23 @@ public class AuthController {
         }
     }
     
+    @PutMapping("/email-delivery")
+    public ResponseEntity<?> updateEmailDelivery(@Valid @RequestBody EmailDeliveryRequest request) {
+        try {
+            AuthResponse response = authService.updateEmailDelivery(request);
+            if (response.isSuccess()) {
+                return ResponseEntity.ok(response);
+            } else {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+            }
+        } catch (Exception e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "An error occurred while updating email delivery: " + e.getMessage());
+            errorResponse.put("success", "false");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, String>> handleValidationExceptions(MethodArgumentNotValidException ex) {
         Map<String, String> errors = new HashMap<>();
@@ -0,0 +1,35 @@
+package com.dementia.riskassessment.controller;
+
+import com.dementia.riskassessment.service.ModelEvaluationRecorder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/ml")
+@CrossOrigin(origins = "http://localhost:3000")
+public class ModelEvaluationController {
+
+    private final ObjectProvider<ModelEvaluationRecorder> evaluationRecorder;
+
+    @Autowired
+    public ModelEvaluationController(ObjectProvider<ModelEvaluationRecorder> evaluationRecorder) {
+        this.evaluationRecorder = evaluationRecorder;
+    }
+
+    @GetMapping("/evaluation")
+    public ResponseEntity<?> getEvaluation(@RequestParam(defaultValue = "20") int recent) {
+        ModelEvaluationRecorder recorder = evaluationRecorder.getIfAvailable();
+        if (recorder == null) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Candidate model evaluation is not configured (set ml.candidate.url)");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        }
+        return ResponseEntity.ok(recorder.snapshot(Math.max(0, Math.min(recent, 200))));
+    }
+}
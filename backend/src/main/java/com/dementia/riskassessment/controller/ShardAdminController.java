@@ -0,0 +1,46 @@
+package com.dementia.riskassessment.controller;
+
+import com.dementia.riskassessment.repository.ShardedAssessmentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/shards")
+@CrossOrigin(origins = "http://localhost:3000")
+public class ShardAdminController {
+
+    private final ShardedAssessmentRepository shardedAssessmentRepository;
+
+    @Autowired
+    public ShardAdminController(ShardedAssessmentRepository shardedAssessmentRepository) {
+        this.shardedAssessmentRepository = shardedAssessmentRepository;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getShards() {
+        return ResponseEntity.ok(shardedAssessmentRepository.describe());
+    }
+
+    /**
+     * Moves half of the source shard's buckets to the target shard while the service stays online.
+     */
+    @PostMapping("/split")
+    public ResponseEntity<?> split(@RequestParam int source, @RequestParam int target) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(shardedAssessmentRepository.startSplit(source, target));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (IllegalStateException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
+        }
+    }
+}
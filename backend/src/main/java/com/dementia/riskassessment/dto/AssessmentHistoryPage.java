@@ -0,0 +1,33 @@
+package com.dementia.riskassessment.dto;
+
+import java.util.List;
+
+public class AssessmentHistoryPage {
+    private List<AssessmentHistoryDTO> items;
+    // Opaque cursor for the following page; null on the last page
+    private String nextCursor;
+    
+    public AssessmentHistoryPage() {
+    }
+    
+    public AssessmentHistoryPage(List<AssessmentHistoryDTO> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+    
+    public List<AssessmentHistoryDTO> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<AssessmentHistoryDTO> items) {
+        this.items = items;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,49 @@
+package com.dementia.riskassessment.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Columns selected by the history projection queries; no entities are loaded for read-only history.
+ */
+public class AssessmentHistoryRow {
+    private final Long id;
+    private final LocalDateTime timestamp;
+    private final Integer age;
+    private final String riskLabel;
+    private final String firstName;
+    private final String lastName;
+    
+    public AssessmentHistoryRow(Long id, LocalDateTime timestamp, Integer age, String riskLabel,
+                                String firstName, String lastName) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.age = age;
+        this.riskLabel = riskLabel;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+    
+    public Integer getAge() {
+        return age;
+    }
+    
+    public String getRiskLabel() {
+        return riskLabel;
+    }
+    
+    public String getFirstName() {
+        return firstName;
+    }
+    
+    public String getLastName() {
+        return lastName;
+    }
+}
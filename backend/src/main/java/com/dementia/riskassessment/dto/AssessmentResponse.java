@@ -3,6 +3,10 @@ package com.dementia.riskassessment.dto;
 public class AssessmentResponse {
     private String riskLevel;
     private String recommendation;
+    private boolean provisional;
+    // Set when scoring was deferred: poll /api/assessment/status/{ticketId}
+    private String ticketId;
+    private String status;
 
     public AssessmentResponse() {
     }
@@ -27,10 +31,28 @@ public class AssessmentResponse {
     public void setRecommendation(String recommendation) {
         this.recommendation = recommendation;
     }
-}
 
+    public boolean isProvisional() {
+        return provisional;
+    }
 
+    public void setProvisional(boolean provisional) {
+        this.provisional = provisional;
+    }
 
+    public String getTicketId() {
+        return ticketId;
+    }
 
+    public void setTicketId(String ticketId) {
+        this.ticketId = ticketId;
+    }
 
+    public String getStatus() {
+        return status;
+    }
 
+    public void setStatus(String status) {
+        this.status = status;
+    }
+}
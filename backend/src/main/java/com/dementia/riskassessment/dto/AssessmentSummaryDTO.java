@@ -0,0 +1,76 @@
+package com.dementia.riskassessment.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * A user's stored assessment summary: count, latest and previous risk level, their trend
+ * and per-feature mean and sample variance.
+ */
+public class AssessmentSummaryDTO {
+
+    public static class FeatureStats {
+        private final double mean;
+        private final double variance;
+
+        public FeatureStats(double mean, double variance) {
+            this.mean = mean;
+            this.variance = variance;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getVariance() {
+            return variance;
+        }
+    }
+
+    private final Long userId;
+    private final long assessmentCount;
+    private final LocalDateTime lastAssessmentAt;
+    private final String latestRiskLevel;
+    private final String previousRiskLevel;
+    private final String riskTrend;
+    private final Map<String, FeatureStats> features;
+
+    public AssessmentSummaryDTO(Long userId, long assessmentCount, LocalDateTime lastAssessmentAt, String latestRiskLevel,
+                                String previousRiskLevel, String riskTrend, Map<String, FeatureStats> features) {
+        this.userId = userId;
+        this.assessmentCount = assessmentCount;
+        this.lastAssessmentAt = lastAssessmentAt;
+        this.latestRiskLevel = latestRiskLevel;
+        this.previousRiskLevel = previousRiskLevel;
+        this.riskTrend = riskTrend;
+        this.features = features;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public long getAssessmentCount() {
+        return assessmentCount;
+    }
+
+    public LocalDateTime getLastAssessmentAt() {
+        return lastAssessmentAt;
+    }
+
+    public String getLatestRiskLevel() {
+        return latestRiskLevel;
+    }
+
+    public String getPreviousRiskLevel() {
+        return previousRiskLevel;
+    }
+
+    public String getRiskTrend() {
+        return riskTrend;
+    }
+
+    public Map<String, FeatureStats> getFeatures() {
+        return features;
+    }
+}
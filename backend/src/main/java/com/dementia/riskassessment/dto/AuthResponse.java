@@ -8,6 +8,7 @@ public class AuthResponse {
     private Integer age;
     private String gender;
     private String bloodGroup;
+    private String emailDelivery;
     private String message;
     private boolean success;
     
@@ -104,6 +105,12 @@ public class AuthResponse {
     public void setSuccess(boolean success) {
         this.success = success;
     }
+    
+    public String getEmailDelivery() {
+        return emailDelivery;
+    }
+    
+    public void setEmailDelivery(String emailDelivery) {
+        this.emailDelivery = emailDelivery;
+    }
 }
-
-
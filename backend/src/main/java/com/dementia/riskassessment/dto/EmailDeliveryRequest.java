@@ -0,0 +1,52 @@
+package com.dementia.riskassessment.dto;
+
+import com.dementia.riskassessment.entity.User;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+public class EmailDeliveryRequest {
+    
+    @NotBlank(message = "Email is required")
+    @Email(message = "Email must be valid")
+    private String email;
+    
+    @NotBlank(message = "Password is required")
+    private String password;
+    
+    @NotNull(message = "Email delivery is required (IMMEDIATE or DIGEST)")
+    private User.EmailDelivery emailDelivery;
+    
+    public EmailDeliveryRequest() {
+    }
+    
+    public EmailDeliveryRequest(String email, String password, User.EmailDelivery emailDelivery) {
+        this.email = email;
+        this.password = password;
+        this.emailDelivery = emailDelivery;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    public void setEmail(String email) {
+        this.email = email;
+    }
+    
+    public String getPassword() {
+        return password;
+    }
+    
+    public void setPassword(String password) {
+        this.password = password;
+    }
+    
+    public User.EmailDelivery getEmailDelivery() {
+        return emailDelivery;
+    }
+    
+    public void setEmailDelivery(User.EmailDelivery emailDelivery) {
+        this.emailDelivery = emailDelivery;
+    }
+}
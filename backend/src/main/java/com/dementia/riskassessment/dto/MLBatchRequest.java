@@ -0,0 +1,22 @@
+package com.dementia.riskassessment.dto;
+
+import java.util.List;
+
+public class MLBatchRequest {
+    private List<MLServiceRequest> items;
+
+    public MLBatchRequest() {
+    }
+
+    public MLBatchRequest(List<MLServiceRequest> items) {
+        this.items = items;
+    }
+
+    public List<MLServiceRequest> getItems() {
+        return items;
+    }
+
+    public void setItems(List<MLServiceRequest> items) {
+        this.items = items;
+    }
+}
@@ -0,0 +1,22 @@
+package com.dementia.riskassessment.dto;
+
+import java.util.List;
+
+public class MLBatchResponse {
+    private List<MLServiceResponse> predictions;
+
+    public MLBatchResponse() {
+    }
+
+    public MLBatchResponse(List<MLServiceResponse> predictions) {
+        this.predictions = predictions;
+    }
+
+    public List<MLServiceResponse> getPredictions() {
+        return predictions;
+    }
+
+    public void setPredictions(List<MLServiceResponse> predictions) {
+        this.predictions = predictions;
+    }
+}
@@ -2,6 +2,7 @@ package com.dementia.riskassessment.dto;
 
 public class MLServiceResponse {
     private String risk_level;
+    private boolean provisional; // true when scored by the fallback while the ML service was unavailable
 
     public MLServiceResponse() {
     }
@@ -17,6 +18,14 @@ public class MLServiceResponse {
     public void setRisk_level(String risk_level) {
         this.risk_level = risk_level;
     }
+
+    public boolean isProvisional() {
+        return provisional;
+    }
+
+    public void setProvisional(boolean provisional) {
+        this.provisional = provisional;
+    }
 }
 
 
@@ -4,20 +4,14 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "assessments")
+@Table(name = "assessments", indexes = {
+    // Serves per-user history ordered by time (keyset pagination)
+    @Index(name = "idx_assessments_user_timestamp", columnList = "user_id, timestamp, id")
+})
 public class Assessment {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.TABLE, generator = "assessment_id_generator")
-    @TableGenerator(
-        name = "assessment_id_generator",
-        table = "id_generator",
-        pkColumnName = "gen_name",
-        valueColumnName = "gen_value",
-        pkColumnValue = "assessment_id",
-        initialValue = 1,
-        allocationSize = 1
-    )
+    @BlockAllocatedId(name = "assessment_id")
     private Long id;
     
     @Column(nullable = false)
@@ -47,6 +41,10 @@ public class Assessment {
     @Column(nullable = false)
     private String risk_label;
     
+    // Set when risk_label came from the fallback scorer and should be rescored by the ML service
+    @Column(nullable = false, columnDefinition = "INTEGER DEFAULT 0")
+    private Boolean provisional = false;
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = true)
     private com.dementia.riskassessment.entity.User user;
@@ -150,6 +148,14 @@ public class Assessment {
         this.risk_label = risk_label;
     }
     
+    public Boolean getProvisional() {
+        return provisional;
+    }
+    
+    public void setProvisional(Boolean provisional) {
+        this.provisional = provisional;
+    }
+    
     public com.dementia.riskassessment.entity.User getUser() {
         return user;
     }
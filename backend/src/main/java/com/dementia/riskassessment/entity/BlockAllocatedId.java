@@ -0,0 +1,20 @@
+package com.dementia.riskassessment.entity;
+
+import com.dementia.riskassessment.repository.BlockIdGenerator;
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates the annotated ID from in-memory blocks reserved in the id_generator table
+ * (or time-ordered IDs, see app.id.mode). name is the id_generator row, e.g. "assessment_id".
+ */
+@IdGeneratorType(BlockIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface BlockAllocatedId {
+    String name();
+}
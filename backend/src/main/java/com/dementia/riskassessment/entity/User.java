@@ -7,17 +7,14 @@ import java.time.LocalDateTime;
 @Table(name = "users")
 public class User {
     
+    // How assessment result emails reach the user: one per assessment, or collected into a digest
+    public enum EmailDelivery {
+        IMMEDIATE,
+        DIGEST
+    }
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_id_generator")
-    @TableGenerator(
-        name = "user_id_generator",
-        table = "id_generator",
-        pkColumnName = "gen_name",
-        valueColumnName = "gen_value",
-        pkColumnValue = "user_id",
-        initialValue = 1,
-        allocationSize = 1
-    )
+    @BlockAllocatedId(name = "user_id")
     private Long id;
     
     @Column(nullable = false, unique = true)
@@ -53,6 +50,10 @@ public class User {
     @Column
     private LocalDateTime verificationCodeExpiry;
     
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "TEXT DEFAULT 'IMMEDIATE'")
+    private EmailDelivery emailDelivery = EmailDelivery.IMMEDIATE;
+    
     // Constructors
     public User() {
     }
@@ -165,6 +166,12 @@ public class User {
     public void setVerificationCodeExpiry(LocalDateTime verificationCodeExpiry) {
         this.verificationCodeExpiry = verificationCodeExpiry;
     }
+    
+    public EmailDelivery getEmailDelivery() {
+        return emailDelivery;
+    }
+    
+    public void setEmailDelivery(EmailDelivery emailDelivery) {
+        this.emailDelivery = emailDelivery;
+    }
 }
-
-
@@ -0,0 +1,496 @@
+package com.dementia.riskassessment.repository;
+
+import com.dementia.riskassessment.entity.Assessment;
+import com.dementia.riskassessment.entity.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind persistence for assessments. An assessment is appended to a memory-mapped
+ * segment file and acknowledged at once; a flusher thread inserts pending rows into the
+ * assessments table in batches through the owning shards' writers and then advances the segment's
+ * checkpoint. Segment layout: a 16-byte header (flushed offset, magic) followed by records of
+ * int length, int CRC32 and the encoded row. On startup every record after a segment's
+ * checkpoint is replayed; a torn or corrupt record ends that segment. Rows carry their ID,
+ * and inserts ignore IDs already present, so replaying a flushed row is harmless.
+ * Records survive a process crash as soon as they are appended; with sync-on-append they
+ * are also forced to disk before the append returns. A record can ask for its results email:
+ * the flusher then queues it (see Notifications) in the transaction that inserts the row, so an
+ * email exists exactly when its row does, and appending never touches SQLite.
+ * After max-batch-failures failed flushes in a row, the batch is retried one row at a time; if
+ * some rows go in, the ones that still fail are moved to dead-letter.log (same record framing)
+ * and checkpointed past, so one bad row cannot hold back the rest. A batch where every row fails
+ * is treated as a database problem and retried as a whole.
+ */
+@Component
+@ConditionalOnProperty(name = "app.db.write-behind.enabled", havingValue = "true")
+public class AssessmentIngestLog {
+
+    private static final long MAGIC = 0x4358494C4F473031L; // "CXILOG01"
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final Logger logger = LoggerFactory.getLogger(AssessmentIngestLog.class);
+
+    /**
+     * Builds the writes that queue logged assessments' results emails or digest entries.
+     */
+    public interface Notifications {
+        /**
+         * The write for each of assessments, keyed by assessment ID (none for users who are no longer
+         * to be notified). Called on the flusher thread before the insert; each write runs only if
+         * its row is inserted, in that transaction.
+         */
+        Map<Long, SqliteWriteScheduler.WriteCommand<?>> prepare(List<Assessment> assessments);
+
+        /**
+         * Called after a flush that may have queued emails has committed.
+         */
+        void queued();
+    }
+
+    private static class Segment {
+        final long sequence;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int writePosition = HEADER_SIZE;
+        int pendingRecords;
+
+        Segment(long sequence, Path path, int size) throws IOException {
+            this.sequence = sequence;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class Entry {
+        final Assessment assessment;
+        final Long userId;
+        final boolean notify;
+        final Segment segment;
+        final int endOffset;
+
+        Entry(Assessment assessment, boolean notify, Segment segment, int endOffset) {
+            this.assessment = assessment;
+            this.userId = assessment.getUser() != null ? assessment.getUser().getId() : null;
+            this.notify = notify;
+            this.segment = segment;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private final ShardedAssessmentRepository shardedAssessmentRepository;
+    private final Notifications notifications;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.db.write-behind.dir:./data/ingest}")
+    private String directory;
+
+    @Value("${app.db.write-behind.segment-bytes:16777216}")
+    private int segmentBytes;
+
+    @Value("${app.db.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${app.db.write-behind.max-batch:500}")
+    private int maxBatch;
+
+    @Value("${app.db.write-behind.jdbc-batch-size:20}")
+    private int jdbcBatchSize;
+
+    @Value("${app.db.write-behind.max-pending:100000}")
+    private int maxPending;
+
+    @Value("${app.db.write-behind.sync-on-append:false}")
+    private boolean syncOnAppend;
+
+    @Value("${app.db.write-behind.max-batch-failures:3}")
+    private int maxBatchFailures;
+
+    private final Deque<Entry> pending = new ArrayDeque<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long nextSequence;
+    private Path deadLetterPath;
+    private final AtomicLong deadLetters = new AtomicLong();
+    private int consecutiveFailures;
+    private Thread flusher;
+    private volatile boolean running;
+
+    @Autowired
+    public AssessmentIngestLog(ShardedAssessmentRepository shardedAssessmentRepository, Notifications notifications,
+                               MeterRegistry meterRegistry) {
+        this.shardedAssessmentRepository = shardedAssessmentRepository;
+        this.notifications = notifications;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(dir)) {
+            existing = files.filter(p -> p.getFileName().toString().matches("segment-\\d+\\.log"))
+                .sorted().toList();
+        }
+        for (Path path : existing) {
+            replay(path);
+        }
+        synchronized (this) {
+            roll();
+        }
+        deadLetterPath = dir.resolve("dead-letter.log");
+        Gauge.builder("db.ingest.dead.letters", deadLetters, AtomicLong::get)
+            .description("Logged assessments moved to the dead-letter file since startup")
+            .register(meterRegistry);
+        logger.info("Write-behind ingestion log at {}: {} rows to flush", dir.toAbsolutePath(), pending.size());
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "assessment-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Durably logs a scored assessment (its ID already assigned) for a later batched insert. With
+     * notify, its results email or digest entry is queued when the row is inserted.
+     */
+    public synchronized void append(Assessment assessment, boolean notify) {
+        if (pending.size() >= maxPending) {
+            throw new RuntimeException("Database is temporarily busy. Please try again in a moment.");
+        }
+        byte[] row = encode(assessment, notify);
+        if (active.writePosition + RECORD_HEADER_SIZE + row.length + RECORD_HEADER_SIZE > segmentBytes) {
+            try {
+                roll();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open a new ingestion log segment: " + e.getMessage(), e);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(row);
+        int start = active.writePosition;
+        // Payload and checksum first, length last, so a torn append reads as the end of the log
+        active.buffer.putInt(start + 4, (int) crc.getValue());
+        active.buffer.put(start + RECORD_HEADER_SIZE, row);
+        active.buffer.putInt(start, row.length);
+        active.writePosition = start + RECORD_HEADER_SIZE + row.length;
+        if (syncOnAppend) {
+            active.buffer.force(start, RECORD_HEADER_SIZE + row.length);
+        }
+        active.pendingRecords++;
+        pending.addLast(new Entry(assessment, notify, active, active.writePosition));
+        if (pending.size() >= maxBatch) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Assessments of userId that are logged but not yet in the assessments table, newest first.
+     */
+    public synchronized List<Assessment> pendingForUser(Long userId) {
+        List<Assessment> result = new ArrayList<>();
+        for (var it = pending.descendingIterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (userId.equals(entry.userId)) {
+                result.add(entry.assessment);
+            }
+        }
+        return result;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Rows moved to the dead-letter file since startup.
+     */
+    public long getDeadLetterCount() {
+        return deadLetters.get();
+    }
+
+    private void flushLoop() {
+        while (running || getPendingCount() > 0) {
+            synchronized (this) {
+                if (running && pending.size() < maxBatch) {
+                    try {
+                        wait(flushIntervalMs);
+                    } catch (InterruptedException e) {
+                        // Shutting down: flush what is left
+                    }
+                }
+            }
+            try {
+                flushBatch();
+                consecutiveFailures = 0;
+            } catch (RuntimeException e) {
+                consecutiveFailures++;
+                logger.warn("Write-behind flush failed ({} in a row), will retry: {}", consecutiveFailures, e.getMessage());
+                if (!running) {
+                    return;
+                }
+                try {
+                    Thread.sleep(Math.max(flushIntervalMs, 200));
+                } catch (InterruptedException ie) {
+                    // Keep trying until the loop condition ends it
+                }
+            }
+        }
+    }
+
+    private void flushBatch() {
+        List<Entry> batch = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : pending) {
+                if (batch.size() >= maxBatch) {
+                    break;
+                }
+                batch.add(entry);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Assessment> toNotify = new ArrayList<>();
+        for (Entry entry : batch) {
+            if (entry.notify) {
+                toNotify.add(entry.assessment);
+            }
+        }
+        Map<Long, SqliteWriteScheduler.WriteCommand<?>> alongside =
+            toNotify.isEmpty() ? Map.of() : notifications.prepare(toNotify);
+        if (consecutiveFailures >= maxBatchFailures) {
+            insertIsolated(batch, alongside);
+        } else {
+            List<Assessment> rows = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                rows.add(entry.assessment);
+            }
+            shardedAssessmentRepository.insertAll(rows, jdbcBatchSize, alongside);
+        }
+        if (!alongside.isEmpty()) {
+            notifications.queued();
+        }
+
+        synchronized (this) {
+            for (Entry entry : batch) {
+                pending.removeFirst();
+                entry.segment.pendingRecords--;
+                // Checkpoint: everything up to here is in the database
+                entry.segment.buffer.putLong(0, entry.endOffset);
+            }
+            for (var it = segments.iterator(); it.hasNext(); ) {
+                Segment segment = it.next();
+                if (segment != active && segment.pendingRecords == 0) {
+                    it.remove();
+                    try {
+                        segment.close();
+                        Files.deleteIfExists(segment.path);
+                    } catch (IOException e) {
+                        logger.warn("Failed to delete ingestion log segment {}: {}", segment.path, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    // Inserts batch one row at a time and dead-letters the rows that fail, provided any row went in;
+    // a dead-lettered row's email fails with it
+    private void insertIsolated(List<Entry> batch, Map<Long, SqliteWriteScheduler.WriteCommand<?>> alongside) {
+        List<Entry> failed = new ArrayList<>();
+        RuntimeException lastError = null;
+        for (Entry entry : batch) {
+            try {
+                shardedAssessmentRepository.insertAll(List.of(entry.assessment), 1, alongside);
+            } catch (RuntimeException e) {
+                failed.add(entry);
+                lastError = e;
+            }
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+        if (failed.size() == batch.size()) {
+            throw lastError;
+        }
+        try (FileChannel deadLetter = FileChannel.open(deadLetterPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (Entry entry : failed) {
+                byte[] row = encode(entry.assessment, entry.notify);
+                CRC32 crc = new CRC32();
+                crc.update(row);
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + row.length);
+                record.putInt(row.length).putInt((int) crc.getValue()).put(row).flip();
+                while (record.hasRemaining()) {
+                    deadLetter.write(record);
+                }
+            }
+            // On disk before the checkpoint moves past these rows
+            deadLetter.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write the ingestion dead-letter file: " + e.getMessage(), e);
+        }
+        deadLetters.addAndGet(failed.size());
+        for (Entry entry : failed) {
+            logger.error("Moved assessment {} to {} after repeated insert failures", entry.assessment.getId(), deadLetterPath);
+        }
+    }
+
+    private void roll() throws IOException {
+        Path path = Paths.get(directory, String.format("segment-%016d.log", nextSequence));
+        Segment segment = new Segment(nextSequence++, path, segmentBytes);
+        segment.buffer.putLong(0, HEADER_SIZE);
+        segment.buffer.putLong(8, MAGIC);
+        segment.buffer.force();
+        segments.add(segment);
+        active = segment;
+    }
+
+    private void replay(Path path) throws IOException {
+        long sequence = Long.parseLong(path.getFileName().toString().replaceAll("\\D", ""));
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        int size = (int) Files.size(path);
+        if (size < HEADER_SIZE) {
+            Files.delete(path);
+            return;
+        }
+        Segment segment = new Segment(sequence, path, size);
+        if (segment.buffer.getLong(8) != MAGIC) {
+            logger.warn("Ignoring {}: not an ingestion log segment", path);
+            segment.close();
+            return;
+        }
+
+        int position = (int) segment.buffer.getLong(0);
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            byte[] row = new byte[length];
+            segment.buffer.get(position + RECORD_HEADER_SIZE, row);
+            CRC32 crc = new CRC32();
+            crc.update(row);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + 4)) {
+                logger.warn("Ingestion log {}: corrupt record at offset {}, stopping replay", path, position);
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            ByteBuffer buffer = ByteBuffer.wrap(row);
+            Assessment assessment = decode(buffer);
+            // Records written before the flag existed had their email queued when appended
+            boolean notify = buffer.hasRemaining() && buffer.get() == 1;
+            pending.addLast(new Entry(assessment, notify, segment, position));
+            segment.pendingRecords++;
+        }
+        segment.writePosition = position;
+
+        if (segment.pendingRecords == 0) {
+            segment.close();
+            Files.delete(path);
+        } else {
+            segments.add(segment);
+        }
+    }
+
+    private static byte[] encode(Assessment assessment, boolean notify) {
+        byte[] label = assessment.getRisk_label().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer row = java.nio.ByteBuffer.allocate(8 + 8 + 4 + 6 * 8 + 1 + 8 + 2 + label.length + 1);
+        row.putLong(assessment.getId());
+        row.putLong(Timestamp.valueOf(assessment.getTimestamp()).getTime());
+        row.putInt(assessment.getAge());
+        row.putDouble(assessment.getReaction_time_ms());
+        row.putDouble(assessment.getMemory_score());
+        row.putDouble(assessment.getSpeech_pause_ms());
+        row.putDouble(assessment.getWord_repetition_rate());
+        row.putDouble(assessment.getTask_error_rate());
+        row.putDouble(assessment.getSleep_hours());
+        row.put((byte) (Boolean.TRUE.equals(assessment.getProvisional()) ? 1 : 0));
+        row.putLong(assessment.getUser() != null ? assessment.getUser().getId() : -1L);
+        row.putShort((short) label.length);
+        row.put(label);
+        row.put((byte) (notify ? 1 : 0));
+        return row.array();
+    }
+
+    // Reads the row fields, leaving row positioned at the notify flag (if the record has one)
+    private static Assessment decode(ByteBuffer row) {
+        long id = row.getLong();
+        Assessment assessment = new Assessment();
+        assessment.setId(id);
+        assessment.setTimestamp(new Timestamp(row.getLong()).toLocalDateTime());
+        assessment.setAge(row.getInt());
+        assessment.setReaction_time_ms(row.getDouble());
+        assessment.setMemory_score(row.getDouble());
+        assessment.setSpeech_pause_ms(row.getDouble());
+        assessment.setWord_repetition_rate(row.getDouble());
+        assessment.setTask_error_rate(row.getDouble());
+        assessment.setSleep_hours(row.getDouble());
+        assessment.setProvisional(row.get() == 1);
+        long userId = row.getLong();
+        if (userId >= 0) {
+            // Only the ID is needed to insert the row
+            User user = new User();
+            user.setId(userId);
+            assessment.setUser(user);
+        }
+        byte[] label = new byte[row.getShort()];
+        row.get(label);
+        assessment.setRisk_label(new String(label, StandardCharsets.UTF_8));
+        return assessment;
+    }
+}
@@ -1,18 +1,36 @@
 package com.dementia.riskassessment.repository;
 
+import com.dementia.riskassessment.dto.AssessmentHistoryRow;
 import com.dementia.riskassessment.entity.Assessment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface AssessmentRepository extends JpaRepository<Assessment, Long> {
     
-    @Query("SELECT a FROM Assessment a WHERE a.user.id = :userId ORDER BY a.timestamp DESC")
-    List<Assessment> findByUserIdOrderByTimestampDesc(@Param("userId") Long userId);
+    // History reads project straight into rows: one joined query, no Assessment or User entities materialized
+    String HISTORY_ROW = "SELECT new com.dementia.riskassessment.dto.AssessmentHistoryRow(" +
+                         "a.id, a.timestamp, a.age, a.risk_label, u.firstName, u.lastName) " +
+                         "FROM Assessment a JOIN a.user u ";
+    
+    @Query(HISTORY_ROW + "WHERE u.id = :userId ORDER BY a.timestamp DESC, a.id DESC")
+    List<AssessmentHistoryRow> findHistoryRows(@Param("userId") Long userId);
+    
+    // Keyset pages walk idx_assessments_user_timestamp backwards; pass PageRequest.of(0, n) so no OFFSET is used
+    @Query(HISTORY_ROW + "WHERE u.id = :userId ORDER BY a.timestamp DESC, a.id DESC")
+    List<AssessmentHistoryRow> findHistoryPage(@Param("userId") Long userId, Pageable pageable);
+    
+    // The redundant "timestamp <= :timestamp" bound lets SQLite seek into the index instead of filtering the whole user range
+    @Query(HISTORY_ROW + "WHERE u.id = :userId AND a.timestamp <= :timestamp " +
+           "AND (a.timestamp < :timestamp OR a.id < :id) ORDER BY a.timestamp DESC, a.id DESC")
+    List<AssessmentHistoryRow> findHistoryPageBefore(@Param("userId") Long userId, @Param("timestamp") LocalDateTime timestamp,
+                                                     @Param("id") Long id, Pageable pageable);
 }
 
 
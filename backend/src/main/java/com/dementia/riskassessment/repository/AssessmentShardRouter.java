@@ -0,0 +1,518 @@
+package com.dementia.riskassessment.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.sqlite.SQLiteConfig;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Maps assessments to SQLite shard files by user ID. A stable hash puts each user in one of
+ * BUCKETS buckets and a persisted bucket-to-shard table (assessment_shard_map in the main
+ * database) assigns buckets to shards, so a split only moves whole buckets. Shard 0 is the
+ * main database; shard N is its own file with its own writer thread and read-only pool.
+ * A running split is recorded in assessment_shard_split (COPYING, then CLEANING once ownership
+ * has flipped, in the same transaction as the bucket map) so a restart can finish or undo it.
+ * With one shard everything stays in the main database and nothing is persisted.
+ */
+@Component
+public class AssessmentShardRouter {
+
+    public static final int BUCKETS = 256;
+
+    public static class Shard {
+        private final int index;
+        private final String url;
+        private final SqliteWriteScheduler writer;
+        private final DataSource readDataSource;
+
+        Shard(int index, String url, SqliteWriteScheduler writer, DataSource readDataSource) {
+            this.index = index;
+            this.url = url;
+            this.writer = writer;
+            this.readDataSource = readDataSource;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public SqliteWriteScheduler getWriter() {
+            return writer;
+        }
+
+        public DataSource getReadDataSource() {
+            return readDataSource;
+        }
+    }
+
+    /**
+     * A split found in assessment_shard_split at startup, i.e. interrupted by a restart.
+     */
+    public static class SplitRecord {
+        private final int source;
+        private final int target;
+        private final List<Integer> buckets;
+        private final boolean ownershipMoved;
+
+        SplitRecord(int source, int target, List<Integer> buckets, boolean ownershipMoved) {
+            this.source = source;
+            this.target = target;
+            this.buckets = buckets;
+            this.ownershipMoved = ownershipMoved;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public int getTarget() {
+            return target;
+        }
+
+        public List<Integer> getBuckets() {
+            return buckets;
+        }
+
+        /**
+         * True if the target already owns the buckets (only the source copies are left to delete).
+         */
+        public boolean isOwnershipMoved() {
+            return ownershipMoved;
+        }
+    }
+
+    private final SqliteWriteScheduler mainWriter;
+    private final DataSource mainReadDataSource;
+    private final JdbcAssessmentRepository jdbcAssessmentRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.datasource.url}")
+    private String datasourceUrl;
+
+    @Value("${app.db.shards.count:1}")
+    private int shardCount;
+
+    @Value("${app.db.shards.url-template:jdbc:sqlite:./data/assessments-shard-%d.db?journal_mode=WAL&synchronous=NORMAL&busy_timeout=10000}")
+    private String urlTemplate;
+
+    @Value("${app.db.shards.read-pool-size:4}")
+    private int readPoolSize;
+
+    @Value("${app.db.write.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${app.db.write.max-group-size:128}")
+    private int maxGroupSize;
+
+    @Value("${app.db.write.timeout-ms:10000}")
+    private long timeoutMs;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<HikariDataSource> shardPools = new ArrayList<>();
+    // Writes hold the read lock while they resolve and run; moving buckets between shards takes the write lock
+    private final ReentrantReadWriteLock routingLock = new ReentrantReadWriteLock();
+    private volatile int[] owners = new int[BUCKETS];
+    // Target shard of buckets being copied by a split, -1 otherwise; writes to them are mirrored there
+    private volatile int[] migrationTargets = filled(-1);
+    // Set when a mirrored write fails; the running split must not flip ownership afterwards
+    private volatile boolean mirrorFailed;
+    private SplitRecord interruptedSplit;
+    private ExecutorService scanExecutor;
+
+    @Autowired
+    public AssessmentShardRouter(SqliteWriteScheduler mainWriter, DataSource dataSource,
+                                 @Qualifier("readDataSource") ObjectProvider<DataSource> readDataSource,
+                                 JdbcAssessmentRepository jdbcAssessmentRepository, MeterRegistry meterRegistry) {
+        this.mainWriter = mainWriter;
+        this.mainReadDataSource = readDataSource.getIfAvailable(() -> dataSource);
+        this.jdbcAssessmentRepository = jdbcAssessmentRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() throws SQLException {
+        if (shardCount < 1 || shardCount > BUCKETS) {
+            throw new IllegalStateException("app.db.shards.count must be between 1 and " + BUCKETS);
+        }
+        shards.add(new Shard(0, datasourceUrl, mainWriter, mainReadDataSource));
+        for (int i = 1; i < shardCount; i++) {
+            String url = String.format(urlTemplate, i);
+            SqliteWriteScheduler writer = new SqliteWriteScheduler(meterRegistry, "shard-" + i, url,
+                queueCapacity, maxGroupSize, timeoutMs);
+            writer.start();
+            // The writer creates the file, so the read-only pool can open it afterwards
+            writer.execute(connection -> {
+                jdbcAssessmentRepository.createShardSchema(connection);
+                return null;
+            });
+            DataSource readPool = openReadPool(i, url);
+            shards.add(new Shard(i, url, writer, readPool));
+            // IDs are unique across shards, so new ones must also start above this shard's rows
+            BlockIdAllocator.addTableSource("assessments", readPool::getConnection);
+        }
+        scanExecutor = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "shard-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (shardCount > 1) {
+            owners = loadOwners();
+            interruptedSplit = loadSplit();
+            System.out.println("Assessment sharding: " + shardCount + " shards, buckets per shard "
+                + Arrays.toString(bucketCounts()));
+        } else {
+            verifyUnsharded();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws SQLException {
+        scanExecutor.shutdownNow();
+        for (int i = 1; i < shards.size(); i++) {
+            shards.get(i).getWriter().stop();
+        }
+        for (HikariDataSource pool : shardPools) {
+            pool.close();
+        }
+    }
+
+    private DataSource openReadPool(int index, String url) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName("sqlite-shard-" + index + "-read");
+        pool.setJdbcUrl(url);
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setReadOnly(true);
+        pool.setDataSourceProperties(sqliteConfig.toProperties());
+        pool.setReadOnly(true);
+        pool.setMaximumPoolSize(readPoolSize);
+        pool.setMinimumIdle(1);
+        pool.setConnectionTestQuery("SELECT 1");
+        pool.setMetricRegistry(meterRegistry);
+        shardPools.add(pool);
+        return pool;
+    }
+
+    private int[] loadOwners() {
+        return mainWriter.execute(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS assessment_shard_map "
+                    + "(bucket INTEGER PRIMARY KEY, shard INTEGER NOT NULL)");
+            }
+            int[] loaded = filled(-1);
+            int mapped = 0;
+            try (Statement statement = connection.createStatement();
+                 ResultSet row = statement.executeQuery("SELECT bucket, shard FROM assessment_shard_map")) {
+                while (row.next()) {
+                    loaded[row.getInt(1)] = row.getInt(2);
+                    mapped++;
+                }
+            }
+            if (mapped == BUCKETS) {
+                for (int shard : loaded) {
+                    if (shard >= shardCount) {
+                        throw new SQLException("Bucket map references shard " + shard
+                            + " but app.db.shards.count is " + shardCount + "; shards cannot be removed");
+                    }
+                }
+                return loaded;
+            }
+            // First sharded start. Existing rows all live in the main database, so they keep every
+            // bucket there until a split moves them; an empty database is spread round-robin.
+            boolean hasRows = mainHasAssessments(connection);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                loaded[bucket] = hasRows ? 0 : bucket % shardCount;
+            }
+            writeOwners(connection, loaded);
+            if (hasRows) {
+                System.out.println("Assessment sharding: existing rows keep all buckets on shard 0; "
+                    + "use POST /api/admin/shards/split to move buckets to the other shards");
+            }
+            return loaded;
+        });
+    }
+
+    private SplitRecord loadSplit() {
+        return mainWriter.execute(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS assessment_shard_split (id INTEGER PRIMARY KEY CHECK (id = 1), "
+                    + "source INTEGER NOT NULL, target INTEGER NOT NULL, buckets TEXT NOT NULL, state TEXT NOT NULL)");
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet row = statement.executeQuery("SELECT source, target, buckets, state FROM assessment_shard_split")) {
+                if (!row.next()) {
+                    return null;
+                }
+                List<Integer> buckets = new ArrayList<>();
+                for (String bucket : row.getString(3).split(",")) {
+                    buckets.add(Integer.parseInt(bucket));
+                }
+                return new SplitRecord(row.getInt(1), row.getInt(2), buckets, "CLEANING".equals(row.getString(4)));
+            }
+        });
+    }
+
+    private void verifyUnsharded() {
+        mainWriter.execute(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet table = statement.executeQuery(
+                     "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'assessment_shard_map'")) {
+                if (!table.next()) {
+                    return null;
+                }
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet row = statement.executeQuery("SELECT 1 FROM assessment_shard_map WHERE shard > 0 LIMIT 1")) {
+                if (row.next()) {
+                    throw new SQLException("Assessments are spread over several shards; "
+                        + "app.db.shards.count cannot be reduced to 1");
+                }
+            }
+            return null;
+        });
+    }
+
+    private static boolean mainHasAssessments(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet table = statement.executeQuery(
+                 "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'assessments'")) {
+            if (!table.next()) {
+                return false;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet row = statement.executeQuery("SELECT 1 FROM assessments LIMIT 1")) {
+            return row.next();
+        }
+    }
+
+    private static void writeOwners(Connection connection, int[] owners) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(
+                "INSERT OR REPLACE INTO assessment_shard_map (bucket, shard) VALUES (?, ?)")) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                upsert.setInt(1, bucket);
+                upsert.setInt(2, owners[bucket]);
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+        }
+    }
+
+    private static int[] filled(int value) {
+        int[] array = new int[BUCKETS];
+        Arrays.fill(array, value);
+        return array;
+    }
+
+    /**
+     * Stable bucket for a user ID (assessments without a user go to bucket 0).
+     */
+    public static int bucketOf(Long userId) {
+        if (userId == null) {
+            return 0;
+        }
+        // murmur3 fmix64: spreads sequential and time-ordered IDs evenly
+        long h = userId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h >>> 56);
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    public List<Shard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public Shard getShard(int index) {
+        return shards.get(index);
+    }
+
+    public Shard shardFor(Long userId) {
+        return shards.get(owners[bucketOf(userId)]);
+    }
+
+    /**
+     * True if userId's rows currently belong to shard; false for rows left behind by a split.
+     */
+    public boolean owns(int shard, Long userId) {
+        return owners[bucketOf(userId)] == shard;
+    }
+
+    /**
+     * Shard that writes for userId must also be mirrored to, or null outside a split.
+     */
+    public Shard mirrorFor(Long userId) {
+        int target = migrationTargets[bucketOf(userId)];
+        return target < 0 ? null : shards.get(target);
+    }
+
+    /**
+     * Held around resolving a write's shard and running it, so a split cannot flip routing mid-write.
+     */
+    public Lock writeRouteLock() {
+        return routingLock.readLock();
+    }
+
+    public ExecutorService getScanExecutor() {
+        return scanExecutor;
+    }
+
+    public int[] bucketCounts() {
+        int[] counts = new int[shards.size()];
+        for (int owner : owners) {
+            counts[owner]++;
+        }
+        return counts;
+    }
+
+    public List<Integer> bucketsOwnedBy(int shard) {
+        List<Integer> buckets = new ArrayList<>();
+        int[] current = owners;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (current[bucket] == shard) {
+                buckets.add(bucket);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * The split that was running when the service last stopped, or null; see clearSplit.
+     */
+    public SplitRecord getInterruptedSplit() {
+        return interruptedSplit;
+    }
+
+    /**
+     * Records that a split's leftover rows have been deleted, so it is not recovered again.
+     */
+    public void clearSplit() {
+        mainWriter.execute(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DELETE FROM assessment_shard_split");
+            }
+            return null;
+        });
+        interruptedSplit = null;
+    }
+
+    /**
+     * Called when a write could not be mirrored to a split target; the split will not complete.
+     */
+    public void markMirrorFailed() {
+        mirrorFailed = true;
+    }
+
+    /**
+     * Records the split and starts mirroring writes for buckets to target. Waits for in-flight
+     * writes to finish first, so every write that starts afterwards is mirrored.
+     */
+    public void beginMigration(int source, List<Integer> buckets, int target) {
+        routingLock.writeLock().lock();
+        try {
+            mainWriter.execute(connection -> {
+                writeSplit(connection, source, buckets, target, "COPYING");
+                return null;
+            });
+            mirrorFailed = false;
+            int[] targets = migrationTargets.clone();
+            for (int bucket : buckets) {
+                targets[bucket] = target;
+            }
+            migrationTargets = targets;
+        } finally {
+            routingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs beforeFlip, then makes target the owner of buckets (persisted first) and stops mirroring,
+     * all with writes paused. Holding the write lock means every mirrored write has finished; if any
+     * of them failed, the target may be missing rows, so the migration is aborted instead and
+     * IllegalStateException is thrown.
+     */
+    public void completeMigration(int source, List<Integer> buckets, int target, Runnable beforeFlip) {
+        routingLock.writeLock().lock();
+        try {
+            if (mirrorFailed) {
+                clearMigration(buckets);
+                throw new IllegalStateException("A write could not be mirrored to shard " + target
+                    + "; ownership was not moved");
+            }
+            beforeFlip.run();
+            int[] updated = owners.clone();
+            for (int bucket : buckets) {
+                updated[bucket] = target;
+            }
+            mainWriter.execute(connection -> {
+                writeOwners(connection, updated);
+                writeSplit(connection, source, buckets, target, "CLEANING");
+                return null;
+            });
+            owners = updated;
+            clearMigration(buckets);
+        } finally {
+            routingLock.writeLock().unlock();
+        }
+    }
+
+    public void abortMigration(List<Integer> buckets) {
+        routingLock.writeLock().lock();
+        try {
+            clearMigration(buckets);
+        } finally {
+            routingLock.writeLock().unlock();
+        }
+    }
+
+    private static void writeSplit(Connection connection, int source, List<Integer> buckets, int target, String state)
+            throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(
+                "INSERT OR REPLACE INTO assessment_shard_split (id, source, target, buckets, state) VALUES (1, ?, ?, ?, ?)")) {
+            upsert.setInt(1, source);
+            upsert.setInt(2, target);
+            upsert.setString(3, buckets.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            upsert.setString(4, state);
+            upsert.executeUpdate();
+        }
+    }
+
+    private void clearMigration(List<Integer> buckets) {
+        int[] targets = migrationTargets.clone();
+        for (int bucket : buckets) {
+            targets[bucket] = -1;
+        }
+        migrationTargets = targets;
+    }
+}
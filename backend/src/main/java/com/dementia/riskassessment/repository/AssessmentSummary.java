@@ -0,0 +1,117 @@
+package com.dementia.riskassessment.repository;
+
+/**
+ * One user's row of user_assessment_summary: assessment count, the two most recent risk labels
+ * and a running mean and M2 (sum of squared deviations, Welford's method) per feature.
+ * Assessments can be added in any order; the latest/previous pair is ordered by (timestamp, id).
+ */
+public class AssessmentSummary {
+
+    // Feature order used by add() and the summary table's column pairs
+    public static final String[] FEATURES = {"age", "reaction_time_ms", "memory_score", "speech_pause_ms",
+        "word_repetition_rate", "task_error_rate", "sleep_hours"};
+
+    private final long userId;
+    private long count;
+    private long latestId;
+    private long latestTimestamp;
+    private String latestRiskLabel;
+    private long previousId;
+    private long previousTimestamp;
+    private String previousRiskLabel;
+    private final double[] mean = new double[FEATURES.length];
+    private final double[] m2 = new double[FEATURES.length];
+
+    public AssessmentSummary(long userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Folds one assessment in; features are in FEATURES order and timestamp is epoch millis.
+     */
+    public void add(long id, long timestamp, String riskLabel, double[] features) {
+        count++;
+        for (int i = 0; i < FEATURES.length; i++) {
+            double delta = features[i] - mean[i];
+            mean[i] += delta / count;
+            m2[i] += delta * (features[i] - mean[i]);
+        }
+        if (count == 1 || isAfter(timestamp, id, latestTimestamp, latestId)) {
+            previousId = latestId;
+            previousTimestamp = latestTimestamp;
+            previousRiskLabel = latestRiskLabel;
+            latestId = id;
+            latestTimestamp = timestamp;
+            latestRiskLabel = riskLabel;
+        } else if (previousRiskLabel == null || isAfter(timestamp, id, previousTimestamp, previousId)) {
+            // Older than the latest but newer than the previous one (e.g. an imported back-dated row)
+            previousId = id;
+            previousTimestamp = timestamp;
+            previousRiskLabel = riskLabel;
+        }
+    }
+
+    private static boolean isAfter(long timestamp, long id, long otherTimestamp, long otherId) {
+        return timestamp > otherTimestamp || (timestamp == otherTimestamp && id > otherId);
+    }
+
+    /**
+     * Sample variance of feature i; 0 until there are two assessments.
+     */
+    public double getVariance(int i) {
+        return count > 1 ? m2[i] / (count - 1) : 0.0;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getLatestId() {
+        return latestId;
+    }
+
+    public long getLatestTimestamp() {
+        return latestTimestamp;
+    }
+
+    public String getLatestRiskLabel() {
+        return latestRiskLabel;
+    }
+
+    public long getPreviousId() {
+        return previousId;
+    }
+
+    public long getPreviousTimestamp() {
+        return previousTimestamp;
+    }
+
+    public String getPreviousRiskLabel() {
+        return previousRiskLabel;
+    }
+
+    public double getMean(int i) {
+        return mean[i];
+    }
+
+    double getM2(int i) {
+        return m2[i];
+    }
+
+    void restore(long count, long latestId, long latestTimestamp, String latestRiskLabel, long previousId,
+                 long previousTimestamp, String previousRiskLabel, double[] mean, double[] m2) {
+        this.count = count;
+        this.latestId = latestId;
+        this.latestTimestamp = latestTimestamp;
+        this.latestRiskLabel = latestRiskLabel;
+        this.previousId = previousId;
+        this.previousTimestamp = previousTimestamp;
+        this.previousRiskLabel = previousRiskLabel;
+        System.arraycopy(mean, 0, this.mean, 0, FEATURES.length);
+        System.arraycopy(m2, 0, this.m2, 0, FEATURES.length);
+    }
+}
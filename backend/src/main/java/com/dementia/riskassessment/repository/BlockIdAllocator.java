@@ -0,0 +1,290 @@
+package com.dementia.riskassessment.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out entity IDs without a database round trip per insert.
+ * SEQUENTIAL mode reserves blocks of blockSize IDs in the id_generator table (the same
+ * gen_name/gen_value rows the former table generators used, where gen_value is the next free ID)
+ * and serves them from memory; the next block is reserved in the background once a quarter of
+ * the current one is left. A block is committed before any of its IDs is used, so IDs are never
+ * reused after a restart; unused IDs of a block are skipped.
+ * TIME_ORDERED mode needs no reservations: an ID is the millisecond since 2024-01-01 (41 bits),
+ * a node ID (4 bits) and a per-millisecond sequence (8 bits). The 53-bit total keeps IDs exact
+ * as JavaScript numbers, and distinct node IDs keep several backend instances from colliding.
+ * Both modes start above the largest existing ID, read from the allocator's own database and
+ * from every other database registered for the table with addTableSource (the assessment shards).
+ * Allocators are registered by name so code that writes over plain JDBC can share them.
+ */
+public class BlockIdAllocator {
+
+    public enum Mode { SEQUENTIAL, TIME_ORDERED }
+
+    /**
+     * Supplies a connection outside the caller's transaction; it is closed after each reservation.
+     */
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    private static final Map<String, BlockIdAllocator> REGISTRY = new ConcurrentHashMap<>();
+
+    // Other databases holding rows of a table, keyed by table name
+    private static final Map<String, List<ConnectionSource>> TABLE_SOURCES = new ConcurrentHashMap<>();
+
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "id-block-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final long TIME_EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 4;
+    private static final int SEQUENCE_BITS = 8;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static class Block {
+        final AtomicLong next;
+        final long end;
+        final long prefetchAt;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = end - Math.max(1, (end - start) / 4);
+        }
+    }
+
+    private final String name;
+    private final String entityTable;
+    private final String idColumn;
+    private final Mode mode;
+    private final int blockSize;
+    private final long nodeId;
+    private final ConnectionSource connections;
+
+    private volatile Block current = new Block(0, 0);
+    private CompletableFuture<Block> prefetched;
+
+    // TIME_ORDERED: milliseconds since the epoch << SEQUENCE_BITS | sequence of the last ID issued
+    private final AtomicLong lastTimeState = new AtomicLong(-1);
+
+    public BlockIdAllocator(String name, String entityTable, String idColumn, Mode mode, int blockSize, int nodeId,
+                            ConnectionSource connections) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE_ID);
+        }
+        this.name = name;
+        this.entityTable = entityTable;
+        this.idColumn = idColumn;
+        this.mode = mode;
+        this.blockSize = Math.max(1, blockSize);
+        this.nodeId = nodeId;
+        this.connections = connections;
+    }
+
+    public static void register(BlockIdAllocator allocator) {
+        REGISTRY.put(allocator.name, allocator);
+    }
+
+    /**
+     * Registers another database that stores rows of table, so IDs for it also start above that
+     * database's rows. Must happen before the table's allocator first hands out an ID.
+     */
+    public static void addTableSource(String table, ConnectionSource source) {
+        TABLE_SOURCES.computeIfAbsent(table, key -> new CopyOnWriteArrayList<>()).add(source);
+    }
+
+    /**
+     * Returns the allocator registered under name (for example "assessment_id"), or null.
+     */
+    public static BlockIdAllocator get(String name) {
+        return REGISTRY.get(name);
+    }
+
+    public long nextId() {
+        if (mode == Mode.TIME_ORDERED) {
+            return nextTimeOrderedId();
+        }
+        while (true) {
+            Block block = current;
+            long id = block.next.getAndIncrement();
+            if (id < block.end) {
+                if (id == block.prefetchAt) {
+                    prefetch();
+                }
+                return id;
+            }
+            advance(block);
+        }
+    }
+
+    private synchronized void prefetch() {
+        if (prefetched == null) {
+            prefetched = CompletableFuture.supplyAsync(this::reserveBlock, PREFETCHER);
+        }
+    }
+
+    private synchronized void advance(Block exhausted) {
+        if (current != exhausted) {
+            return; // Another thread already moved on
+        }
+        CompletableFuture<Block> next = prefetched;
+        prefetched = null;
+        Block block = null;
+        if (next != null) {
+            try {
+                block = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reserving IDs for " + name, e);
+            } catch (ExecutionException e) {
+                // Background reservation failed; try again on this thread
+                System.err.println("Background ID reservation for " + name + " failed: " + e.getCause().getMessage());
+            }
+        }
+        current = block != null ? block : reserveBlock();
+    }
+
+    /**
+     * Reserves the next blockSize IDs with a compare-and-set on gen_value, committed on its own connection.
+     * Lock waits are left to the connection's busy_timeout; only a lost compare-and-set is retried.
+     */
+    private Block reserveBlock() {
+        while (true) {
+            try (Connection connection = connections.getConnection()) {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(true);
+                try {
+                    Block block = tryReserve(connection);
+                    if (block != null) {
+                        return block;
+                    }
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to reserve IDs for " + name + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private Block tryReserve(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS id_generator "
+                + "(gen_name VARCHAR(255) NOT NULL PRIMARY KEY, gen_value BIGINT)");
+        }
+
+        Long stored = null;
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT gen_value FROM id_generator WHERE gen_name = ?")) {
+            select.setString(1, name);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    stored = rs.getLong(1);
+                }
+            }
+        }
+
+        // Never hand out an ID below existing rows, e.g. ones inserted without this allocator
+        long start = Math.max(stored != null ? stored : 1, maxExistingId(connection) + 1);
+        long end = start + blockSize;
+
+        int updated;
+        if (stored == null) {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT OR IGNORE INTO id_generator (gen_name, gen_value) VALUES (?, ?)")) {
+                insert.setString(1, name);
+                insert.setLong(2, end);
+                updated = insert.executeUpdate();
+            }
+        } else {
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE id_generator SET gen_value = ? WHERE gen_name = ? AND gen_value = ?")) {
+                update.setLong(1, end);
+                update.setString(2, name);
+                update.setLong(3, stored);
+                updated = update.executeUpdate();
+            }
+        }
+        // Zero rows means another instance reserved a block first: read again
+        return updated == 1 ? new Block(start, end) : null;
+    }
+
+    // Largest ID on connection's database and on every other database registered for the table
+    private long maxExistingId(Connection connection) throws SQLException {
+        long max = maxExistingIdIn(connection);
+        for (ConnectionSource source : TABLE_SOURCES.getOrDefault(entityTable, List.of())) {
+            try (Connection other = source.getConnection()) {
+                max = Math.max(max, maxExistingIdIn(other));
+            }
+        }
+        return max;
+    }
+
+    private long maxExistingIdIn(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(" + idColumn + ") FROM " + entityTable)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            if (e.getMessage() != null && e.getMessage().contains("no such table")) {
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    private long nextTimeOrderedId() {
+        if (lastTimeState.get() < 0) {
+            seedTimeState();
+        }
+        while (true) {
+            long previous = lastTimeState.get();
+            long now = (System.currentTimeMillis() - TIME_EPOCH_MILLIS) << SEQUENCE_BITS;
+            // A full sequence (or a clock step backwards) borrows from the next millisecond
+            long next = Math.max(now, previous + 1);
+            if (lastTimeState.compareAndSet(previous, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    private synchronized void seedTimeState() {
+        if (lastTimeState.get() >= 0) {
+            return;
+        }
+        // Start after the newest existing ID so a clock that moved back since the last run cannot repeat one
+        long seed = 0;
+        try (Connection connection = connections.getConnection()) {
+            long maxId = maxExistingId(connection);
+            long maxMillis = maxId >>> (NODE_BITS + SEQUENCE_BITS);
+            seed = (maxMillis << SEQUENCE_BITS) | (maxId & ((1L << SEQUENCE_BITS) - 1));
+        } catch (SQLException e) {
+            System.err.println("Could not read the newest " + entityTable + " ID: " + e.getMessage());
+        }
+        lastTimeState.set(seed);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+}
@@ -0,0 +1,58 @@
+package com.dementia.riskassessment.repository;
+
+import com.dementia.riskassessment.entity.BlockAllocatedId;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.mapping.Column;
+import org.hibernate.service.ServiceRegistry;
+
+import java.lang.reflect.Member;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * Hibernate adapter for BlockIdAllocator. Settings are read from the Hibernate properties
+ * (spring.jpa.properties.app.id.*): mode (sequential or time-ordered), block-size and node-id.
+ */
+public class BlockIdGenerator implements BeforeExecutionGenerator {
+
+    private final BlockIdAllocator allocator;
+
+    public BlockIdGenerator(BlockAllocatedId config, Member member, CustomIdGeneratorCreationContext context) {
+        ServiceRegistry serviceRegistry = context.getServiceRegistry();
+        Map<String, Object> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        BlockIdAllocator.Mode mode = "time-ordered".equalsIgnoreCase(setting(settings, "app.id.mode", "sequential"))
+            ? BlockIdAllocator.Mode.TIME_ORDERED : BlockIdAllocator.Mode.SEQUENTIAL;
+        int blockSize = Integer.parseInt(setting(settings, "app.id.block-size", "1000"));
+        int nodeId = Integer.parseInt(setting(settings, "app.id.node-id", "0"));
+
+        String table = context.getPersistentClass().getTable().getName();
+        String idColumn = context.getPersistentClass().getIdentifier().getColumns().stream()
+            .map(Column::getName).findFirst().orElse("id");
+        // Looked up on first use: the connection provider is not started while mappings are built
+        this.allocator = new BlockIdAllocator(config.name(), table, idColumn, mode, blockSize, nodeId,
+            () -> serviceRegistry.getService(ConnectionProvider.class).getConnection());
+        BlockIdAllocator.register(allocator);
+    }
+
+    private static String setting(Map<String, Object> settings, String key, String defaultValue) {
+        Object value = settings.get(key);
+        return value != null && !value.toString().isBlank() ? value.toString().trim() : defaultValue;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue,
+                           EventType eventType) {
+        return allocator.nextId();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
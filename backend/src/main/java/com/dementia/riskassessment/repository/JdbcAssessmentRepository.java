@@ -0,0 +1,503 @@
+package com.dementia.riskassessment.repository;
+
+import com.dementia.riskassessment.dto.AssessmentHistoryRow;
+import com.dementia.riskassessment.entity.Assessment;
+import com.dementia.riskassessment.entity.User;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain JDBC access for assessments: inserts run on the SQLite writer connection,
+ * exports stream from a caller-supplied read connection.
+ */
+@Repository
+public class JdbcAssessmentRepository {
+
+    private static final String COLUMNS = "(id, timestamp, age, reaction_time_ms, memory_score, speech_pause_ms, "
+        + "word_repetition_rate, task_error_rate, sleep_hours, risk_label, provisional, user_id) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_SQL = "INSERT INTO assessments " + COLUMNS;
+
+    private static final String INSERT_IGNORE_SQL = "INSERT OR IGNORE INTO assessments " + COLUMNS;
+
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO assessments " + COLUMNS;
+
+    private static final String EXPORT_SELECT = "SELECT id, timestamp, user_id, age, reaction_time_ms, memory_score, "
+        + "speech_pause_ms, word_repetition_rate, task_error_rate, sleep_hours, risk_label, provisional FROM assessments";
+
+    // Shard files hold only assessments; users and the ID generator stay in the main database
+    private static final String[] SHARD_SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS assessments (id INTEGER PRIMARY KEY, timestamp INTEGER NOT NULL, "
+            + "age INTEGER NOT NULL, reaction_time_ms REAL NOT NULL, memory_score REAL NOT NULL, "
+            + "speech_pause_ms REAL NOT NULL, word_repetition_rate REAL NOT NULL, task_error_rate REAL NOT NULL, "
+            + "sleep_hours REAL NOT NULL, risk_label TEXT NOT NULL, provisional INTEGER NOT NULL DEFAULT 0, user_id INTEGER)",
+        "CREATE INDEX IF NOT EXISTS idx_assessments_user_timestamp ON assessments (user_id, timestamp, id)"
+    };
+
+    private static final String SUMMARY_COLUMNS;
+    private static final String SUMMARY_DDL;
+
+    static {
+        StringBuilder columns = new StringBuilder("user_id, assessment_count, latest_assessment_id, latest_timestamp, "
+            + "latest_risk_label, previous_assessment_id, previous_timestamp, previous_risk_label");
+        StringBuilder ddl = new StringBuilder("CREATE TABLE user_assessment_summary (user_id INTEGER PRIMARY KEY, "
+            + "assessment_count INTEGER NOT NULL, latest_assessment_id INTEGER NOT NULL, latest_timestamp INTEGER NOT NULL, "
+            + "latest_risk_label TEXT NOT NULL, previous_assessment_id INTEGER, previous_timestamp INTEGER, "
+            + "previous_risk_label TEXT");
+        for (String feature : AssessmentSummary.FEATURES) {
+            columns.append(", ").append(feature).append("_mean, ").append(feature).append("_m2");
+            ddl.append(", ").append(feature).append("_mean REAL NOT NULL, ").append(feature).append("_m2 REAL NOT NULL");
+        }
+        SUMMARY_COLUMNS = columns.toString();
+        SUMMARY_DDL = ddl.append(")").toString();
+    }
+
+    private static final String SUMMARY_UPSERT_SQL = "INSERT OR REPLACE INTO user_assessment_summary (" + SUMMARY_COLUMNS
+        + ") VALUES (" + "?, ".repeat(7 + 2 * AssessmentSummary.FEATURES.length) + "?)";
+
+    private static final String SUMMARY_SELECT = "SELECT " + SUMMARY_COLUMNS + " FROM user_assessment_summary";
+
+    /**
+     * Receives export rows one at a time; the result set is positioned on the current row
+     * with columns in EXPORT_SELECT order and must not be retained.
+     */
+    @FunctionalInterface
+    public interface ExportRowHandler {
+        void handle(ResultSet row) throws SQLException, IOException;
+    }
+
+    /**
+     * Inserts assessment, which must already have its ID assigned.
+     */
+    public void insert(Connection connection, Assessment assessment) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            bind(insert, assessment);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Inserts assessments in JDBC batches of batchSize, skipping IDs that are already stored.
+     * Returns the assessments that were actually inserted.
+     */
+    public List<Assessment> insertIgnoringExisting(Connection connection, List<Assessment> assessments, int batchSize)
+            throws SQLException {
+        List<Assessment> inserted = new ArrayList<>(assessments.size());
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_IGNORE_SQL)) {
+            int from = 0;
+            for (int i = 0; i < assessments.size(); i++) {
+                bind(insert, assessments.get(i));
+                insert.addBatch();
+                if ((i + 1) % batchSize == 0 || i == assessments.size() - 1) {
+                    int[] counts = insert.executeBatch();
+                    for (int j = 0; j < counts.length; j++) {
+                        if (counts[j] > 0) {
+                            inserted.add(assessments.get(from + j));
+                        }
+                    }
+                    from = i + 1;
+                }
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Inserts or overwrites whole rows; used to mirror writes into a shard that is being split into.
+     */
+    public void upsert(Connection connection, List<Assessment> assessments) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT_SQL)) {
+            for (Assessment assessment : assessments) {
+                bind(upsert, assessment);
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+        }
+    }
+
+    public void updateRiskLabels(Connection connection, List<Assessment> assessments) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE assessments SET risk_label = ?, provisional = ? WHERE id = ?")) {
+            for (Assessment assessment : assessments) {
+                update.setString(1, assessment.getRisk_label());
+                update.setInt(2, Boolean.TRUE.equals(assessment.getProvisional()) ? 1 : 0);
+                update.setLong(3, assessment.getId());
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+        // Keep the summary's labels in step when the rescored assessment is one of the two it tracks
+        try (PreparedStatement latest = connection.prepareStatement(
+                "UPDATE user_assessment_summary SET latest_risk_label = ? WHERE user_id = ? AND latest_assessment_id = ?");
+             PreparedStatement previous = connection.prepareStatement(
+                "UPDATE user_assessment_summary SET previous_risk_label = ? WHERE user_id = ? AND previous_assessment_id = ?")) {
+            for (Assessment assessment : assessments) {
+                if (assessment.getUser() == null) {
+                    continue;
+                }
+                for (PreparedStatement update : new PreparedStatement[] {latest, previous}) {
+                    update.setString(1, assessment.getRisk_label());
+                    update.setLong(2, assessment.getUser().getId());
+                    update.setLong(3, assessment.getId());
+                    update.addBatch();
+                }
+            }
+            latest.executeBatch();
+            previous.executeBatch();
+        }
+    }
+
+    public void deleteByIds(Connection connection, List<Long> ids) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM assessments WHERE id = ?")) {
+            for (Long id : ids) {
+                delete.setLong(1, id);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    public void createShardSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SHARD_SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+    }
+
+    /**
+     * Creates user_assessment_summary if it does not exist yet. Returns true if it was created,
+     * in which case it is empty and has to be rebuilt from the stored assessments.
+     */
+    public boolean createSummarySchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet table = statement.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'user_assessment_summary'")) {
+                if (table.next()) {
+                    return false;
+                }
+            }
+            statement.execute(SUMMARY_DDL);
+            return true;
+        }
+    }
+
+    /**
+     * Folds newly inserted assessments into their users' summaries; run in the inserting transaction.
+     */
+    public void applyToSummaries(Connection connection, List<Assessment> inserted) throws SQLException {
+        Map<Long, List<Assessment>> byUser = new LinkedHashMap<>();
+        for (Assessment assessment : inserted) {
+            if (assessment.getUser() != null) {
+                byUser.computeIfAbsent(assessment.getUser().getId(), userId -> new ArrayList<>()).add(assessment);
+            }
+        }
+        if (byUser.isEmpty()) {
+            return;
+        }
+        Map<Long, AssessmentSummary> summaries = new HashMap<>();
+        for (AssessmentSummary summary : findSummaries(connection, new ArrayList<>(byUser.keySet()))) {
+            summaries.put(summary.getUserId(), summary);
+        }
+        List<AssessmentSummary> updated = new ArrayList<>(byUser.size());
+        double[] features = new double[AssessmentSummary.FEATURES.length];
+        byUser.forEach((userId, assessments) -> {
+            AssessmentSummary summary = summaries.computeIfAbsent(userId, AssessmentSummary::new);
+            for (Assessment assessment : assessments) {
+                features[0] = assessment.getAge();
+                features[1] = assessment.getReaction_time_ms();
+                features[2] = assessment.getMemory_score();
+                features[3] = assessment.getSpeech_pause_ms();
+                features[4] = assessment.getWord_repetition_rate();
+                features[5] = assessment.getTask_error_rate();
+                features[6] = assessment.getSleep_hours();
+                summary.add(assessment.getId(), Timestamp.valueOf(assessment.getTimestamp()).getTime(),
+                    assessment.getRisk_label(), features);
+            }
+            updated.add(summary);
+        });
+        writeSummaries(connection, updated);
+    }
+
+    /**
+     * Recomputes the summaries of userIds from their stored assessments, dropping those with none left.
+     */
+    public void rebuildSummaries(Connection connection, List<Long> userIds) throws SQLException {
+        List<AssessmentSummary> rebuilt = new ArrayList<>(userIds.size());
+        double[] features = new double[AssessmentSummary.FEATURES.length];
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT id, timestamp, risk_label, " + String.join(", ", AssessmentSummary.FEATURES)
+                    + " FROM assessments WHERE user_id = ? ORDER BY timestamp, id")) {
+            for (Long userId : userIds) {
+                AssessmentSummary summary = new AssessmentSummary(userId);
+                select.setLong(1, userId);
+                try (ResultSet row = select.executeQuery()) {
+                    while (row.next()) {
+                        for (int i = 0; i < features.length; i++) {
+                            features[i] = row.getDouble(4 + i);
+                        }
+                        summary.add(row.getLong(1), row.getLong(2), row.getString(3), features);
+                    }
+                }
+                if (summary.getCount() > 0) {
+                    rebuilt.add(summary);
+                }
+            }
+        }
+        deleteSummaries(connection, userIds);
+        writeSummaries(connection, rebuilt);
+    }
+
+    public void deleteSummaries(Connection connection, Collection<Long> userIds) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM user_assessment_summary WHERE user_id = ?")) {
+            for (Long userId : userIds) {
+                delete.setLong(1, userId);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    /**
+     * Deletes summaries of users without any stored assessment. Returns how many were removed.
+     */
+    public int deleteOrphanSummaries(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            return statement.executeUpdate("DELETE FROM user_assessment_summary WHERE NOT EXISTS "
+                + "(SELECT 1 FROM assessments a WHERE a.user_id = user_assessment_summary.user_id)");
+        }
+    }
+
+    /**
+     * Distinct user IDs with stored assessments, ascending (read along idx_assessments_user_timestamp).
+     */
+    public List<Long> findUserIds(Connection connection) throws SQLException {
+        List<Long> userIds = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet row = statement.executeQuery(
+                 "SELECT DISTINCT user_id FROM assessments WHERE user_id IS NOT NULL ORDER BY user_id")) {
+            while (row.next()) {
+                userIds.add(row.getLong(1));
+            }
+        }
+        return userIds;
+    }
+
+    public List<AssessmentSummary> findSummaries(Connection connection, List<Long> userIds) throws SQLException {
+        List<AssessmentSummary> summaries = new ArrayList<>(userIds.size());
+        // Bounded IN lists keep the statement under SQLite's host parameter limit
+        for (int from = 0; from < userIds.size(); from += 500) {
+            List<Long> chunk = userIds.subList(from, Math.min(from + 500, userIds.size()));
+            String sql = SUMMARY_SELECT + " WHERE user_id IN (" + "?, ".repeat(chunk.size() - 1) + "?)";
+            try (PreparedStatement select = connection.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    select.setLong(i + 1, chunk.get(i));
+                }
+                try (ResultSet row = select.executeQuery()) {
+                    while (row.next()) {
+                        summaries.add(readSummary(row));
+                    }
+                }
+            }
+        }
+        return summaries;
+    }
+
+    private static AssessmentSummary readSummary(ResultSet row) throws SQLException {
+        AssessmentSummary summary = new AssessmentSummary(row.getLong(1));
+        int features = AssessmentSummary.FEATURES.length;
+        double[] mean = new double[features];
+        double[] m2 = new double[features];
+        for (int i = 0; i < features; i++) {
+            mean[i] = row.getDouble(9 + 2 * i);
+            m2[i] = row.getDouble(10 + 2 * i);
+        }
+        summary.restore(row.getLong(2), row.getLong(3), row.getLong(4), row.getString(5), row.getLong(6),
+            row.getLong(7), row.getString(8), mean, m2);
+        return summary;
+    }
+
+    private static void writeSummaries(Connection connection, List<AssessmentSummary> summaries) throws SQLException {
+        if (summaries.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement upsert = connection.prepareStatement(SUMMARY_UPSERT_SQL)) {
+            for (AssessmentSummary summary : summaries) {
+                upsert.setLong(1, summary.getUserId());
+                upsert.setLong(2, summary.getCount());
+                upsert.setLong(3, summary.getLatestId());
+                upsert.setLong(4, summary.getLatestTimestamp());
+                upsert.setString(5, summary.getLatestRiskLabel());
+                if (summary.getPreviousRiskLabel() != null) {
+                    upsert.setLong(6, summary.getPreviousId());
+                    upsert.setLong(7, summary.getPreviousTimestamp());
+                    upsert.setString(8, summary.getPreviousRiskLabel());
+                } else {
+                    upsert.setNull(6, Types.INTEGER);
+                    upsert.setNull(7, Types.INTEGER);
+                    upsert.setNull(8, Types.VARCHAR);
+                }
+                for (int i = 0; i < AssessmentSummary.FEATURES.length; i++) {
+                    upsert.setDouble(9 + 2 * i, summary.getMean(i));
+                    upsert.setDouble(10 + 2 * i, summary.getM2(i));
+                }
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+        }
+    }
+
+    /**
+     * Provisional assessments with IDs above afterId in ID order, at most limit. Users are ID-only stubs.
+     */
+    public List<Assessment> findProvisional(Connection connection, long afterId, int limit) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                EXPORT_SELECT + " WHERE provisional = 1 AND id > ? ORDER BY id LIMIT ?")) {
+            select.setLong(1, afterId);
+            select.setInt(2, limit);
+            List<Assessment> assessments = new ArrayList<>();
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    assessments.add(readRow(row));
+                }
+            }
+            return assessments;
+        }
+    }
+
+    /**
+     * History rows for a user stored in a shard file, newest first, optionally after a keyset cursor.
+     * The owner's name is passed in because users live in the main database.
+     */
+    public List<AssessmentHistoryRow> findHistoryRows(Connection connection, Long userId, LocalDateTime beforeTimestamp,
+                                                      Long beforeId, int limit, String firstName, String lastName)
+            throws SQLException {
+        String sql = "SELECT id, timestamp, age, risk_label FROM assessments WHERE user_id = ?"
+            + (beforeTimestamp != null ? " AND timestamp <= ? AND (timestamp < ? OR id < ?)" : "")
+            + " ORDER BY timestamp DESC, id DESC" + (limit > 0 ? " LIMIT ?" : "");
+        try (PreparedStatement select = connection.prepareStatement(sql)) {
+            int index = 1;
+            select.setLong(index++, userId);
+            if (beforeTimestamp != null) {
+                Timestamp before = Timestamp.valueOf(beforeTimestamp);
+                select.setTimestamp(index++, before);
+                select.setTimestamp(index++, before);
+                select.setLong(index++, beforeId);
+            }
+            if (limit > 0) {
+                select.setInt(index, limit);
+            }
+            List<AssessmentHistoryRow> rows = new ArrayList<>();
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    rows.add(new AssessmentHistoryRow(row.getLong(1), new Timestamp(row.getLong(2)).toLocalDateTime(),
+                        row.getInt(3), row.getString(4), firstName, lastName));
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Maps the current row of an exportRows/findProvisional result set to an Assessment with a stub user.
+     */
+    public Assessment readRow(ResultSet row) throws SQLException {
+        Assessment assessment = new Assessment();
+        assessment.setId(row.getLong(1));
+        assessment.setTimestamp(new Timestamp(row.getLong(2)).toLocalDateTime());
+        long userId = row.getLong(3);
+        if (!row.wasNull()) {
+            User user = new User();
+            user.setId(userId);
+            assessment.setUser(user);
+        }
+        assessment.setAge(row.getInt(4));
+        assessment.setReaction_time_ms(row.getDouble(5));
+        assessment.setMemory_score(row.getDouble(6));
+        assessment.setSpeech_pause_ms(row.getDouble(7));
+        assessment.setWord_repetition_rate(row.getDouble(8));
+        assessment.setTask_error_rate(row.getDouble(9));
+        assessment.setSleep_hours(row.getDouble(10));
+        assessment.setRisk_label(row.getString(11));
+        assessment.setProvisional(row.getInt(12) != 0);
+        return assessment;
+    }
+
+    /**
+     * Streams assessments matching the optional filters through handler with a forward-only cursor,
+     * never holding more than fetchSize rows. A single user's rows come in (timestamp, id) order along
+     * idx_assessments_user_timestamp; population exports come in id order. Returns the row count.
+     */
+    public long exportRows(Connection connection, Long userId, LocalDateTime from, LocalDateTime to,
+                           int fetchSize, ExportRowHandler handler) throws SQLException, IOException {
+        StringBuilder sql = new StringBuilder(EXPORT_SELECT).append(" WHERE 1 = 1");
+        if (userId != null) {
+            sql.append(" AND user_id = ?");
+        }
+        if (from != null) {
+            sql.append(" AND timestamp >= ?");
+        }
+        if (to != null) {
+            sql.append(" AND timestamp < ?");
+        }
+        sql.append(userId != null ? " ORDER BY timestamp, id" : " ORDER BY id");
+
+        try (PreparedStatement select = connection.prepareStatement(sql.toString(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            int index = 1;
+            if (userId != null) {
+                select.setLong(index++, userId);
+            }
+            if (from != null) {
+                select.setTimestamp(index++, Timestamp.valueOf(from));
+            }
+            if (to != null) {
+                select.setTimestamp(index, Timestamp.valueOf(to));
+            }
+            select.setFetchSize(fetchSize);
+            long rows = 0;
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    handler.handle(row);
+                    rows++;
+                }
+            }
+            return rows;
+        }
+    }
+
+    private void bind(PreparedStatement insert, Assessment assessment) throws SQLException {
+        insert.setLong(1, assessment.getId());
+        insert.setTimestamp(2, Timestamp.valueOf(assessment.getTimestamp()));
+        insert.setInt(3, assessment.getAge());
+        insert.setDouble(4, assessment.getReaction_time_ms());
+        insert.setDouble(5, assessment.getMemory_score());
+        insert.setDouble(6, assessment.getSpeech_pause_ms());
+        insert.setDouble(7, assessment.getWord_repetition_rate());
+        insert.setDouble(8, assessment.getTask_error_rate());
+        insert.setDouble(9, assessment.getSleep_hours());
+        insert.setString(10, assessment.getRisk_label());
+        insert.setInt(11, Boolean.TRUE.equals(assessment.getProvisional()) ? 1 : 0);
+        if (assessment.getUser() != null) {
+            insert.setLong(12, assessment.getUser().getId());
+        } else {
+            insert.setNull(12, Types.BIGINT);
+        }
+    }
+}
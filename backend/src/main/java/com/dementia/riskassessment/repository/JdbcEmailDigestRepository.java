@@ -0,0 +1,173 @@
+package com.dementia.riskassessment.repository;
+
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Plain JDBC access to email_digest_entry: one small row per assessment waiting to go out in a
+ * user's next digest email. Entries are added on the writer connection in the assessment's
+ * transaction and taken (read and deleted) in the transaction that queues the digest. Entries
+ * live on the shard that owns the user and move with its bucket in a shard split. Times are
+ * epoch millis.
+ */
+@Repository
+public class JdbcEmailDigestRepository {
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS email_digest_entry (assessment_id INTEGER PRIMARY KEY, "
+            + "user_id INTEGER NOT NULL, created_at INTEGER NOT NULL, risk_label TEXT)",
+        "CREATE INDEX IF NOT EXISTS idx_email_digest_entry_user ON email_digest_entry (user_id, created_at)"
+    };
+
+    public static class Entry {
+        private final long assessmentId;
+        private final long createdAt;
+        private final String riskLabel;
+
+        Entry(long assessmentId, long createdAt, String riskLabel) {
+            this.assessmentId = assessmentId;
+            this.createdAt = createdAt;
+            this.riskLabel = riskLabel;
+        }
+
+        public long getAssessmentId() {
+            return assessmentId;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public String getRiskLabel() {
+            return riskLabel;
+        }
+    }
+
+    public void createSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+    }
+
+    /**
+     * Adds an entry (ignored if the assessment is already in) and returns the user's pending count.
+     */
+    public int add(Connection connection, long userId, long assessmentId, long createdAt, String riskLabel)
+            throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT OR IGNORE INTO email_digest_entry "
+                + "(assessment_id, user_id, created_at, risk_label) VALUES (?, ?, ?, ?)")) {
+            insert.setLong(1, assessmentId);
+            insert.setLong(2, userId);
+            insert.setLong(3, createdAt);
+            insert.setString(4, riskLabel);
+            insert.executeUpdate();
+        }
+        try (PreparedStatement count = connection.prepareStatement(
+                "SELECT COUNT(*) FROM email_digest_entry WHERE user_id = ?")) {
+            count.setLong(1, userId);
+            try (ResultSet row = count.executeQuery()) {
+                row.next();
+                return row.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the user's pending entries, oldest first.
+     */
+    public List<Entry> take(Connection connection, long userId) throws SQLException {
+        List<Entry> entries = find(connection, userId);
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM email_digest_entry WHERE user_id = ?")) {
+            delete.setLong(1, userId);
+            delete.executeUpdate();
+        }
+        return entries;
+    }
+
+    /**
+     * The user's pending entries, oldest first, left in place.
+     */
+    public List<Entry> find(Connection connection, long userId) throws SQLException {
+        List<Entry> entries = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT assessment_id, created_at, risk_label "
+                + "FROM email_digest_entry WHERE user_id = ? ORDER BY created_at, assessment_id")) {
+            select.setLong(1, userId);
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    entries.add(new Entry(row.getLong(1), row.getLong(2), row.getString(3)));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Inserts entries for userId, skipping assessments already in; used to move entries between shards.
+     */
+    public void insertAll(Connection connection, long userId, List<Entry> entries) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT OR IGNORE INTO email_digest_entry "
+                + "(assessment_id, user_id, created_at, risk_label) VALUES (?, ?, ?, ?)")) {
+            for (Entry entry : entries) {
+                insert.setLong(1, entry.getAssessmentId());
+                insert.setLong(2, userId);
+                insert.setLong(3, entry.getCreatedAt());
+                insert.setString(4, entry.getRiskLabel());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    public void deleteByUserIds(Connection connection, Collection<Long> userIds) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM email_digest_entry WHERE user_id = ?")) {
+            for (Long userId : userIds) {
+                delete.setLong(1, userId);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    /**
+     * Distinct users with pending entries.
+     */
+    public List<Long> findUserIds(Connection connection) throws SQLException {
+        List<Long> userIds = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet row = statement.executeQuery("SELECT DISTINCT user_id FROM email_digest_entry")) {
+            while (row.next()) {
+                userIds.add(row.getLong(1));
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Users whose oldest pending entry was added at or before cutoff.
+     */
+    public List<Long> findDueUserIds(Connection connection, long cutoff, int limit) throws SQLException {
+        List<Long> userIds = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT user_id FROM email_digest_entry "
+                + "GROUP BY user_id HAVING MIN(created_at) <= ? LIMIT ?")) {
+            select.setLong(1, cutoff);
+            select.setInt(2, limit);
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    userIds.add(row.getLong(1));
+                }
+            }
+        }
+        return userIds;
+    }
+}
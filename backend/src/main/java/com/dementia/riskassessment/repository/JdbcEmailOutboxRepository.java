@@ -0,0 +1,173 @@
+package com.dementia.riskassessment.repository;
+
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain JDBC access to email_outbox. Messages are inserted on the writer connection in the same
+ * transaction as the row that caused them; claims and outcomes also run on the writer, so a
+ * claim is never handed to two senders. Times are epoch millis.
+ */
+@Repository
+public class JdbcEmailOutboxRepository {
+
+    public static final String PENDING = "PENDING";
+    public static final String SENDING = "SENDING";
+    public static final String SENT = "SENT";
+    public static final String DEAD = "DEAD";
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS email_outbox (id INTEGER PRIMARY KEY AUTOINCREMENT, kind TEXT NOT NULL, "
+            + "recipient TEXT NOT NULL, payload TEXT NOT NULL, status TEXT NOT NULL, attempts INTEGER NOT NULL DEFAULT 0, "
+            + "next_attempt_at INTEGER NOT NULL, claimed_until INTEGER, created_at INTEGER NOT NULL, "
+            + "sent_at INTEGER, last_error TEXT)",
+        "CREATE INDEX IF NOT EXISTS idx_email_outbox_status_next ON email_outbox (status, next_attempt_at)"
+    };
+
+    public static class Message {
+        private final long id;
+        private final String kind;
+        private final String recipient;
+        private final String payload;
+        private final int attempts;
+
+        Message(long id, String kind, String recipient, String payload, int attempts) {
+            this.id = id;
+            this.kind = kind;
+            this.recipient = recipient;
+            this.payload = payload;
+            this.attempts = attempts;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getRecipient() {
+            return recipient;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    public void createSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+    }
+
+    public void insert(Connection connection, String kind, String recipient, String payload, long now) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO email_outbox "
+                + "(kind, recipient, payload, status, attempts, next_attempt_at, created_at) VALUES (?, ?, ?, ?, 0, ?, ?)")) {
+            insert.setString(1, kind);
+            insert.setString(2, recipient);
+            insert.setString(3, payload);
+            insert.setString(4, PENDING);
+            insert.setLong(5, now);
+            insert.setLong(6, now);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Claims up to limit messages that are due, or whose earlier claim lapsed (the sender died),
+     * leasing them until now + leaseMs.
+     */
+    public List<Message> claim(Connection connection, long now, long leaseMs, int limit) throws SQLException {
+        List<Message> claimed = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT id, kind, recipient, payload, attempts "
+                + "FROM email_outbox WHERE (status = ? AND next_attempt_at <= ?) OR (status = ? AND claimed_until < ?) "
+                + "ORDER BY next_attempt_at LIMIT ?")) {
+            select.setString(1, PENDING);
+            select.setLong(2, now);
+            select.setString(3, SENDING);
+            select.setLong(4, now);
+            select.setInt(5, limit);
+            try (ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    claimed.add(new Message(row.getLong(1), row.getString(2), row.getString(3), row.getString(4),
+                        row.getInt(5)));
+                }
+            }
+        }
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE email_outbox SET status = ?, claimed_until = ? WHERE id = ?")) {
+            for (Message message : claimed) {
+                update.setString(1, SENDING);
+                update.setLong(2, now + leaseMs);
+                update.setLong(3, message.getId());
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+        return claimed;
+    }
+
+    public void markSent(Connection connection, long id, int attempts, long now) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement("UPDATE email_outbox "
+                + "SET status = ?, attempts = ?, sent_at = ?, claimed_until = NULL, last_error = NULL WHERE id = ?")) {
+            update.setString(1, SENT);
+            update.setInt(2, attempts);
+            update.setLong(3, now);
+            update.setLong(4, id);
+            update.executeUpdate();
+        }
+    }
+
+    /**
+     * Records a failed attempt: status PENDING with a later nextAttemptAt to retry, or DEAD to give up.
+     */
+    public void markFailed(Connection connection, long id, String status, int attempts, long nextAttemptAt, String error)
+            throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement("UPDATE email_outbox "
+                + "SET status = ?, attempts = ?, next_attempt_at = ?, claimed_until = NULL, last_error = ? WHERE id = ?")) {
+            update.setString(1, status);
+            update.setInt(2, attempts);
+            update.setLong(3, nextAttemptAt);
+            update.setString(4, error);
+            update.setLong(5, id);
+            update.executeUpdate();
+        }
+    }
+
+    public int deleteSentBefore(Connection connection, long cutoff) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM email_outbox WHERE status = ? AND sent_at < ?")) {
+            delete.setString(1, SENT);
+            delete.setLong(2, cutoff);
+            return delete.executeUpdate();
+        }
+    }
+
+    public Map<String, Long> countByStatus(Connection connection) throws SQLException {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet row = statement.executeQuery("SELECT status, COUNT(*) FROM email_outbox GROUP BY status")) {
+            while (row.next()) {
+                counts.put(row.getString(1), row.getLong(2));
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,69 @@
+package com.dementia.riskassessment.repository;
+
+import com.dementia.riskassessment.entity.User;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+
+/**
+ * Plain JDBC writes for users, run on the SQLite writer connection.
+ */
+@Repository
+public class JdbcUserRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO users (id, email, password, first_name, last_name, age, "
+        + "gender, blood_group, created_at, email_verified, verification_code, verification_code_expiry, email_delivery) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Inserts user, which must already have its ID assigned.
+     */
+    public void insert(Connection connection, User user) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            insert.setLong(1, user.getId());
+            insert.setString(2, user.getEmail());
+            insert.setString(3, user.getPassword());
+            insert.setString(4, user.getFirstName());
+            insert.setString(5, user.getLastName());
+            insert.setInt(6, user.getAge());
+            insert.setString(7, user.getGender());
+            insert.setString(8, user.getBloodGroup());
+            insert.setTimestamp(9, Timestamp.valueOf(user.getCreatedAt()));
+            insert.setInt(10, Boolean.TRUE.equals(user.getEmailVerified()) ? 1 : 0);
+            insert.setString(11, user.getVerificationCode());
+            if (user.getVerificationCodeExpiry() != null) {
+                insert.setTimestamp(12, Timestamp.valueOf(user.getVerificationCodeExpiry()));
+            } else {
+                insert.setNull(12, Types.BIGINT);
+            }
+            insert.setString(13, user.getEmailDelivery().name());
+            insert.executeUpdate();
+        }
+    }
+
+    public void updateVerificationCode(Connection connection, Long userId, String code, LocalDateTime expiry)
+            throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE users SET verification_code = ?, verification_code_expiry = ? WHERE id = ?")) {
+            update.setString(1, code);
+            update.setTimestamp(2, Timestamp.valueOf(expiry));
+            update.setLong(3, userId);
+            update.executeUpdate();
+        }
+    }
+
+    public void updateEmailDelivery(Connection connection, Long userId, User.EmailDelivery emailDelivery)
+            throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE users SET email_delivery = ? WHERE id = ?")) {
+            update.setString(1, emailDelivery.name());
+            update.setLong(2, userId);
+            update.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,713 @@
+package com.dementia.riskassessment.repository;
+
+import com.dementia.riskassessment.dto.AssessmentHistoryRow;
+import com.dementia.riskassessment.entity.Assessment;
+import com.dementia.riskassessment.entity.User;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Reads and writes assessments on the shard that owns each user (see AssessmentShardRouter).
+ * Shard 0 history keeps using the JPA projections; other shards are read with plain JDBC on
+ * their read-only pools. Also runs shard splits: the moving buckets are mirrored to the target
+ * while their rows are copied, then ownership flips and the source copies are deleted. A failed
+ * mirror write keeps ownership where it is, and a split interrupted by a restart is undone (or,
+ * if ownership had already flipped, its cleanup finished) on startup.
+ * Each shard also keeps user_assessment_summary for its users, updated in the inserting transaction,
+ * and their pending digest entries, which are moved to the target with writes paused just before the flip.
+ */
+@Component
+public class ShardedAssessmentRepository {
+
+    /**
+     * Work run against one shard during a parallel scan.
+     */
+    @FunctionalInterface
+    public interface ShardTask<T> {
+        T run(AssessmentShardRouter.Shard shard) throws Exception;
+    }
+
+    private static final int SUMMARY_REBUILD_CHUNK = 100;
+
+    private final AssessmentShardRouter router;
+    private final JdbcAssessmentRepository jdbcAssessmentRepository;
+    private final AssessmentRepository assessmentRepository;
+    private final UserRepository userRepository;
+    private final JdbcEmailDigestRepository digestRepository;
+
+    @Value("${app.db.shards.split-batch-size:500}")
+    private int splitBatchSize;
+
+    private final ExecutorService splitExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shard-split");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Map<String, Object> splitStatus;
+    // Users whose rows were mirrored to a split target since its summaries were last rebuilt
+    private final Set<Long> mirroredUsers = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ShardedAssessmentRepository(AssessmentShardRouter router, JdbcAssessmentRepository jdbcAssessmentRepository,
+                                       AssessmentRepository assessmentRepository, UserRepository userRepository,
+                                       JdbcEmailDigestRepository digestRepository) {
+        this.router = router;
+        this.jdbcAssessmentRepository = jdbcAssessmentRepository;
+        this.assessmentRepository = assessmentRepository;
+        this.userRepository = userRepository;
+        this.digestRepository = digestRepository;
+    }
+
+    /**
+     * Creates user_assessment_summary and email_digest_entry on every shard, backfilling the
+     * summaries where they are new, then recovers a split that a restart interrupted.
+     */
+    @PostConstruct
+    public void init() {
+        for (AssessmentShardRouter.Shard shard : router.getShards()) {
+            shard.getWriter().execute(connection -> {
+                digestRepository.createSchema(connection);
+                return null;
+            });
+            boolean created = shard.getWriter().execute(jdbcAssessmentRepository::createSummarySchema);
+            if (created) {
+                int users = rebuildSummaries(shard);
+                System.out.println("Built assessment summaries for " + users + " users on shard " + shard.getIndex());
+            }
+        }
+        AssessmentShardRouter.SplitRecord interrupted = router.getInterruptedSplit();
+        if (interrupted != null) {
+            recoverSplit(interrupted);
+        }
+    }
+
+    private static Long userIdOf(Assessment assessment) {
+        return assessment.getUser() != null ? assessment.getUser().getId() : null;
+    }
+
+    /**
+     * Inserts assessment (ID already assigned) on its owner's shard.
+     */
+    public void insert(Assessment assessment) {
+        insert(assessment, null);
+    }
+
+    /**
+     * Inserts assessment and runs alongside (if not null) in the same transaction on the owning
+     * shard, e.g. to queue an email that must exist exactly when the assessment does.
+     */
+    public void insert(Assessment assessment, SqliteWriteScheduler.WriteCommand<?> alongside) {
+        insert(assessment, alongside, false);
+    }
+
+    /**
+     * Like insert, but an assessment whose ID is already stored is skipped together with alongside.
+     * Returns true if the row was inserted; used to store work that may be retried after a crash.
+     */
+    public boolean insertIfAbsent(Assessment assessment, SqliteWriteScheduler.WriteCommand<?> alongside) {
+        return insert(assessment, alongside, true);
+    }
+
+    private boolean insert(Assessment assessment, SqliteWriteScheduler.WriteCommand<?> alongside, boolean ignoreExisting) {
+        Lock lock = router.writeRouteLock();
+        lock.lock();
+        try {
+            Long userId = userIdOf(assessment);
+            boolean inserted = router.shardFor(userId).getWriter().execute(connection -> {
+                if (ignoreExisting) {
+                    if (jdbcAssessmentRepository.insertIgnoringExisting(connection, List.of(assessment), 1).isEmpty()) {
+                        return false;
+                    }
+                } else {
+                    jdbcAssessmentRepository.insert(connection, assessment);
+                }
+                jdbcAssessmentRepository.applyToSummaries(connection, List.of(assessment));
+                if (alongside != null) {
+                    alongside.apply(connection);
+                }
+                return true;
+            });
+            if (!inserted) {
+                return false;
+            }
+            AssessmentShardRouter.Shard mirror = router.mirrorFor(userId);
+            if (mirror != null) {
+                mirror(mirror, List.of(assessment));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts assessments, skipping IDs already stored; each shard's share is written in parallel.
+     */
+    public void insertAll(List<Assessment> assessments, int batchSize) {
+        insertAll(assessments, batchSize, Map.of());
+    }
+
+    /**
+     * Like insertAll, and runs alongside.get(id) in the inserting transaction for each row that was
+     * actually inserted, so a row skipped as already stored, or one whose write fails, runs nothing.
+     */
+    public void insertAll(List<Assessment> assessments, int batchSize,
+                          Map<Long, SqliteWriteScheduler.WriteCommand<?>> alongside) {
+        Lock lock = router.writeRouteLock();
+        lock.lock();
+        try {
+            Map<AssessmentShardRouter.Shard, List<Assessment>> byShard = new LinkedHashMap<>();
+            Map<AssessmentShardRouter.Shard, List<Assessment>> mirrored = new LinkedHashMap<>();
+            for (Assessment assessment : assessments) {
+                Long userId = userIdOf(assessment);
+                byShard.computeIfAbsent(router.shardFor(userId), shard -> new ArrayList<>()).add(assessment);
+                AssessmentShardRouter.Shard mirror = router.mirrorFor(userId);
+                if (mirror != null) {
+                    mirrored.computeIfAbsent(mirror, shard -> new ArrayList<>()).add(assessment);
+                }
+            }
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            List<SqliteWriteScheduler> writers = new ArrayList<>();
+            byShard.forEach((shard, rows) -> {
+                writes.add(shard.getWriter().submit(connection -> {
+                    List<Assessment> inserted = jdbcAssessmentRepository.insertIgnoringExisting(connection, rows, batchSize);
+                    jdbcAssessmentRepository.applyToSummaries(connection, inserted);
+                    for (Assessment assessment : inserted) {
+                        SqliteWriteScheduler.WriteCommand<?> command = alongside.get(assessment.getId());
+                        if (command != null) {
+                            command.apply(connection);
+                        }
+                    }
+                    return null;
+                }));
+                writers.add(shard.getWriter());
+            });
+            // Mirrors run in parallel with the inserts; their failures only stop the split
+            List<CompletableFuture<Void>> mirrorWrites = new ArrayList<>();
+            List<AssessmentShardRouter.Shard> mirrors = new ArrayList<>();
+            List<List<Assessment>> mirrorRows = new ArrayList<>();
+            mirrored.forEach((shard, rows) -> {
+                try {
+                    mirrorWrites.add(shard.getWriter().submit(connection -> {
+                        jdbcAssessmentRepository.upsert(connection, rows);
+                        return null;
+                    }));
+                    mirrors.add(shard);
+                    mirrorRows.add(rows);
+                } catch (RuntimeException e) {
+                    mirrorFailed(shard, e);
+                }
+            });
+            RuntimeException error = null;
+            for (int i = 0; i < writes.size(); i++) {
+                try {
+                    writers.get(i).await(writes.get(i));
+                } catch (RuntimeException e) {
+                    error = error != null ? error : e;
+                }
+            }
+            for (int i = 0; i < mirrorWrites.size(); i++) {
+                try {
+                    mirrors.get(i).getWriter().await(mirrorWrites.get(i));
+                    mirrored(mirrorRows.get(i));
+                } catch (RuntimeException e) {
+                    mirrorFailed(mirrors.get(i), e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores new risk labels for assessments read with findProvisional.
+     */
+    public void updateRiskLabels(List<Assessment> assessments) {
+        Lock lock = router.writeRouteLock();
+        lock.lock();
+        try {
+            Map<AssessmentShardRouter.Shard, List<Assessment>> byShard = new LinkedHashMap<>();
+            for (Assessment assessment : assessments) {
+                byShard.computeIfAbsent(router.shardFor(userIdOf(assessment)), shard -> new ArrayList<>()).add(assessment);
+            }
+            byShard.forEach((shard, rows) -> shard.getWriter().execute(connection -> {
+                jdbcAssessmentRepository.updateRiskLabels(connection, rows);
+                return null;
+            }));
+            for (Assessment assessment : assessments) {
+                AssessmentShardRouter.Shard mirror = router.mirrorFor(userIdOf(assessment));
+                if (mirror != null) {
+                    mirror(mirror, List.of(assessment));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The primary write has committed, so a mirror failure is not the caller's; it aborts the split
+    private void mirror(AssessmentShardRouter.Shard target, List<Assessment> rows) {
+        try {
+            target.getWriter().execute(connection -> {
+                jdbcAssessmentRepository.upsert(connection, rows);
+                return null;
+            });
+            mirrored(rows);
+        } catch (RuntimeException e) {
+            mirrorFailed(target, e);
+        }
+    }
+
+    // Recorded after the mirror commits, so a summary rebuild that misses the row sees the user here
+    private void mirrored(List<Assessment> rows) {
+        for (Assessment assessment : rows) {
+            Long userId = userIdOf(assessment);
+            if (userId != null) {
+                mirroredUsers.add(userId);
+            }
+        }
+    }
+
+    private void mirrorFailed(AssessmentShardRouter.Shard target, RuntimeException e) {
+        router.markMirrorFailed();
+        System.err.println("Mirrored write to shard " + target.getIndex() + " failed, the running split will be aborted: "
+            + e.getMessage());
+    }
+
+    public List<AssessmentShardRouter.Shard> getShards() {
+        return router.getShards();
+    }
+
+    /**
+     * Provisional assessments stored on shard with IDs above afterId, oldest first. May include rows a
+     * split has just moved away; updateRiskLabels routes those to their new owner.
+     */
+    public List<Assessment> findProvisional(AssessmentShardRouter.Shard shard, long afterId, int limit) {
+        try (Connection connection = shard.getReadDataSource().getConnection()) {
+            return jdbcAssessmentRepository.findProvisional(connection, afterId, limit);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read provisional assessments: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Newest-first history rows for userId; limit 0 returns them all. Pass a null
+     * beforeTimestamp for the first page.
+     */
+    public List<AssessmentHistoryRow> findHistoryRows(Long userId, LocalDateTime beforeTimestamp, Long beforeId, int limit) {
+        AssessmentShardRouter.Shard shard = router.shardFor(userId);
+        if (shard.getIndex() == 0) {
+            if (limit <= 0) {
+                return assessmentRepository.findHistoryRows(userId);
+            }
+            PageRequest window = PageRequest.of(0, limit);
+            return beforeTimestamp == null
+                ? assessmentRepository.findHistoryPage(userId, window)
+                : assessmentRepository.findHistoryPageBefore(userId, beforeTimestamp, beforeId, window);
+        }
+        // Users live in the main database, so the name is looked up once instead of joined
+        User owner = userRepository.findById(userId).orElse(null);
+        if (owner == null) {
+            return List.of();
+        }
+        try (Connection connection = shard.getReadDataSource().getConnection()) {
+            return jdbcAssessmentRepository.findHistoryRows(connection, userId, beforeTimestamp, beforeId, limit,
+                owner.getFirstName(), owner.getLastName());
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read assessment history: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stored summaries for userIds (users without assessments are left out), read from each owner shard.
+     */
+    public List<AssessmentSummary> findSummaries(List<Long> userIds) {
+        Map<AssessmentShardRouter.Shard, List<Long>> byShard = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            byShard.computeIfAbsent(router.shardFor(userId), shard -> new ArrayList<>()).add(userId);
+        }
+        List<AssessmentSummary> summaries = new ArrayList<>(userIds.size());
+        for (Map.Entry<AssessmentShardRouter.Shard, List<Long>> entry : byShard.entrySet()) {
+            try (Connection connection = entry.getKey().getReadDataSource().getConnection()) {
+                summaries.addAll(jdbcAssessmentRepository.findSummaries(connection, entry.getValue()));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to read assessment summaries: " + e.getMessage(), e);
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Recomputes every summary from the stored assessments, all shards in parallel.
+     * Returns the number of users summarized.
+     */
+    public int rebuildSummaries() {
+        return scanShards(this::rebuildSummaries).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    // Rebuilt a few users per writer transaction so live inserts keep flowing; the writer
+    // serializes each chunk with them, so an insert is either in a rebuild or applied after it
+    private int rebuildSummaries(AssessmentShardRouter.Shard shard) {
+        List<Long> userIds;
+        try (Connection connection = shard.getReadDataSource().getConnection()) {
+            userIds = jdbcAssessmentRepository.findUserIds(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to list users on shard " + shard.getIndex() + ": " + e.getMessage(), e);
+        }
+        rebuildSummaries(shard, userIds);
+        shard.getWriter().execute(jdbcAssessmentRepository::deleteOrphanSummaries);
+        return userIds.size();
+    }
+
+    private void rebuildSummaries(AssessmentShardRouter.Shard shard, List<Long> userIds) {
+        for (int from = 0; from < userIds.size(); from += SUMMARY_REBUILD_CHUNK) {
+            List<Long> chunk = new ArrayList<>(userIds.subList(from, Math.min(from + SUMMARY_REBUILD_CHUNK, userIds.size())));
+            shard.getWriter().execute(connection -> {
+                jdbcAssessmentRepository.rebuildSummaries(connection, chunk);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Runs task against every shard in parallel and returns the results in shard order.
+     */
+    public <T> List<T> scanShards(ShardTask<T> task) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (AssessmentShardRouter.Shard shard : router.getShards()) {
+            futures.add(router.getScanExecutor().submit(() -> task.run(shard)));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Shard scan failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Per-shard bucket and row counts (rows counted in parallel, excluding split leftovers).
+     */
+    public Map<String, Object> describe() {
+        int[] buckets = router.bucketCounts();
+        List<Long> rows = scanShards(shard -> {
+            long count = 0;
+            try (Connection connection = shard.getReadDataSource().getConnection();
+                 PreparedStatement select = connection.prepareStatement(
+                     "SELECT user_id, COUNT(*) FROM assessments GROUP BY user_id");
+                 ResultSet row = select.executeQuery()) {
+                while (row.next()) {
+                    long userId = row.getLong(1);
+                    if (router.owns(shard.getIndex(), row.wasNull() ? null : userId)) {
+                        count += row.getLong(2);
+                    }
+                }
+            }
+            return count;
+        });
+        List<Map<String, Object>> shards = new ArrayList<>();
+        for (AssessmentShardRouter.Shard shard : router.getShards()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("shard", shard.getIndex());
+            entry.put("url", shard.getUrl());
+            entry.put("buckets", buckets[shard.getIndex()]);
+            entry.put("assessments", rows.get(shard.getIndex()));
+            shards.add(entry);
+        }
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("shards", shards);
+        description.put("split", splitStatus);
+        return description;
+    }
+
+    /**
+     * Starts moving half of source's buckets to target in the background. Reads and writes keep
+     * flowing throughout; progress is reported by describe(). Throws IllegalArgumentException
+     * for an invalid request and IllegalStateException while another split is running.
+     */
+    public synchronized Map<String, Object> startSplit(int source, int target) {
+        int shardCount = router.getShards().size();
+        if (source < 0 || source >= shardCount || target < 0 || target >= shardCount || source == target) {
+            throw new IllegalArgumentException("Source and target must be different shards between 0 and " + (shardCount - 1));
+        }
+        if (splitStatus != null && !"COMPLETED".equals(splitStatus.get("state"))
+                && !"FAILED".equals(splitStatus.get("state")) && !"ROLLED_BACK".equals(splitStatus.get("state"))) {
+            throw new IllegalStateException("A shard split is already running");
+        }
+        List<Integer> owned = router.bucketsOwnedBy(source);
+        if (owned.size() < 2) {
+            throw new IllegalArgumentException("Shard " + source + " owns " + owned.size() + " bucket(s) and cannot be split");
+        }
+        List<Integer> moving = new ArrayList<>();
+        for (int i = 1; i < owned.size(); i += 2) {
+            moving.add(owned.get(i));
+        }
+
+        // Updated by the split thread while describe() serializes it
+        Map<String, Object> status = new ConcurrentHashMap<>();
+        status.put("state", "RUNNING");
+        status.put("source", source);
+        status.put("target", target);
+        status.put("buckets", moving.size());
+        status.put("copied", 0L);
+        status.put("startedAt", Instant.now().toString());
+        splitStatus = status;
+        splitExecutor.execute(() -> runSplit(router.getShard(source), router.getShard(target), moving, status));
+        return status;
+    }
+
+    private void runSplit(AssessmentShardRouter.Shard source, AssessmentShardRouter.Shard target,
+                          List<Integer> moving, Map<String, Object> status) {
+        boolean[] isMoving = new boolean[AssessmentShardRouter.BUCKETS];
+        moving.forEach(bucket -> isMoving[bucket] = true);
+        try {
+            // Stale rows from an earlier aborted split would shadow the copy
+            deleteMatching(target, isMoving);
+            router.beginMigration(source.getIndex(), moving, target.getIndex());
+            try {
+                copyMatching(source, target, isMoving, status);
+                // Copies and mirrored writes skip the summaries, so every moved user's one is rebuilt on
+                // the target from its rows before the flip: first in bulk while writes keep flowing, then,
+                // with writes paused, for the users mirrored since. Digest entries are not mirrored and
+                // are copied only then; the source's are deleted with its other leftovers.
+                status.put("state", "SUMMARIZING");
+                mirroredUsers.clear();
+                rebuildSummaries(target, usersInBuckets(target, isMoving));
+                router.completeMigration(source.getIndex(), moving, target.getIndex(), () -> {
+                    rebuildSummaries(target, new ArrayList<>(mirroredUsers));
+                    copyDigestEntries(source, target, isMoving);
+                });
+            } catch (RuntimeException e) {
+                router.abortMigration(moving);
+                discardCopies(target, isMoving);
+                throw e;
+            } finally {
+                mirroredUsers.clear();
+            }
+            status.put("state", "CLEANING");
+            deleteMatching(source, isMoving);
+            router.clearSplit();
+            status.put("state", "COMPLETED");
+            System.out.println("Shard split moved " + moving.size() + " buckets (" + status.get("copied")
+                + " assessments) from shard " + source.getIndex() + " to shard " + target.getIndex());
+        } catch (RuntimeException e) {
+            status.put("state", "FAILED");
+            status.put("error", e.getMessage());
+            System.err.println("Shard split failed: " + e.getMessage());
+        }
+        status.put("finishedAt", Instant.now().toString());
+    }
+
+    // Best effort: whatever is left is deleted on restart or by the next split into target
+    private void discardCopies(AssessmentShardRouter.Shard target, boolean[] isMoving) {
+        try {
+            deleteMatching(target, isMoving);
+            router.clearSplit();
+        } catch (RuntimeException e) {
+            System.err.println("Could not delete partial split copies on shard " + target.getIndex() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finishes a split interrupted by a restart: before the flip the target's partial copies are
+     * deleted (the source still owns everything), after it the source's leftover rows are.
+     */
+    private void recoverSplit(AssessmentShardRouter.SplitRecord split) {
+        boolean[] isMoving = new boolean[AssessmentShardRouter.BUCKETS];
+        split.getBuckets().forEach(bucket -> isMoving[bucket] = true);
+        Map<String, Object> status = new ConcurrentHashMap<>();
+        status.put("state", "RECOVERING");
+        status.put("source", split.getSource());
+        status.put("target", split.getTarget());
+        status.put("buckets", split.getBuckets().size());
+        status.put("startedAt", Instant.now().toString());
+        splitStatus = status;
+        splitExecutor.execute(() -> {
+            try {
+                if (split.isOwnershipMoved()) {
+                    deleteMatching(router.getShard(split.getSource()), isMoving);
+                    status.put("state", "COMPLETED");
+                } else {
+                    deleteMatching(router.getShard(split.getTarget()), isMoving);
+                    status.put("state", "ROLLED_BACK");
+                }
+                router.clearSplit();
+                System.out.println("Recovered interrupted shard split from shard " + split.getSource() + " to shard "
+                    + split.getTarget() + ": " + status.get("state"));
+            } catch (RuntimeException e) {
+                status.put("state", "FAILED");
+                status.put("error", e.getMessage());
+                System.err.println("Recovering interrupted shard split failed: " + e.getMessage());
+            }
+            status.put("finishedAt", Instant.now().toString());
+        });
+    }
+
+    // Users with rows of buckets on shard, read from the rows themselves
+    private List<Long> usersInBuckets(AssessmentShardRouter.Shard shard, boolean[] buckets) {
+        List<Long> userIds = new ArrayList<>();
+        try (Connection connection = shard.getReadDataSource().getConnection()) {
+            for (Long userId : jdbcAssessmentRepository.findUserIds(connection)) {
+                if (buckets[AssessmentShardRouter.bucketOf(userId)]) {
+                    userIds.add(userId);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to list users on shard " + shard.getIndex() + ": " + e.getMessage(), e);
+        }
+        return userIds;
+    }
+
+    private void copyMatching(AssessmentShardRouter.Shard source, AssessmentShardRouter.Shard target,
+                              boolean[] isMoving, Map<String, Object> status) {
+        List<Assessment> batch = new ArrayList<>(splitBatchSize);
+        long[] copied = {0};
+        scanRows(source, row -> {
+            Assessment assessment = jdbcAssessmentRepository.readRow(row);
+            Long userId = userIdOf(assessment);
+            if (!isMoving[AssessmentShardRouter.bucketOf(userId)]) {
+                return;
+            }
+            batch.add(assessment);
+            if (batch.size() >= splitBatchSize) {
+                copyBatch(target, batch);
+                copied[0] += batch.size();
+                status.put("copied", copied[0]);
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            copyBatch(target, batch);
+            copied[0] += batch.size();
+            status.put("copied", copied[0]);
+        }
+    }
+
+    // Runs with writes paused, so no entry is added or taken on either shard meanwhile
+    private void copyDigestEntries(AssessmentShardRouter.Shard source, AssessmentShardRouter.Shard target,
+                                   boolean[] isMoving) {
+        Map<Long, List<JdbcEmailDigestRepository.Entry>> entries = new LinkedHashMap<>();
+        try (Connection connection = source.getReadDataSource().getConnection()) {
+            for (Long userId : digestRepository.findUserIds(connection)) {
+                if (isMoving[AssessmentShardRouter.bucketOf(userId)]) {
+                    entries.put(userId, digestRepository.find(connection, userId));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read digest entries on shard " + source.getIndex() + ": " + e.getMessage(), e);
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        target.getWriter().execute(connection -> {
+            for (Map.Entry<Long, List<JdbcEmailDigestRepository.Entry>> user : entries.entrySet()) {
+                digestRepository.insertAll(connection, user.getKey(), user.getValue());
+            }
+            return null;
+        });
+    }
+
+    private void copyBatch(AssessmentShardRouter.Shard target, List<Assessment> batch) {
+        List<Assessment> rows = new ArrayList<>(batch);
+        // Mirrored writes already hold the newest version of a row; never overwrite them
+        target.getWriter().execute(connection -> {
+            jdbcAssessmentRepository.insertIgnoringExisting(connection, rows, rows.size());
+            return null;
+        });
+    }
+
+    // Deletes the rows of buckets from shard, along with those users' summaries and digest entries there
+    private void deleteMatching(AssessmentShardRouter.Shard shard, boolean[] buckets) {
+        List<Long> ids = new ArrayList<>(splitBatchSize);
+        Set<Long> users = new HashSet<>();
+        scanRows(shard, row -> {
+            long userId = row.getLong(3);
+            boolean noUser = row.wasNull();
+            if (buckets[AssessmentShardRouter.bucketOf(noUser ? null : userId)]) {
+                if (!noUser) {
+                    users.add(userId);
+                }
+                ids.add(row.getLong(1));
+                if (ids.size() >= splitBatchSize) {
+                    deleteBatch(shard, ids);
+                    ids.clear();
+                }
+            }
+        });
+        if (!ids.isEmpty()) {
+            deleteBatch(shard, ids);
+        }
+        if (!users.isEmpty()) {
+            shard.getWriter().execute(connection -> {
+                jdbcAssessmentRepository.deleteSummaries(connection, users);
+                return null;
+            });
+        }
+        List<Long> digestUsers = new ArrayList<>();
+        try (Connection connection = shard.getReadDataSource().getConnection()) {
+            for (Long userId : digestRepository.findUserIds(connection)) {
+                if (buckets[AssessmentShardRouter.bucketOf(userId)]) {
+                    digestUsers.add(userId);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read digest entries on shard " + shard.getIndex() + ": " + e.getMessage(), e);
+        }
+        if (!digestUsers.isEmpty()) {
+            shard.getWriter().execute(connection -> {
+                digestRepository.deleteByUserIds(connection, digestUsers);
+                return null;
+            });
+        }
+    }
+
+    private void deleteBatch(AssessmentShardRouter.Shard shard, List<Long> ids) {
+        List<Long> batch = new ArrayList<>(ids);
+        shard.getWriter().execute(connection -> {
+            jdbcAssessmentRepository.deleteByIds(connection, batch);
+            return null;
+        });
+    }
+
+    private void scanRows(AssessmentShardRouter.Shard shard, JdbcAssessmentRepository.ExportRowHandler handler) {
+        try (Connection connection = shard.getReadDataSource().getConnection()) {
+            jdbcAssessmentRepository.exportRows(connection, null, null, null, splitBatchSize, handler);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to scan shard " + shard.getIndex() + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.dementia.riskassessment.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serializes writes to SQLite through one writer thread that owns its own connection.
+ * Commands wait in a bounded queue; the writer takes whatever is queued (up to maxGroupSize)
+ * and runs it in one BEGIN IMMEDIATE transaction, each command inside a savepoint so a failing
+ * command (whatever it throws) is rolled back alone. A command's future completes only after
+ * the group commits; if the group itself fails, every command in it fails and the writer moves on.
+ * Reads keep using the Hikari pool. The Spring bean writes the main database; assessment
+ * shards each get their own instance (see AssessmentShardRouter).
+ */
+@Component
+public class SqliteWriteScheduler {
+
+    /**
+     * A unit of work run on the writer connection inside the group transaction.
+     */
+    public interface WriteCommand<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private static class Pending<T> {
+        final WriteCommand<T> command;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+        Throwable error;
+
+        Pending(WriteCommand<T> command) {
+            this.command = command;
+        }
+
+        void run(Connection connection) {
+            try {
+                result = command.apply(connection);
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.datasource.url}")
+    private String datasourceUrl;
+
+    @Value("${app.db.write.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${app.db.write.max-group-size:128}")
+    private int maxGroupSize;
+
+    @Value("${app.db.write.timeout-ms:10000}")
+    private long timeoutMs;
+
+    private String writerName = "main";
+
+    private BlockingQueue<Pending<?>> queue;
+    private Connection connection;
+    private Thread writer;
+    private volatile boolean running;
+    private DistributionSummary groupSizes;
+
+    @Autowired
+    public SqliteWriteScheduler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Writer for another database file; the caller must call start() and stop().
+     */
+    public SqliteWriteScheduler(MeterRegistry meterRegistry, String writerName, String datasourceUrl,
+                                int queueCapacity, int maxGroupSize, long timeoutMs) {
+        this.meterRegistry = meterRegistry;
+        this.writerName = writerName;
+        this.datasourceUrl = datasourceUrl;
+        this.queueCapacity = queueCapacity;
+        this.maxGroupSize = maxGroupSize;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @PostConstruct
+    public void start() throws SQLException {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        connection = DriverManager.getConnection(datasourceUrl);
+        connection.setAutoCommit(true);
+        Gauge.builder("db.write.queue", queue, BlockingQueue::size)
+            .description("Write commands waiting for the SQLite writer thread")
+            .tag("writer", writerName)
+            .register(meterRegistry);
+        groupSizes = DistributionSummary.builder("db.write.group.size")
+            .description("Commands committed per SQLite transaction")
+            .tag("writer", writerName)
+            .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "main".equals(writerName) ? "sqlite-writer" : "sqlite-writer-" + writerName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws SQLException {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connection.close();
+    }
+
+    /**
+     * Queues command and returns a future that completes once its group has committed.
+     */
+    public <T> CompletableFuture<T> submit(WriteCommand<T> command) {
+        Pending<T> pending = new Pending<>(command);
+        boolean queued;
+        try {
+            queued = running && queue.offer(pending, timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing a database write", e);
+        }
+        if (!queued) {
+            throw new RuntimeException("Database is temporarily busy. Please try again in a moment.");
+        }
+        return pending.future;
+    }
+
+    /**
+     * Runs command through the writer and waits for its commit.
+     */
+    public <T> T execute(WriteCommand<T> command) {
+        return await(submit(command));
+    }
+
+    /**
+     * Waits for a future returned by submit, translating failures like execute does.
+     */
+    public <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a database write", e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Database is temporarily busy. Please try again in a moment.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Database write failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending<?>> group = new ArrayList<>(maxGroupSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                if (queue.isEmpty()) {
+                    break;
+                }
+            }
+            queue.drainTo(group, maxGroupSize - group.size());
+            commitGroup(group);
+            group.clear();
+        }
+    }
+
+    private void commitGroup(List<Pending<?>> group) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("BEGIN IMMEDIATE");
+            for (Pending<?> pending : group) {
+                statement.execute("SAVEPOINT write_command");
+                pending.run(connection);
+                if (pending.error != null) {
+                    statement.execute("ROLLBACK TO write_command");
+                }
+                statement.execute("RELEASE write_command");
+            }
+            statement.execute("COMMIT");
+        } catch (Throwable e) {
+            // The whole group is lost: roll back and fail every command that had not already failed
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ROLLBACK");
+            } catch (SQLException rollbackError) {
+                // No transaction was open (BEGIN itself failed)
+            }
+            for (Pending<?> pending : group) {
+                if (pending.error == null) {
+                    pending.error = e;
+                }
+            }
+        }
+        groupSizes.record(group.size());
+        for (Pending<?> pending : group) {
+            pending.complete();
+        }
+    }
+}
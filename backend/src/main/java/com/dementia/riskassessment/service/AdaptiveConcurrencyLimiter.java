@@ -0,0 +1,133 @@
+package com.dementia.riskassessment.service;
+
+/**
+ * AIMD concurrency limit for calls to the ML service, driven by observed latency.
+ * The no-load latency is the minimum seen in the previous window of samples. A call that fails
+ * or takes longer than tolerance times that baseline shrinks the limit by backoffRatio, at most
+ * once per round trip; otherwise, while the limit is in use, each call grows it by 1/limit
+ * (about one slot per round trip). Callers over the limit wait up to queueTimeoutMillis,
+ * with at most maxQueued waiting, and are otherwise rejected with MLOverloadedException.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int BASELINE_WINDOW = 256;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final long queueTimeoutNanos;
+    private final int maxQueued;
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long rejections;
+
+    private long noLoadRttNanos = Long.MAX_VALUE;
+    private long windowMinRttNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseAt;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance,
+                                      double backoffRatio, long queueTimeoutMillis, int maxQueued) {
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.queueTimeoutNanos = queueTimeoutMillis * 1_000_000L;
+        this.maxQueued = maxQueued;
+        this.lastDecreaseAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a slot, waiting briefly if the limit is reached. Returns the start time to pass to release.
+     */
+    public synchronized long acquire() {
+        if (inFlight >= (int) limit) {
+            if (queued >= maxQueued || queueTimeoutNanos <= 0) {
+                throw reject();
+            }
+            queued++;
+            try {
+                long deadline = System.nanoTime() + queueTimeoutNanos;
+                while (inFlight >= (int) limit) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw reject();
+                    }
+                    wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MLOverloadedException("Interrupted while waiting for an ML call slot");
+            } finally {
+                queued--;
+            }
+        }
+        inFlight++;
+        return System.nanoTime();
+    }
+
+    public synchronized void release(long startNanos, boolean success) {
+        long now = System.nanoTime();
+        long rtt = now - startNanos;
+        inFlight--;
+
+        if (success) {
+            windowMinRttNanos = Math.min(windowMinRttNanos, rtt);
+            if (noLoadRttNanos == Long.MAX_VALUE) {
+                noLoadRttNanos = rtt;
+            }
+            if (++windowSamples >= BASELINE_WINDOW) {
+                // Re-baseline so the limit follows lasting changes in model latency
+                noLoadRttNanos = windowMinRttNanos;
+                windowMinRttNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+        }
+
+        if (!success || rtt > noLoadRttNanos * tolerance) {
+            // Calls that started before the last decrease already saw the old limit
+            if (startNanos > lastDecreaseAt) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseAt = now;
+            }
+        } else if (inFlight + 1 >= limit / 2) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns a slot without feeding its latency into the limit, for calls whose duration
+     * is not comparable to single predictions (batches).
+     */
+    public synchronized void releaseUnsampled() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private MLOverloadedException reject() {
+        rejections++;
+        return new MLOverloadedException("ML service is overloaded (" + inFlight + " calls in flight, limit "
+            + (int) limit + "). Please try again shortly.");
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+}
@@ -0,0 +1,343 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.repository.AssessmentShardRouter;
+import com.dementia.riskassessment.repository.JdbcAssessmentRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.sqlite.SQLiteConfig;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams assessments out as NDJSON or CSV. Each export reads through its own read-only
+ * SQLite connection per shard (outside the Hikari pools, so live requests keep their
+ * connections) and writes every row as soon as it is fetched, so memory stays flat
+ * regardless of size.
+ */
+@Service
+public class AssessmentExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final String CSV_HEADER = "id,timestamp,user_id,age,reaction_time_ms,memory_score,speech_pause_ms,"
+        + "word_repetition_rate,task_error_rate,sleep_hours,risk_label,provisional\n";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Marks the end of one shard's output in the chunk queue
+    private static final byte[] END_OF_SHARD = new byte[0];
+
+    private final JdbcAssessmentRepository jdbcAssessmentRepository;
+    private final AssessmentShardRouter shardRouter;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Value("${assessment.export.fetch-size:500}")
+    private int fetchSize;
+
+    private final Semaphore exportPermits;
+
+    @Autowired
+    public AssessmentExportService(JdbcAssessmentRepository jdbcAssessmentRepository, AssessmentShardRouter shardRouter,
+                                   @Value("${assessment.export.max-concurrent:2}") int maxConcurrent) {
+        this.jdbcAssessmentRepository = jdbcAssessmentRepository;
+        this.shardRouter = shardRouter;
+        this.exportPermits = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /**
+     * Returns the body that performs the export when the response is written. Throws
+     * IllegalStateException when max-concurrent exports are already running; the export slot is
+     * taken and released by the body itself, so a body that never runs (client gone, async
+     * timeout) holds no slot. A request that loses the race for the last slot fails the same way
+     * once its body starts.
+     */
+    public StreamingResponseBody openExport(Format format, Long userId, LocalDateTime from, LocalDateTime to,
+                                            boolean gzip) {
+        if (exportPermits.availablePermits() == 0) {
+            throw new IllegalStateException("Too many exports in progress, try again later");
+        }
+        return out -> {
+            if (!exportPermits.tryAcquire()) {
+                throw new IllegalStateException("Too many exports in progress, try again later");
+            }
+            try {
+                export(format, userId, from, to, gzip, out);
+            } finally {
+                exportPermits.release();
+            }
+        };
+    }
+
+    private void export(Format format, Long userId, LocalDateTime from, LocalDateTime to, boolean gzip,
+                        OutputStream out) throws IOException {
+        // Closing the gzip stream also frees its deflater when the export fails part way
+        try (GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null) {
+            OutputStream target = gzipStream != null ? gzipStream : out;
+            if (format == Format.CSV) {
+                target.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+            }
+            if (userId != null || !shardRouter.isSharded()) {
+                // One user's rows live on one shard
+                exportShard(shardRouter.shardFor(userId), false, format, userId, from, to, target);
+            } else {
+                exportAllShards(format, from, to, target);
+            }
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Scans every shard in parallel; each scan formats its rows into fixed-size chunks that this
+     * thread writes out as they arrive, so memory stays bounded by the chunk queue. Rows from
+     * different shards are interleaved.
+     */
+    private long exportAllShards(Format format, LocalDateTime from, LocalDateTime to, OutputStream target)
+            throws IOException {
+        List<AssessmentShardRouter.Shard> shards = shardRouter.getShards();
+        BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(shards.size() * 2);
+        List<Future<Long>> scans = new ArrayList<>();
+        for (AssessmentShardRouter.Shard shard : shards) {
+            scans.add(shardRouter.getScanExecutor().submit(() -> {
+                try (ChunkOutputStream chunkStream = new ChunkOutputStream(chunks)) {
+                    return exportShard(shard, true, format, null, from, to, chunkStream);
+                } finally {
+                    chunks.put(END_OF_SHARD);
+                }
+            }));
+        }
+        try {
+            int finished = 0;
+            while (finished < shards.size()) {
+                byte[] chunk = chunks.take();
+                if (chunk == END_OF_SHARD) {
+                    finished++;
+                } else {
+                    target.write(chunk);
+                }
+            }
+            long rows = 0;
+            for (Future<Long> scan : scans) {
+                rows += scan.get();
+            }
+            return rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Assessment export interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Assessment export failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Stops scans still blocked on a full queue when the client went away
+            scans.forEach(scan -> scan.cancel(true));
+        }
+    }
+
+    private long exportShard(AssessmentShardRouter.Shard shard, boolean ownedOnly, Format format, Long userId,
+                             LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        // Rows a split has copied but not yet deleted are exported by their owning shard only
+        int ownerShard = ownedOnly ? shard.getIndex() : -1;
+        try (Connection connection = DriverManager.getConnection(shard.getUrl(), config.toProperties())) {
+            return format == Format.CSV
+                ? exportCsv(connection, userId, from, to, ownerShard, out)
+                : exportNdjson(connection, userId, from, to, ownerShard, out);
+        } catch (SQLException e) {
+            throw new IOException("Assessment export failed: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean skip(int ownerShard, long userId, boolean noUser) {
+        return ownerShard >= 0 && !shardRouter.owns(ownerShard, noUser ? null : userId);
+    }
+
+    private long exportNdjson(Connection connection, Long userId, LocalDateTime from, LocalDateTime to,
+                              int ownerShard, OutputStream out) throws SQLException, IOException {
+        long[] written = {0};
+        try (JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            json.setRootValueSeparator(new SerializedString("\n"));
+            jdbcAssessmentRepository.exportRows(connection, userId, from, to, fetchSize, row -> {
+                long owner = row.getLong(3);
+                boolean noUser = row.wasNull();
+                if (skip(ownerShard, owner, noUser)) {
+                    return;
+                }
+                json.writeStartObject();
+                json.writeNumberField("id", row.getLong(1));
+                json.writeStringField("timestamp", formatTimestamp(row.getLong(2)));
+                if (noUser) {
+                    json.writeNullField("user_id");
+                } else {
+                    json.writeNumberField("user_id", owner);
+                }
+                json.writeNumberField("age", row.getInt(4));
+                json.writeNumberField("reaction_time_ms", row.getDouble(5));
+                json.writeNumberField("memory_score", row.getDouble(6));
+                json.writeNumberField("speech_pause_ms", row.getDouble(7));
+                json.writeNumberField("word_repetition_rate", row.getDouble(8));
+                json.writeNumberField("task_error_rate", row.getDouble(9));
+                json.writeNumberField("sleep_hours", row.getDouble(10));
+                json.writeStringField("risk_label", row.getString(11));
+                json.writeBooleanField("provisional", row.getInt(12) != 0);
+                json.writeEndObject();
+                written[0]++;
+            });
+            if (written[0] > 0) {
+                json.writeRaw('\n');
+            }
+            return written[0];
+        }
+    }
+
+    private long exportCsv(Connection connection, Long userId, LocalDateTime from, LocalDateTime to,
+                           int ownerShard, OutputStream out) throws SQLException, IOException {
+        long[] written = {0};
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        jdbcAssessmentRepository.exportRows(connection, userId, from, to, fetchSize, row -> {
+            long owner = row.getLong(3);
+            boolean noUser = row.wasNull();
+            if (skip(ownerShard, owner, noUser)) {
+                return;
+            }
+            csv.write(Long.toString(row.getLong(1)));
+            csv.write(',');
+            csv.write(formatTimestamp(row.getLong(2)));
+            csv.write(',');
+            if (!noUser) {
+                csv.write(Long.toString(owner));
+            }
+            csv.write(',');
+            csv.write(Integer.toString(row.getInt(4)));
+            for (int column = 5; column <= 10; column++) {
+                csv.write(',');
+                csv.write(Double.toString(row.getDouble(column)));
+            }
+            csv.write(',');
+            writeCsvText(csv, row.getString(11));
+            csv.write(',');
+            csv.write(row.getInt(12) != 0 ? "true" : "false");
+            csv.write('\n');
+            written[0]++;
+        });
+        csv.flush();
+        return written[0];
+    }
+
+    private static void writeCsvText(Writer csv, String label) throws IOException {
+        if (label == null) {
+            return;
+        }
+        if (label.indexOf(',') < 0 && label.indexOf('"') < 0 && label.indexOf('\n') < 0) {
+            csv.write(label);
+            return;
+        }
+        csv.write('"');
+        csv.write(label.replace("\"", "\"\""));
+        csv.write('"');
+    }
+
+    private static String formatTimestamp(long epochMillis) {
+        return new Timestamp(epochMillis).toLocalDateTime().toString();
+    }
+
+    /**
+     * Buffers output into BUFFER_SIZE chunks and hands each full chunk to a queue.
+     * flush() is ignored so generators do not emit tiny chunks; close() sends the remainder.
+     */
+    private static final class ChunkOutputStream extends OutputStream {
+        private final BlockingQueue<byte[]> queue;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int count;
+
+        ChunkOutputStream(BlockingQueue<byte[]> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                sendChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    sendChunk();
+                }
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count > 0) {
+                sendChunk();
+            }
+        }
+
+        private void sendChunk() throws IOException {
+            try {
+                queue.put(Arrays.copyOf(buffer, count));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Assessment export cancelled");
+            }
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.AssessmentRequest;
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+import com.dementia.riskassessment.entity.Assessment;
+import com.dementia.riskassessment.entity.User;
+import com.dementia.riskassessment.repository.BlockIdAllocator;
+import com.dementia.riskassessment.repository.ShardedAssessmentRepository;
+import com.dementia.riskassessment.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk import of historical assessments from NDJSON or CSV. The upload is spooled to disk,
+ * then read back one line at a time on a background thread: each row is validated against
+ * the AssessmentRequest constraints, valid rows are scored with one predictRiskBatch call
+ * per batch and inserted through ShardedAssessmentRepository.insertAll, so every batch is
+ * one bounded transaction per shard. Rejected rows are listed in the job's error report.
+ * Imported assessments do not send result emails.
+ */
+@Service
+public class AssessmentImportService {
+
+    public enum Format { NDJSON, CSV }
+
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    public static class ImportJob {
+        private final String jobId;
+        private final Format format;
+        private final long bytesTotal;
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final List<Map<String, Object>> errors = new CopyOnWriteArrayList<>();
+        private volatile State state = State.RUNNING;
+        private volatile boolean errorsTruncated;
+        private volatile String message;
+        private volatile Instant finishedAt;
+
+        ImportJob(String jobId, Format format, long bytesTotal) {
+            this.jobId = jobId;
+            this.format = format;
+            this.bytesTotal = bytesTotal;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getRowsRead() {
+            return rowsRead.get();
+        }
+
+        public long getImported() {
+            return imported.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public int getPercentComplete() {
+            if (state == State.COMPLETED) {
+                return 100;
+            }
+            // Stays below 100 until the last batch is stored
+            return bytesTotal > 0 ? (int) Math.min(99, bytesRead.get() * 100 / bytesTotal) : 0;
+        }
+
+        public long getRowsPerSecond() {
+            long millis = Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now()).toMillis();
+            return millis > 0 ? rowsRead.get() * 1000 / millis : 0;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public List<Map<String, Object>> getErrors() {
+            return errors;
+        }
+
+        public boolean isErrorsTruncated() {
+            return errorsTruncated;
+        }
+    }
+
+    // One parsed row waiting to be scored
+    private static class PendingRow {
+        private final AssessmentRequest request;
+        private final LocalDateTime timestamp;
+        private final User user;
+
+        PendingRow(AssessmentRequest request, LocalDateTime timestamp, User user) {
+            this.request = request;
+            this.timestamp = timestamp;
+            this.user = user;
+        }
+    }
+
+    private static final String[] CSV_FIELDS = {"age", "reaction_time_ms", "memory_score", "speech_pause_ms",
+        "word_repetition_rate", "task_error_rate", "sleep_hours"};
+
+    private final RiskPredictor riskPredictor;
+    private final ShardedAssessmentRepository shardedAssessmentRepository;
+    private final UserRepository userRepository;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    @Value("${assessment.import.dir:./data/import}")
+    private String importDir;
+
+    @Value("${assessment.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${assessment.import.jdbc-batch-size:100}")
+    private int jdbcBatchSize;
+
+    @Value("${assessment.import.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${assessment.import.max-errors:1000}")
+    private int maxErrors;
+
+    @Value("${assessment.import.retention-minutes:60}")
+    private long retentionMinutes;
+
+    private final int maxConcurrent;
+    private final Semaphore importPermits;
+    private ExecutorService executor;
+
+    @Autowired
+    public AssessmentImportService(RiskPredictor riskPredictor, ShardedAssessmentRepository shardedAssessmentRepository,
+                                   UserRepository userRepository, Validator validator, ObjectMapper objectMapper,
+                                   @Value("${assessment.import.max-concurrent:2}") int maxConcurrent) {
+        this.riskPredictor = riskPredictor;
+        this.shardedAssessmentRepository = shardedAssessmentRepository;
+        this.userRepository = userRepository;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.importPermits = new Semaphore(this.maxConcurrent);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Path dir = Paths.get(importDir);
+        Files.createDirectories(dir);
+        // Spool files left by a previous run belong to jobs that no longer exist
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "import-*.tmp")) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        executor = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "assessment-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Spools the upload to disk and starts importing it in the background. Throws
+     * IllegalStateException when max-concurrent imports are already running and
+     * IllegalArgumentException when the upload is larger than max-bytes.
+     */
+    public ImportJob startImport(Format format, InputStream upload) throws IOException {
+        if (!importPermits.tryAcquire()) {
+            throw new IllegalStateException("Too many imports in progress, try again later");
+        }
+        Path spool = null;
+        try {
+            pruneFinishedJobs();
+            spool = Files.createTempFile(Paths.get(importDir), "import-", ".tmp");
+            long size = spoolUpload(upload, spool);
+            ImportJob job = new ImportJob(UUID.randomUUID().toString(), format, size);
+            jobs.put(job.getJobId(), job);
+            Path file = spool;
+            executor.execute(() -> runImport(job, file));
+            return job;
+        } catch (IOException | RuntimeException e) {
+            importPermits.release();
+            if (spool != null) {
+                Files.deleteIfExists(spool);
+            }
+            throw e;
+        }
+    }
+
+    public ImportJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private long spoolUpload(InputStream upload, Path spool) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(spool)) {
+            int n;
+            while ((n = upload.read(buffer)) != -1) {
+                size += n;
+                if (size > maxBytes) {
+                    throw new IllegalArgumentException("Import is larger than " + maxBytes + " bytes");
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+        return size;
+    }
+
+    private void pruneFinishedJobs() {
+        Instant cutoff = Instant.now().minus(retentionMinutes, ChronoUnit.MINUTES);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private void runImport(ImportJob job, Path spool) {
+        try (InputStream in = new CountingInputStream(Files.newInputStream(spool), job.bytesRead);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024)) {
+            Map<Long, Optional<User>> users = new HashMap<>();
+            List<PendingRow> batch = new ArrayList<>(batchSize);
+            Map<String, Integer> columns = null;
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (job.format == Format.CSV && columns == null) {
+                    columns = readCsvHeader(line);
+                    continue;
+                }
+                job.rowsRead.incrementAndGet();
+                PendingRow row = job.format == Format.CSV
+                    ? parseCsvRow(job, lineNumber, line, columns, users)
+                    : parseNdjsonRow(job, lineNumber, line, users);
+                if (row != null) {
+                    batch.add(row);
+                    if (batch.size() >= batchSize) {
+                        importBatch(job, batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                importBatch(job, batch);
+            }
+            job.state = State.COMPLETED;
+            System.out.println("Assessment import " + job.jobId + " finished: " + job.imported.get() + " imported, "
+                + job.rejected.get() + " rejected, " + job.getRowsPerSecond() + " rows/s");
+        } catch (Exception e) {
+            job.message = e.getMessage();
+            job.state = State.FAILED;
+            System.err.println("Assessment import " + job.jobId + " failed after " + job.imported.get()
+                + " rows: " + e.getMessage());
+        } finally {
+            job.finishedAt = Instant.now();
+            importPermits.release();
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                System.err.println("Failed to delete import spool file " + spool + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void importBatch(ImportJob job, List<PendingRow> batch) {
+        List<MLServiceRequest> requests = new ArrayList<>(batch.size());
+        for (PendingRow row : batch) {
+            AssessmentRequest request = row.request;
+            requests.add(new MLServiceRequest(
+                request.getAge(),
+                request.getReaction_time_ms(),
+                request.getMemory_score(),
+                request.getSpeech_pause_ms(),
+                request.getWord_repetition_rate(),
+                request.getTask_error_rate(),
+                request.getSleep_hours()
+            ));
+        }
+        List<MLServiceResponse> responses = riskPredictor.predictRiskBatch(requests);
+
+        BlockIdAllocator ids = BlockIdAllocator.get("assessment_id");
+        List<Assessment> assessments = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PendingRow row = batch.get(i);
+            AssessmentRequest request = row.request;
+            MLServiceResponse mlResponse = responses.get(i);
+            Assessment assessment = new Assessment(
+                row.timestamp,
+                request.getAge(),
+                request.getReaction_time_ms(),
+                request.getMemory_score(),
+                request.getSpeech_pause_ms(),
+                request.getWord_repetition_rate(),
+                request.getTask_error_rate(),
+                request.getSleep_hours(),
+                mlResponse.getRisk_level()
+            );
+            // Fallback labels are rescored later like any other provisional assessment
+            assessment.setProvisional(mlResponse.isProvisional());
+            assessment.setUser(row.user);
+            assessment.setId(ids.nextId());
+            assessments.add(assessment);
+        }
+        shardedAssessmentRepository.insertAll(assessments, jdbcBatchSize);
+        job.imported.addAndGet(assessments.size());
+    }
+
+    private PendingRow parseNdjsonRow(ImportJob job, long lineNumber, String line, Map<Long, Optional<User>> users) {
+        AssessmentRequest request;
+        String timestamp = null;
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            if (!node.isObject()) {
+                reject(job, lineNumber, "Expected a JSON object", null);
+                return null;
+            }
+            request = objectMapper.treeToValue(node, AssessmentRequest.class);
+            // Exported rows use user_id
+            if (request.getUserId() == null && node.hasNonNull("user_id")) {
+                request.setUserId(node.get("user_id").asLong());
+            }
+            if (node.hasNonNull("timestamp")) {
+                timestamp = node.get("timestamp").asText();
+            }
+        } catch (JsonProcessingException e) {
+            reject(job, lineNumber, "Malformed JSON: " + e.getOriginalMessage(), null);
+            return null;
+        }
+        return validate(job, lineNumber, request, timestamp, new LinkedHashMap<>(), users);
+    }
+
+    private static Map<String, Integer> readCsvHeader(String line) {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitCsv(line);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(), i);
+        }
+        for (String field : CSV_FIELDS) {
+            if (!columns.containsKey(field)) {
+                throw new IllegalArgumentException("CSV header is missing column " + field);
+            }
+        }
+        return columns;
+    }
+
+    private PendingRow parseCsvRow(ImportJob job, long lineNumber, String line, Map<String, Integer> columns,
+                                   Map<Long, Optional<User>> users) {
+        List<String> cells = splitCsv(line);
+        Map<String, String> errors = new LinkedHashMap<>();
+        AssessmentRequest request = new AssessmentRequest();
+        String age = cell(cells, columns, "age");
+        if (age != null) {
+            try {
+                request.setAge(Integer.valueOf(age));
+            } catch (NumberFormatException e) {
+                errors.put("age", "Age must be a whole number");
+            }
+        }
+        request.setReaction_time_ms(parseDouble(cells, columns, "reaction_time_ms", errors));
+        request.setMemory_score(parseDouble(cells, columns, "memory_score", errors));
+        request.setSpeech_pause_ms(parseDouble(cells, columns, "speech_pause_ms", errors));
+        request.setWord_repetition_rate(parseDouble(cells, columns, "word_repetition_rate", errors));
+        request.setTask_error_rate(parseDouble(cells, columns, "task_error_rate", errors));
+        request.setSleep_hours(parseDouble(cells, columns, "sleep_hours", errors));
+        String userId = cell(cells, columns, columns.containsKey("userid") ? "userid" : "user_id");
+        if (userId != null) {
+            try {
+                request.setUserId(Long.valueOf(userId));
+            } catch (NumberFormatException e) {
+                errors.put("userId", "User ID must be a number");
+            }
+        }
+        return validate(job, lineNumber, request, cell(cells, columns, "timestamp"), errors, users);
+    }
+
+    private PendingRow validate(ImportJob job, long lineNumber, AssessmentRequest request, String timestamp,
+                                Map<String, String> errors, Map<Long, Optional<User>> users) {
+        for (ConstraintViolation<AssessmentRequest> violation : validator.validate(request)) {
+            errors.putIfAbsent(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        LocalDateTime assessedAt = LocalDateTime.now();
+        if (timestamp != null) {
+            try {
+                assessedAt = LocalDateTime.parse(timestamp);
+            } catch (DateTimeParseException e) {
+                errors.put("timestamp", "Timestamp must be ISO-8601, e.g. 2024-05-01T09:30:00");
+            }
+        }
+        User user = null;
+        if (request.getUserId() != null) {
+            user = users.computeIfAbsent(request.getUserId(), userRepository::findById).orElse(null);
+            if (user == null) {
+                errors.put("userId", "Unknown user " + request.getUserId());
+            }
+        }
+        if (!errors.isEmpty()) {
+            reject(job, lineNumber, "Validation failed", errors);
+            return null;
+        }
+        // Stored with millisecond precision, as for live assessments
+        return new PendingRow(request, assessedAt.truncatedTo(ChronoUnit.MILLIS), user);
+    }
+
+    private void reject(ImportJob job, long lineNumber, String message, Map<String, String> fieldErrors) {
+        job.rejected.incrementAndGet();
+        if (job.errors.size() >= maxErrors) {
+            job.errorsTruncated = true;
+            return;
+        }
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("line", lineNumber);
+        error.put("message", message);
+        if (fieldErrors != null) {
+            error.put("errors", fieldErrors);
+        }
+        job.errors.add(error);
+    }
+
+    private static String cell(List<String> cells, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= cells.size()) {
+            return null;
+        }
+        String value = cells.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static Double parseDouble(List<String> cells, Map<String, Integer> columns, String name,
+                                      Map<String, String> errors) {
+        String value = cell(cells, columns, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            errors.put(name, "Must be a number");
+            return null;
+        }
+    }
+
+    /**
+     * Splits one CSV line, honouring double-quoted cells ("" is an escaped quote).
+     * Quoted cells cannot span lines.
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    // Tracks how far the reader is through the spool file for percentComplete
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count;
+
+        CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int n = super.read(bytes, offset, length);
+            if (n > 0) {
+                count.addAndGet(n);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.entity.Assessment;
+import com.dementia.riskassessment.entity.User;
+import com.dementia.riskassessment.repository.AssessmentIngestLog;
+import com.dementia.riskassessment.repository.SqliteWriteScheduler;
+import com.dementia.riskassessment.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the write that queues an assessment's results email, or its digest entry for users who
+ * chose User.EmailDelivery.DIGEST, to run in the transaction that inserts the assessment.
+ * Results go only to verified addresses.
+ */
+@Component
+public class AssessmentNotifications implements AssessmentIngestLog.Notifications {
+
+    private final EmailOutbox emailOutbox;
+    private final EmailDigest emailDigest;
+    private final UserRepository userRepository;
+
+    @Autowired
+    public AssessmentNotifications(EmailOutbox emailOutbox, EmailDigest emailDigest, UserRepository userRepository) {
+        this.emailOutbox = emailOutbox;
+        this.emailDigest = emailDigest;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * The write for assessment, whose user is loaded, or null if that user is not to be notified.
+     */
+    public SqliteWriteScheduler.WriteCommand<Void> forAssessment(Assessment assessment) {
+        return forUser(assessment.getUser(), assessment);
+    }
+
+    /**
+     * Looks the users up again: logged rows carry only the user ID, and the delivery choice
+     * or verification may have changed since the assessment was logged.
+     */
+    @Override
+    public Map<Long, SqliteWriteScheduler.WriteCommand<?>> prepare(List<Assessment> assessments) {
+        Set<Long> userIds = new HashSet<>();
+        for (Assessment assessment : assessments) {
+            if (assessment.getUser() != null) {
+                userIds.add(assessment.getUser().getId());
+            }
+        }
+        Map<Long, User> users = new HashMap<>();
+        for (User user : userRepository.findAllById(userIds)) {
+            users.put(user.getId(), user);
+        }
+        Map<Long, SqliteWriteScheduler.WriteCommand<?>> commands = new HashMap<>();
+        for (Assessment assessment : assessments) {
+            User user = assessment.getUser() != null ? users.get(assessment.getUser().getId()) : null;
+            SqliteWriteScheduler.WriteCommand<Void> command = forUser(user, assessment);
+            if (command != null) {
+                commands.put(assessment.getId(), command);
+            }
+        }
+        return commands;
+    }
+
+    @Override
+    public void queued() {
+        // Also covers a digest that just reached max-entries; otherwise the poller finds nothing
+        emailOutbox.wakeUp();
+    }
+
+    private SqliteWriteScheduler.WriteCommand<Void> forUser(User user, Assessment assessment) {
+        if (user == null || !Boolean.TRUE.equals(user.getEmailVerified())) {
+            return null;
+        }
+        if (user.getEmailDelivery() == User.EmailDelivery.DIGEST) {
+            return connection -> {
+                emailDigest.add(connection, user, assessment);
+                return null;
+            };
+        }
+        Map<String, Object> email = resultsEmail(user, assessment);
+        return connection -> {
+            emailOutbox.enqueue(connection, EmailService.KIND_ASSESSMENT_RESULTS, user.getEmail(), email);
+            return null;
+        };
+    }
+
+    private static Map<String, Object> resultsEmail(User user, Assessment assessment) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("firstName", user.getFirstName());
+        payload.put("lastName", user.getLastName());
+        payload.put("riskLevel", RiskLabels.displayName(assessment.getRisk_label()));
+        payload.put("recommendation", RiskLabels.recommendation(assessment.getRisk_label()));
+        payload.put("age", assessment.getAge());
+        payload.put("reactionTime", assessment.getReaction_time_ms());
+        payload.put("memoryScore", assessment.getMemory_score());
+        payload.put("speechPause", assessment.getSpeech_pause_ms());
+        payload.put("wordRepetition", assessment.getWord_repetition_rate());
+        payload.put("taskError", assessment.getTask_error_rate());
+        payload.put("sleepHours", assessment.getSleep_hours());
+        return payload;
+    }
+}
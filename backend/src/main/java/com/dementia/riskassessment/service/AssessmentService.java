@@ -1,96 +1,144 @@
 package com.dementia.riskassessment.service;
 
 import com.dementia.riskassessment.dto.AssessmentHistoryDTO;
+import com.dementia.riskassessment.dto.AssessmentHistoryPage;
+import com.dementia.riskassessment.dto.AssessmentHistoryRow;
 import com.dementia.riskassessment.dto.AssessmentRequest;
 import com.dementia.riskassessment.dto.AssessmentResponse;
+import com.dementia.riskassessment.dto.AssessmentSummaryDTO;
 import com.dementia.riskassessment.dto.MLServiceRequest;
 import com.dementia.riskassessment.dto.MLServiceResponse;
 import com.dementia.riskassessment.entity.Assessment;
 import com.dementia.riskassessment.entity.User;
-import com.dementia.riskassessment.repository.AssessmentRepository;
+import com.dementia.riskassessment.repository.AssessmentIngestLog;
+import com.dementia.riskassessment.repository.AssessmentShardRouter;
+import com.dementia.riskassessment.repository.AssessmentSummary;
+import com.dementia.riskassessment.repository.BlockIdAllocator;
+import com.dementia.riskassessment.repository.ShardedAssessmentRepository;
 import com.dementia.riskassessment.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Isolation;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class AssessmentService {
     
-    private final MLServiceClient mlServiceClient;
-    private final AssessmentRepository assessmentRepository;
+    private final RiskPredictor riskPredictor;
     private final UserRepository userRepository;
-    private final EmailService emailService;
+    private final EmailOutbox emailOutbox;
+    private final AssessmentNotifications notifications;
+    private final ShardedAssessmentRepository shardedAssessmentRepository;
+    // Present only when assessment.deferred.enabled=true
+    private final ObjectProvider<ScoringJournal> scoringJournal;
+    // Present only when app.db.write-behind.enabled=true
+    private final ObjectProvider<AssessmentIngestLog> ingestLog;
+    private final Timer scoreTimer;
+    private final Timer storeTimer;
     
     @Autowired
-    public AssessmentService(MLServiceClient mlServiceClient, AssessmentRepository assessmentRepository, 
-                           UserRepository userRepository, EmailService emailService) {
-        this.mlServiceClient = mlServiceClient;
-        this.assessmentRepository = assessmentRepository;
+    public AssessmentService(RiskPredictor riskPredictor, UserRepository userRepository,
+                           EmailOutbox emailOutbox, AssessmentNotifications notifications,
+                           ShardedAssessmentRepository shardedAssessmentRepository,
+                           ObjectProvider<ScoringJournal> scoringJournal,
+                           ObjectProvider<AssessmentIngestLog> ingestLog, MeterRegistry meterRegistry) {
+        this.riskPredictor = riskPredictor;
         this.userRepository = userRepository;
-        this.emailService = emailService;
+        this.emailOutbox = emailOutbox;
+        this.notifications = notifications;
+        this.shardedAssessmentRepository = shardedAssessmentRepository;
+        this.scoringJournal = scoringJournal;
+        this.ingestLog = ingestLog;
+        this.scoreTimer = Timer.builder("assessment.stage").tag("stage", "score")
+            .description("Time spent in each assessment pipeline stage")
+            .register(meterRegistry);
+        this.storeTimer = Timer.builder("assessment.stage").tag("stage", "store")
+            .description("Time spent in each assessment pipeline stage")
+            .register(meterRegistry);
     }
     
+    /**
+     * Runs the assessment pipeline: score (no database access), then store (one short write
+     * transaction holding the insert and, for verified users, the queued results email).
+     */
     public AssessmentResponse processAssessment(AssessmentRequest request) {
-        // Retry logic for SQLite database lock and connection timeout issues
-        int maxRetries = 3;
-        int retryDelay = 200; // milliseconds
-        
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            try {
-                return performAssessment(request);
-            } catch (Exception e) {
-                // Check if it's a database lock, rollback, or connection timeout error
-                String errorMessage = e.getMessage() != null ? e.getMessage() : "";
-                String causeMessage = e.getCause() != null && e.getCause().getMessage() != null 
-                    ? e.getCause().getMessage() : "";
-                String fullError = (errorMessage + " " + causeMessage).toLowerCase();
-                
-                if (fullError.contains("database is locked") || 
-                    fullError.contains("sqlite_busy") ||
-                    fullError.contains("sqlite_busy_snapshot") ||
-                    fullError.contains("locked") ||
-                    fullError.contains("busy") ||
-                    fullError.contains("rollback") ||
-                    fullError.contains("unable to rollback") ||
-                    fullError.contains("connection is not available") ||
-                    fullError.contains("request timed out") ||
-                    fullError.contains("hikaripool") ||
-                    fullError.contains("timeout") ||
-                    fullError.contains("snapshot")) {
-                    
-                    if (attempt < maxRetries - 1) {
-                        // Wait before retrying with exponential backoff
-                        try {
-                            Thread.sleep(retryDelay * (attempt + 1)); // 200ms, 400ms, 600ms
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw new RuntimeException("Assessment processing interrupted. Please try again.", ie);
-                        }
-                        continue; // Retry
-                    } else {
-                        // Last attempt failed
-                        throw new RuntimeException("Database is temporarily busy. Please try again in a moment.", e);
-                    }
-                } else {
-                    // Not a retryable error, rethrow
-                    throw e;
-                }
+        MLServiceResponse mlResponse;
+        try {
+            mlResponse = scoreTimer.record(() -> riskPredictor.predictRisk(toMLRequest(request)));
+        } catch (RuntimeException e) {
+            ScoringJournal journal = scoringJournal.getIfAvailable();
+            if (journal == null) {
+                throw e;
             }
+            // ML service unavailable: accept the assessment and score it once the service is back
+            String ticketId = journal.accept(request, BlockIdAllocator.get("assessment_id").nextId());
+            System.out.println("ML scoring deferred for ticket " + ticketId + ": " + e.getMessage());
+            AssessmentResponse response = new AssessmentResponse();
+            response.setTicketId(ticketId);
+            response.setStatus(ScoringJournal.Status.PENDING_SCORING.name());
+            return response;
         }
         
-        throw new RuntimeException("Assessment processing failed after retries. Please try again.");
+        Assessment assessment = storeTimer.record(() -> storeAssessment(request, mlResponse));
+        return toResponse(assessment);
     }
     
-    @Transactional(propagation = Propagation.REQUIRES_NEW, isolation = Isolation.READ_COMMITTED, timeout = 20)
-    private AssessmentResponse performAssessment(AssessmentRequest request) {
-        // Prepare request for ML service
-        MLServiceRequest mlRequest = new MLServiceRequest(
+    /**
+     * Stores an assessment that was scored later by the deferred scoring worker and emails the results.
+     * The row is inserted under the ID reserved when the ticket was accepted (null for tickets from
+     * older journals), and skipped together with its email if a run before a crash already stored it.
+     */
+    public Assessment completeDeferredAssessment(AssessmentRequest request, MLServiceResponse mlResponse, Long assessmentId) {
+        return storeTimer.record(() -> {
+            Assessment assessment = newAssessment(request, mlResponse,
+                assessmentId != null ? assessmentId : BlockIdAllocator.get("assessment_id").nextId());
+            // Always a direct insert: the journal completes the ticket only once the row is stored
+            if (shardedAssessmentRepository.insertIfAbsent(assessment, notifications.forAssessment(assessment))) {
+                emailOutbox.wakeUp();
+            }
+            return assessment;
+        });
+    }
+    
+    /**
+     * Returns the state of a deferred assessment, or null if the ticket is unknown.
+     */
+    public AssessmentResponse getDeferredStatus(String ticketId) {
+        ScoringJournal journal = scoringJournal.getIfAvailable();
+        ScoringJournal.Ticket ticket = journal != null ? journal.getTicket(ticketId) : null;
+        if (ticket == null) {
+            return null;
+        }
+        AssessmentResponse response = new AssessmentResponse();
+        response.setTicketId(ticketId);
+        response.setStatus(ticket.getStatus().name());
+        if (ticket.getStatus() == ScoringJournal.Status.COMPLETED) {
+            response.setRiskLevel(RiskLabels.displayName(ticket.getRiskLevel()));
+            response.setRecommendation(RiskLabels.recommendation(ticket.getRiskLevel()));
+            response.setProvisional(ticket.isProvisional());
+        }
+        return response;
+    }
+    
+    private MLServiceRequest toMLRequest(AssessmentRequest request) {
+        return new MLServiceRequest(
             request.getAge(),
             request.getReaction_time_ms(),
             request.getMemory_score(),
@@ -99,19 +147,12 @@ public class AssessmentService {
             request.getTask_error_rate(),
             request.getSleep_hours()
         );
-        
-        // Call ML service
-        MLServiceResponse mlResponse = mlServiceClient.predictRisk(mlRequest);
-        
-        // Capitalize risk level for response
-        String riskLevel = capitalizeFirst(mlResponse.getRisk_level());
-        
-        // Generate recommendation based on risk level
-        String recommendation = generateRecommendation(riskLevel);
-        
-        // Save assessment to database
+    }
+    
+    private Assessment newAssessment(AssessmentRequest request, MLServiceResponse mlResponse, long id) {
         Assessment assessment = new Assessment(
-            LocalDateTime.now(),
+            // Stored with millisecond precision; truncating here keeps history cursors stable across the write-behind flush
+            LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS),
             request.getAge(),
             request.getReaction_time_ms(),
             request.getMemory_score(),
@@ -121,6 +162,7 @@ public class AssessmentService {
             request.getSleep_hours(),
             mlResponse.getRisk_level()
         );
+        assessment.setProvisional(mlResponse.isProvisional());
         
         // Link assessment to user if userId is provided
         if (request.getUserId() != null) {
@@ -130,81 +172,243 @@ public class AssessmentService {
             }
         }
         
-        assessmentRepository.save(assessment);
+        // ID is assigned before queueing so the writer's transaction does no reservation work
+        assessment.setId(id);
+        return assessment;
+    }
+    
+    private Assessment storeAssessment(AssessmentRequest request, MLServiceResponse mlResponse) {
+        Assessment assessment = newAssessment(request, mlResponse, BlockIdAllocator.get("assessment_id").nextId());
+        // Results are emailed only to verified addresses, right away or collected into a digest
+        User user = assessment.getUser();
+        boolean notify = user != null && Boolean.TRUE.equals(user.getEmailVerified());
+        AssessmentIngestLog log = ingestLog.getIfAvailable();
+        if (log != null) {
+            // Write-behind: acknowledged once logged; the flusher inserts the row and queues its email together
+            log.append(assessment, notify);
+            return assessment;
+        }
+        if (!notify) {
+            shardedAssessmentRepository.insert(assessment);
+            return assessment;
+        }
+        shardedAssessmentRepository.insert(assessment, notifications.forAssessment(assessment));
+        // Also covers a digest that just reached max-entries; otherwise the poller finds nothing
+        emailOutbox.wakeUp();
+        return assessment;
+    }
+    
+    private AssessmentResponse toResponse(Assessment assessment) {
+        // Capitalize risk level for response
+        String riskLevel = RiskLabels.displayName(assessment.getRisk_label());
         
-        // Flush to ensure the save is committed immediately
-        assessmentRepository.flush();
+        // Generate recommendation based on risk level
+        String recommendation = RiskLabels.recommendation(assessment.getRisk_label());
         
-        // Send assessment results via email if user is logged in and email is verified
-        if (request.getUserId() != null) {
-            User user = userRepository.findById(request.getUserId()).orElse(null);
-            if (user != null && user.getEmailVerified() != null && user.getEmailVerified()) {
-                try {
-                    emailService.sendAssessmentResultsEmail(
-                        user.getEmail(),
-                        user.getFirstName(),
-                        user.getLastName(),
-                        riskLevel,
-                        recommendation,
-                        request.getAge(),
-                        request.getReaction_time_ms(),
-                        request.getMemory_score(),
-                        request.getSpeech_pause_ms(),
-                        request.getWord_repetition_rate(),
-                        request.getTask_error_rate(),
-                        request.getSleep_hours()
-                    );
-                } catch (Exception e) {
-                    // Log error but don't fail assessment
-                    System.err.println("Failed to send assessment results email: " + e.getMessage());
+        AssessmentResponse response = new AssessmentResponse(riskLevel, recommendation);
+        response.setProvisional(assessment.getProvisional());
+        return response;
+    }
+    
+    /**
+     * Rescores assessments that were given a provisional label while the ML service was down.
+     * Returns the number of assessments that received a definitive label.
+     */
+    public int rescoreProvisionalAssessments(int batchSize) {
+        int rescored = 0;
+        for (AssessmentShardRouter.Shard shard : shardedAssessmentRepository.getShards()) {
+            long afterId = Long.MIN_VALUE;
+            while (true) {
+                List<Assessment> pending = shardedAssessmentRepository.findProvisional(shard, afterId, batchSize);
+                if (pending.isEmpty()) {
+                    break;
                 }
+                
+                List<MLServiceRequest> requests = pending.stream().map(assessment -> new MLServiceRequest(
+                    assessment.getAge(),
+                    assessment.getReaction_time_ms(),
+                    assessment.getMemory_score(),
+                    assessment.getSpeech_pause_ms(),
+                    assessment.getWord_repetition_rate(),
+                    assessment.getTask_error_rate(),
+                    assessment.getSleep_hours()
+                )).collect(Collectors.toList());
+                List<MLServiceResponse> responses = riskPredictor.predictRiskBatch(requests);
+                
+                List<Assessment> updated = new ArrayList<>();
+                for (int i = 0; i < pending.size(); i++) {
+                    MLServiceResponse mlResponse = responses.get(i);
+                    if (mlResponse.isProvisional()) {
+                        // ML service still unavailable; leave the rest for the next run
+                        shardedAssessmentRepository.updateRiskLabels(updated);
+                        return rescored + updated.size();
+                    }
+                    Assessment assessment = pending.get(i);
+                    assessment.setRisk_label(mlResponse.getRisk_level());
+                    assessment.setProvisional(false);
+                    updated.add(assessment);
+                }
+                shardedAssessmentRepository.updateRiskLabels(updated);
+                rescored += updated.size();
+                if (pending.size() < batchSize) {
+                    break;
+                }
+                afterId = pending.get(pending.size() - 1).getId();
             }
         }
-        
-        return new AssessmentResponse(riskLevel, recommendation);
+        return rescored;
     }
     
-    private String capitalizeFirst(String str) {
-        if (str == null || str.isEmpty()) {
-            return str;
+    /**
+     * Summaries for userIds in request order; users without stored assessments are omitted.
+     * Reads one summary row per user instead of the history.
+     */
+    public List<AssessmentSummaryDTO> getAssessmentSummaries(List<Long> userIds) {
+        Map<Long, AssessmentSummary> summaries = new HashMap<>();
+        for (AssessmentSummary summary : shardedAssessmentRepository.findSummaries(userIds)) {
+            summaries.put(summary.getUserId(), summary);
         }
-        return str.substring(0, 1).toUpperCase() + str.substring(1).toLowerCase();
+        List<AssessmentSummaryDTO> result = new ArrayList<>(summaries.size());
+        for (Long userId : userIds) {
+            AssessmentSummary summary = summaries.remove(userId);
+            if (summary == null) {
+                continue;
+            }
+            Map<String, AssessmentSummaryDTO.FeatureStats> features = new LinkedHashMap<>();
+            for (int i = 0; i < AssessmentSummary.FEATURES.length; i++) {
+                features.put(AssessmentSummary.FEATURES[i],
+                    new AssessmentSummaryDTO.FeatureStats(summary.getMean(i), summary.getVariance(i)));
+            }
+            result.add(new AssessmentSummaryDTO(
+                userId,
+                summary.getCount(),
+                new Timestamp(summary.getLatestTimestamp()).toLocalDateTime(),
+                RiskLabels.displayName(summary.getLatestRiskLabel()),
+                RiskLabels.displayName(summary.getPreviousRiskLabel()),
+                RiskLabels.trend(summary.getPreviousRiskLabel(), summary.getLatestRiskLabel()),
+                features
+            ));
+        }
+        return result;
     }
     
-    private String generateRecommendation(String riskLevel) {
-        switch (riskLevel.toLowerCase()) {
-            case "low":
-                return "Maintain cognitive health monitoring. Continue regular check-ups and healthy lifestyle practices.";
-            case "medium":
-                return "Consider more frequent cognitive assessments and consult with a healthcare professional for further evaluation.";
-            case "high":
-                return "Please consult with a healthcare professional for a comprehensive evaluation and appropriate care planning.";
-            default:
-                return "Continue monitoring your cognitive health.";
-        }
+    /**
+     * Recomputes every user's summary from the stored assessments. Returns the number of users.
+     */
+    public int rebuildAssessmentSummaries() {
+        return shardedAssessmentRepository.rebuildSummaries();
     }
     
+    @Transactional(readOnly = true)
     public List<AssessmentHistoryDTO> getAssessmentHistory(Long userId) {
-        List<Assessment> assessments = assessmentRepository.findByUserIdOrderByTimestampDesc(userId);
+        List<AssessmentHistoryRow> rows = shardedAssessmentRepository.findHistoryRows(userId, null, null, 0);
         
-        return assessments.stream().map(assessment -> {
-            String patientName = "Unknown";
-            if (assessment.getUser() != null) {
-                patientName = assessment.getUser().getFirstName() + " " + assessment.getUser().getLastName();
+        // Merge rows still waiting in the write-behind log so users see their own submissions
+        AssessmentIngestLog log = ingestLog.getIfAvailable();
+        List<Assessment> unflushed = log != null ? log.pendingForUser(userId) : List.of();
+        if (!unflushed.isEmpty()) {
+            rows = mergeUnflushed(rows, unflushed, userId);
+        }
+        return toHistoryDTOs(rows);
+    }
+    
+    /**
+     * Returns one page of a user's history, newest first. The cursor is the token returned as
+     * nextCursor by the previous page (null for the first page); only limit + 1 rows are read.
+     */
+    @Transactional(readOnly = true)
+    public AssessmentHistoryPage getAssessmentHistoryPage(Long userId, String cursor, int limit) {
+        LocalDateTime cursorTimestamp = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                cursorTimestamp = LocalDateTime.parse(parts[0]);
+                cursorId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid history cursor");
+            }
+        }
+        
+        // One extra row tells us whether another page follows
+        List<AssessmentHistoryRow> rows = shardedAssessmentRepository.findHistoryRows(userId, cursorTimestamp, cursorId, limit + 1);
+        
+        AssessmentIngestLog log = ingestLog.getIfAvailable();
+        List<Assessment> unflushed = new ArrayList<>();
+        if (log != null) {
+            for (Assessment pending : log.pendingForUser(userId)) {
+                if (cursorTimestamp == null || isBefore(pending, cursorTimestamp, cursorId)) {
+                    unflushed.add(pending);
+                }
             }
-            
-            String riskLevel = capitalizeFirst(assessment.getRisk_label());
-            String recommendation = generateRecommendation(assessment.getRisk_label());
-            
-            return new AssessmentHistoryDTO(
-                assessment.getId(),
-                assessment.getTimestamp(),
+        }
+        if (!unflushed.isEmpty()) {
+            rows = mergeUnflushed(rows, unflushed, userId);
+        }
+        
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            AssessmentHistoryRow last = rows.get(limit - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (last.getTimestamp() + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+        }
+        return new AssessmentHistoryPage(toHistoryDTOs(rows), nextCursor);
+    }
+    
+    private static boolean isBefore(Assessment assessment, LocalDateTime timestamp, Long id) {
+        int cmp = assessment.getTimestamp().compareTo(timestamp);
+        return cmp < 0 || (cmp == 0 && assessment.getId() < id);
+    }
+    
+    private List<AssessmentHistoryRow> mergeUnflushed(List<AssessmentHistoryRow> stored, List<Assessment> unflushed, Long userId) {
+        Set<Long> storedIds = stored.stream().map(AssessmentHistoryRow::getId).collect(Collectors.toSet());
+        List<AssessmentHistoryRow> merged = new ArrayList<>(stored);
+        User owner = null;
+        for (Assessment assessment : unflushed) {
+            if (storedIds.contains(assessment.getId())) {
+                continue;
+            }
+            User user = assessment.getUser();
+            // Replayed log rows only carry the user ID
+            if (user == null || user.getFirstName() == null) {
+                if (owner == null) {
+                    owner = userRepository.findById(userId).orElse(null);
+                }
+                user = owner;
+            }
+            merged.add(new AssessmentHistoryRow(assessment.getId(), assessment.getTimestamp(), assessment.getAge(),
+                assessment.getRisk_label(), user != null ? user.getFirstName() : null, user != null ? user.getLastName() : null));
+        }
+        merged.sort(Comparator.comparing(AssessmentHistoryRow::getTimestamp).thenComparing(AssessmentHistoryRow::getId).reversed());
+        return merged;
+    }
+    
+    private List<AssessmentHistoryDTO> toHistoryDTOs(List<AssessmentHistoryRow> rows) {
+        List<AssessmentHistoryDTO> history = new ArrayList<>(rows.size());
+        // Every row belongs to the same user, so the name is normally built once
+        String firstName = null;
+        String lastName = null;
+        String patientName = "Unknown";
+        for (AssessmentHistoryRow row : rows) {
+            if (row.getFirstName() == null) {
+                patientName = "Unknown";
+                firstName = null;
+            } else if (!row.getFirstName().equals(firstName) || !Objects.equals(row.getLastName(), lastName)) {
+                firstName = row.getFirstName();
+                lastName = row.getLastName();
+                patientName = firstName + " " + lastName;
+            }
+            history.add(new AssessmentHistoryDTO(
+                row.getId(),
+                row.getTimestamp(),
                 patientName,
-                assessment.getAge(),
-                riskLevel,
-                recommendation
-            );
-        }).collect(Collectors.toList());
+                row.getAge(),
+                RiskLabels.displayName(row.getRiskLabel()),
+                RiskLabels.recommendation(row.getRiskLabel())
+            ));
+        }
+        return history;
     }
 }
 
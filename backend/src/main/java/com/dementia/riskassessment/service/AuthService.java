@@ -1,87 +1,47 @@
 package com.dementia.riskassessment.service;
 
 import com.dementia.riskassessment.dto.AuthResponse;
+import com.dementia.riskassessment.dto.EmailDeliveryRequest;
 import com.dementia.riskassessment.dto.LoginRequest;
 import com.dementia.riskassessment.dto.SignupRequest;
 import com.dementia.riskassessment.entity.User;
+import com.dementia.riskassessment.repository.BlockIdAllocator;
+import com.dementia.riskassessment.repository.JdbcUserRepository;
+import com.dementia.riskassessment.repository.SqliteWriteScheduler;
 import com.dementia.riskassessment.repository.UserRepository;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Isolation;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
 
 @Service
 public class AuthService {
     
     private final UserRepository userRepository;
-    private final EmailService emailService;
+    private final EmailOutbox emailOutbox;
+    private final SqliteWriteScheduler writeScheduler;
+    private final JdbcUserRepository jdbcUserRepository;
     private static final int VERIFICATION_CODE_LENGTH = 6;
     private static final int VERIFICATION_CODE_EXPIRY_HOURS = 24;
     
     @Autowired
-    public AuthService(UserRepository userRepository, EmailService emailService) {
+    public AuthService(UserRepository userRepository, EmailOutbox emailOutbox,
+                       SqliteWriteScheduler writeScheduler, JdbcUserRepository jdbcUserRepository) {
         this.userRepository = userRepository;
-        this.emailService = emailService;
+        this.emailOutbox = emailOutbox;
+        this.writeScheduler = writeScheduler;
+        this.jdbcUserRepository = jdbcUserRepository;
     }
     
     public AuthResponse signup(SignupRequest request) {
-        // Retry logic for SQLite database lock and connection timeout issues
-        int maxRetries = 3;
-        int retryDelay = 200; // milliseconds - increased to allow connections to be released
-        
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            try {
-                return performSignup(request);
-            } catch (Exception e) {
-                // Check if it's a database lock, rollback, or connection timeout error
-                String errorMessage = e.getMessage() != null ? e.getMessage() : "";
-                String causeMessage = e.getCause() != null && e.getCause().getMessage() != null 
-                    ? e.getCause().getMessage() : "";
-                String fullError = (errorMessage + " " + causeMessage).toLowerCase();
-                
-                if (fullError.contains("database is locked") || 
-                    fullError.contains("sqlite_busy") ||
-                    fullError.contains("locked") ||
-                    fullError.contains("busy") ||
-                    fullError.contains("rollback") ||
-                    fullError.contains("unable to rollback") ||
-                    fullError.contains("connection is not available") ||
-                    fullError.contains("request timed out") ||
-                    fullError.contains("hikaripool") ||
-                    fullError.contains("timeout")) {
-                    
-                    if (attempt < maxRetries - 1) {
-                        // Wait before retrying with exponential backoff
-                        // Longer delay to allow connections to be released
-                        try {
-                            Thread.sleep(retryDelay * (attempt + 1)); // 200ms, 400ms, 600ms
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            return new AuthResponse(false, "Signup interrupted. Please try again.");
-                        }
-                        continue; // Retry
-                    } else {
-                        // Last attempt failed
-                        return new AuthResponse(false, "Database is temporarily busy. Please try again in a moment.");
-                    }
-                } else {
-                    // Not a retryable error, return error response
-                    return new AuthResponse(false, "Signup failed: " + (errorMessage.isEmpty() ? "Unknown error" : errorMessage));
-                }
-            }
-        }
-        
-        return new AuthResponse(false, "Signup failed. Please try again.");
-    }
-    
-    @Transactional(propagation = Propagation.REQUIRES_NEW, isolation = Isolation.READ_COMMITTED, timeout = 20)
-    private AuthResponse performSignup(SignupRequest request) {
         // Check if user already exists
         if (userRepository.existsByEmail(request.getEmail())) {
             return new AuthResponse(false, "Email already registered");
@@ -106,19 +66,25 @@ public class AuthService {
         user.setVerificationCode(verificationCode);
         user.setVerificationCodeExpiry(LocalDateTime.now().plusHours(VERIFICATION_CODE_EXPIRY_HOURS));
         user.setEmailVerified(false);
+        user.setId(BlockIdAllocator.get("user_id").nextId());
         
-        user = userRepository.save(user);
-        
-        // Flush to ensure the save is committed immediately
-        userRepository.flush();
-        
-        // Send verification email
         try {
-            emailService.sendVerificationEmail(user.getEmail(), user.getFirstName(), verificationCode);
-        } catch (Exception e) {
-            // Log error but don't fail signup
-            System.err.println("Failed to send verification email: " + e.getMessage());
+            // The verification email is queued in the same transaction as the user
+            writeScheduler.execute(connection -> {
+                jdbcUserRepository.insert(connection, user);
+                emailOutbox.enqueue(connection, EmailService.KIND_VERIFICATION, user.getEmail(),
+                    verificationEmail(user.getFirstName(), verificationCode));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // A concurrent signup with the same email committed first
+            if (e.getCause() instanceof SQLiteException
+                    && ((SQLiteException) e.getCause()).getResultCode() == SQLiteErrorCode.SQLITE_CONSTRAINT_UNIQUE) {
+                return new AuthResponse(false, "Email already registered");
+            }
+            return new AuthResponse(false, "Signup failed: " + (e.getMessage() != null ? e.getMessage() : "Unknown error"));
         }
+        emailOutbox.wakeUp();
         
         return new AuthResponse(
             user.getId(),
@@ -131,6 +97,7 @@ public class AuthService {
         );
     }
     
+    @Transactional(readOnly = true)
     public AuthResponse login(LoginRequest request) {
         // Find user by email
         User user = userRepository.findByEmail(request.getEmail())
@@ -146,7 +113,7 @@ public class AuthService {
             return new AuthResponse(false, "Invalid email or password");
         }
         
-        return new AuthResponse(
+        AuthResponse response = new AuthResponse(
             user.getId(),
             user.getEmail(),
             user.getFirstName(),
@@ -155,6 +122,31 @@ public class AuthService {
             user.getGender(),
             user.getBloodGroup()
         );
+        response.setEmailDelivery(user.getEmailDelivery().name());
+        return response;
+    }
+    
+    /**
+     * Sets whether the user's assessment results are emailed one by one or as a digest.
+     * Results already collected for a digest still go out in it. Requires the same
+     * credentials as login.
+     */
+    public AuthResponse updateEmailDelivery(EmailDeliveryRequest request) {
+        User user = userRepository.findByEmail(request.getEmail())
+            .orElse(null);
+        
+        if (user == null || !user.getPassword().equals(hashPassword(request.getPassword()))) {
+            return new AuthResponse(false, "Invalid email or password");
+        }
+        
+        User.EmailDelivery emailDelivery = request.getEmailDelivery();
+        writeScheduler.execute(connection -> {
+            jdbcUserRepository.updateEmailDelivery(connection, user.getId(), emailDelivery);
+            return null;
+        });
+        AuthResponse response = new AuthResponse(true, "Email delivery set to " + emailDelivery.name());
+        response.setEmailDelivery(emailDelivery.name());
+        return response;
     }
     
     private String hashPassword(String password) {
@@ -225,20 +217,28 @@ public class AuthService {
             return new AuthResponse(false, "Email already verified");
         }
         
-        // Generate new verification code
+        // Generate new verification code and queue its email in the same transaction
         String verificationCode = generateVerificationCode();
-        user.setVerificationCode(verificationCode);
-        user.setVerificationCodeExpiry(LocalDateTime.now().plusHours(VERIFICATION_CODE_EXPIRY_HOURS));
-        userRepository.save(user);
-        userRepository.flush();
-        
-        // Send verification email
+        LocalDateTime expiry = LocalDateTime.now().plusHours(VERIFICATION_CODE_EXPIRY_HOURS);
         try {
-            emailService.sendResendVerificationEmail(user.getEmail(), user.getFirstName(), verificationCode);
-            return new AuthResponse(true, "Verification code sent to your email");
-        } catch (Exception e) {
+            writeScheduler.execute(connection -> {
+                jdbcUserRepository.updateVerificationCode(connection, user.getId(), verificationCode, expiry);
+                emailOutbox.enqueue(connection, EmailService.KIND_RESEND_VERIFICATION, user.getEmail(),
+                    verificationEmail(user.getFirstName(), verificationCode));
+                return null;
+            });
+        } catch (RuntimeException e) {
             return new AuthResponse(false, "Failed to send verification email: " + e.getMessage());
         }
+        emailOutbox.wakeUp();
+        return new AuthResponse(true, "Verification code sent to your email");
+    }
+    
+    private static Map<String, Object> verificationEmail(String firstName, String verificationCode) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("firstName", firstName);
+        payload.put("verificationCode", verificationCode);
+        return payload;
     }
 }
 
@@ -0,0 +1,139 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Caches predictions by a quantized feature vector. Each of the 7 features is divided by its
+ * step and floored into a 9-bit bucket; the buckets are packed into one long key. Rows with a
+ * feature outside the 0..511 bucket range bypass the cache. The cache is cleared whenever the
+ * delegate reports a different model version.
+ */
+public class CachingRiskPredictor implements RiskPredictor {
+
+    private static final int BITS_PER_FEATURE = 9;
+    private static final long MAX_BUCKET = (1L << BITS_PER_FEATURE) - 1;
+
+    private final RiskPredictor delegate;
+    private final PredictionCache cache;
+    private final double[] steps;
+    private volatile String cachedModelVersion;
+
+    public CachingRiskPredictor(RiskPredictor delegate, PredictionCache cache, double[] steps) {
+        if (steps.length != RandomForestModel.FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + RandomForestModel.FEATURE_COUNT + " quantization steps");
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+        this.steps = steps;
+        this.cachedModelVersion = delegate.getModelVersion();
+    }
+
+    @Override
+    public MLServiceResponse predictRisk(MLServiceRequest request) {
+        checkModelVersion();
+        long key = quantize(request);
+        if (key >= 0) {
+            String label = cache.get(key);
+            if (label != null) {
+                return new MLServiceResponse(label);
+            }
+        }
+
+        MLServiceResponse response = delegate.predictRisk(request);
+        store(key, response);
+        return response;
+    }
+
+    @Override
+    public List<MLServiceResponse> predictRiskBatch(List<MLServiceRequest> requests) {
+        checkModelVersion();
+        MLServiceResponse[] responses = new MLServiceResponse[requests.size()];
+        long[] keys = new long[requests.size()];
+        List<MLServiceRequest> missed = new ArrayList<>();
+        List<Integer> missedIndexes = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            keys[i] = quantize(requests.get(i));
+            String label = keys[i] >= 0 ? cache.get(keys[i]) : null;
+            if (label != null) {
+                responses[i] = new MLServiceResponse(label);
+            } else {
+                missed.add(requests.get(i));
+                missedIndexes.add(i);
+            }
+        }
+
+        if (!missed.isEmpty()) {
+            List<MLServiceResponse> scored = delegate.predictRiskBatch(missed);
+            if (scored.size() != missed.size()) {
+                throw new RuntimeException("Predictor returned " + scored.size() + " results for " + missed.size() + " rows");
+            }
+            for (int m = 0; m < scored.size(); m++) {
+                int i = missedIndexes.get(m);
+                responses[i] = scored.get(m);
+                store(keys[i], responses[i]);
+            }
+        }
+        return List.of(responses);
+    }
+
+    @Override
+    public String getModelVersion() {
+        return delegate.getModelVersion();
+    }
+
+    private void store(long key, MLServiceResponse response) {
+        // Provisional fallback labels are never cached.
+        // The HTTP client learns the model version from the response, so check again before storing
+        checkModelVersion();
+        if (key >= 0 && response != null && response.getRisk_level() != null && !response.isProvisional()) {
+            cache.put(key, response.getRisk_level());
+        }
+    }
+
+    private void checkModelVersion() {
+        String version = delegate.getModelVersion();
+        if (!Objects.equals(version, cachedModelVersion)) {
+            synchronized (this) {
+                if (!Objects.equals(version, cachedModelVersion)) {
+                    System.out.println("Model version changed from " + cachedModelVersion + " to " + version
+                        + ", clearing prediction cache");
+                    cache.clear();
+                    cachedModelVersion = version;
+                }
+            }
+        }
+    }
+
+    private long quantize(MLServiceRequest request) {
+        long key = 0;
+        key = pack(key, request.getAge(), steps[0]);
+        key = pack(key, request.getReaction_time_ms(), steps[1]);
+        key = pack(key, request.getMemory_score(), steps[2]);
+        key = pack(key, request.getSpeech_pause_ms(), steps[3]);
+        key = pack(key, request.getWord_repetition_rate(), steps[4]);
+        key = pack(key, request.getTask_error_rate(), steps[5]);
+        key = pack(key, request.getSleep_hours(), steps[6]);
+        return key;
+    }
+
+    private static long pack(long key, Number value, double step) {
+        if (key < 0 || value == null) {
+            return -1L;
+        }
+        double bucket = Math.floor(value.doubleValue() / step);
+        if (!(bucket >= 0 && bucket <= MAX_BUCKET)) {
+            return -1L;
+        }
+        return (key << BITS_PER_FEATURE) | (long) bucket;
+    }
+
+    public PredictionCache getCache() {
+        return cache;
+    }
+}
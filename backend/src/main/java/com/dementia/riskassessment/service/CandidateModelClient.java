@@ -0,0 +1,57 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Calls a single ML service instance running a candidate model, for shadow and canary evaluation.
+ */
+public class CandidateModelClient implements RiskPredictor {
+
+    private final RestTemplate restTemplate;
+    private final String baseUrl;
+    private volatile String modelVersion;
+
+    public CandidateModelClient(RestTemplate restTemplate, String baseUrl) {
+        this.restTemplate = restTemplate;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public MLServiceResponse predictRisk(MLServiceRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        try {
+            ResponseEntity<MLServiceResponse> response = restTemplate.postForEntity(
+                baseUrl + "/predict",
+                new HttpEntity<>(request, headers),
+                MLServiceResponse.class
+            );
+            String version = response.getHeaders().getFirst("X-Model-Version");
+            if (version != null) {
+                modelVersion = version;
+            }
+            if (response.getBody() == null) {
+                throw new RuntimeException("Candidate ML service returned an empty response");
+            }
+            return response.getBody();
+        } catch (RestClientException e) {
+            throw new RuntimeException("Failed to communicate with candidate ML service: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+}
@@ -0,0 +1,92 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Guards the ML predictor with a circuit breaker and a retry budget. When the circuit is open,
+ * or a call still fails after the permitted retries, the fallback scorer answers with a
+ * provisional label. Without a fallback, MLUnavailableException is thrown instead.
+ * Overload rejections from the concurrency limiter are passed through without counting.
+ */
+public class CircuitBreakingRiskPredictor implements RiskPredictor {
+
+    private final RiskPredictor delegate;
+    private final MLCircuitBreaker breaker;
+    private final RiskPredictor fallback;
+    private final int maxRetries;
+
+    public CircuitBreakingRiskPredictor(RiskPredictor delegate, MLCircuitBreaker breaker, RiskPredictor fallback,
+                                        int maxRetries) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.fallback = fallback;
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public MLServiceResponse predictRisk(MLServiceRequest request) {
+        return call(() -> delegate.predictRisk(request), () -> fallback.predictRisk(request));
+    }
+
+    @Override
+    public List<MLServiceResponse> predictRiskBatch(List<MLServiceRequest> requests) {
+        return call(() -> delegate.predictRiskBatch(requests), () -> {
+            List<MLServiceResponse> responses = new ArrayList<>(requests.size());
+            for (MLServiceRequest request : requests) {
+                responses.add(fallback.predictRisk(request));
+            }
+            return responses;
+        });
+    }
+
+    private interface Call<T> {
+        T run();
+    }
+
+    private <T> T call(Call<T> primary, Call<T> fallbackCall) {
+        if (!breaker.tryAcquirePermission()) {
+            return degraded(fallbackCall, null);
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                T result = primary.run();
+                breaker.onSuccess();
+                return result;
+            } catch (MLOverloadedException e) {
+                // Shed by the concurrency limiter: not a sign that the ML service is down
+                breaker.onIgnored();
+                throw e;
+            } catch (RuntimeException e) {
+                breaker.onFailure();
+                if (attempt < maxRetries && breaker.tryAcquireRetry()) {
+                    continue;
+                }
+                return degraded(fallbackCall, e);
+            }
+        }
+    }
+
+    private <T> T degraded(Call<T> fallbackCall, RuntimeException cause) {
+        if (fallback == null) {
+            if (cause != null) {
+                throw new MLUnavailableException("ML service is unavailable: " + cause.getMessage(), cause);
+            }
+            throw new MLUnavailableException("ML service is unavailable (circuit open)");
+        }
+        return fallbackCall.run();
+    }
+
+    @Override
+    public String getModelVersion() {
+        return delegate.getModelVersion();
+    }
+
+    public MLCircuitBreaker getBreaker() {
+        return breaker;
+    }
+}
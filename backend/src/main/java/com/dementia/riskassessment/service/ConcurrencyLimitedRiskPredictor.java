@@ -0,0 +1,50 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+import java.util.List;
+
+/**
+ * Holds an adaptive concurrency limiter slot for every call to the delegate.
+ * A batch call takes a single slot, as it is a single request to the ML service, but its
+ * latency is not used to adapt the limit.
+ */
+public class ConcurrencyLimitedRiskPredictor implements RiskPredictor {
+
+    private final RiskPredictor delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitedRiskPredictor(RiskPredictor delegate, AdaptiveConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public MLServiceResponse predictRisk(MLServiceRequest request) {
+        long start = limiter.acquire();
+        boolean success = false;
+        try {
+            MLServiceResponse response = delegate.predictRisk(request);
+            success = true;
+            return response;
+        } finally {
+            limiter.release(start, success);
+        }
+    }
+
+    @Override
+    public List<MLServiceResponse> predictRiskBatch(List<MLServiceRequest> requests) {
+        limiter.acquire();
+        try {
+            return delegate.predictRiskBatch(requests);
+        } finally {
+            limiter.releaseUnsampled();
+        }
+    }
+
+    @Override
+    public String getModelVersion() {
+        return delegate.getModelVersion();
+    }
+}
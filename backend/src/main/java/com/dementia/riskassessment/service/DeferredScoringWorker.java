@@ -0,0 +1,129 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.AssessmentRequest;
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+import com.dementia.riskassessment.entity.Assessment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the scoring journal in batches. Each batch is scored with one predictRiskBatch call;
+ * while the ML service is still unavailable (an error or a provisional answer) the batch is
+ * left pending and retried on the next poll.
+ */
+@Component
+@ConditionalOnProperty(name = "assessment.deferred.enabled", havingValue = "true")
+public class DeferredScoringWorker {
+
+    private final ScoringJournal journal;
+    private final RiskPredictor riskPredictor;
+    private final AssessmentService assessmentService;
+
+    @Value("${assessment.deferred.batch-size:64}")
+    private int batchSize;
+
+    @Value("${assessment.deferred.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public DeferredScoringWorker(ScoringJournal journal, RiskPredictor riskPredictor,
+                                 AssessmentService assessmentService) {
+        this.journal = journal;
+        this.riskPredictor = riskPredictor;
+        this.assessmentService = assessmentService;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "deferred-scoring");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::drain, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void drain() {
+        try {
+            while (scoreBatch() == batchSize) {
+                // Keep going while full batches succeed
+            }
+        } catch (Exception e) {
+            System.err.println("Deferred scoring run failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Scores and stores one batch of pending tickets. Returns the number of tickets resolved.
+     */
+    private int scoreBatch() {
+        List<ScoringJournal.Ticket> pending = journal.pendingTickets(batchSize);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        List<MLServiceRequest> requests = new ArrayList<>(pending.size());
+        for (ScoringJournal.Ticket ticket : pending) {
+            AssessmentRequest request = ticket.getRequest();
+            requests.add(new MLServiceRequest(
+                request.getAge(),
+                request.getReaction_time_ms(),
+                request.getMemory_score(),
+                request.getSpeech_pause_ms(),
+                request.getWord_repetition_rate(),
+                request.getTask_error_rate(),
+                request.getSleep_hours()
+            ));
+        }
+
+        List<MLServiceResponse> responses;
+        try {
+            responses = riskPredictor.predictRiskBatch(requests);
+        } catch (RuntimeException e) {
+            System.out.println("ML service still unavailable, " + journal.getPendingCount()
+                + " assessments waiting: " + e.getMessage());
+            return 0;
+        }
+
+        List<ScoringJournal.Ticket> resolved = new ArrayList<>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            MLServiceResponse mlResponse = responses.get(i);
+            if (mlResponse.isProvisional()) {
+                break;
+            }
+            ScoringJournal.Ticket ticket = pending.get(i);
+            try {
+                Assessment assessment = assessmentService.completeDeferredAssessment(ticket.getRequest(), mlResponse,
+                    ticket.getAssessmentId());
+                journal.markCompleted(ticket, assessment.getId(), assessment.getRisk_label(), false);
+            } catch (Exception e) {
+                System.err.println("Failed to store deferred assessment " + ticket.getTicketId() + ": " + e.getMessage());
+                journal.markFailed(ticket, e.getMessage());
+            }
+            resolved.add(ticket);
+        }
+        journal.complete(resolved);
+        if (!resolved.isEmpty()) {
+            System.out.println("Scored " + resolved.size() + " deferred assessments");
+        }
+        return resolved.size();
+    }
+}
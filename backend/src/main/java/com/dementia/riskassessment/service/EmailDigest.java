@@ -0,0 +1,178 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.entity.Assessment;
+import com.dementia.riskassessment.entity.User;
+import com.dementia.riskassessment.repository.AssessmentShardRouter;
+import com.dementia.riskassessment.repository.JdbcEmailDigestRepository;
+import com.dementia.riskassessment.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Digest delivery of assessment results for users who chose User.EmailDelivery.DIGEST.
+ * Each assessment adds a small entry on its user's shard, in the transaction that inserts it; once
+ * a user has max-entries pending, or their oldest entry is interval-minutes old, the entries are
+ * taken and one digest email is queued in the outbox in the same transaction, so an assessment is
+ * reported in exactly one digest.
+ */
+@Component
+public class EmailDigest {
+
+    private static final int FLUSH_BATCH_SIZE = 100;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+        .withZone(ZoneId.systemDefault());
+
+    private final AssessmentShardRouter router;
+    private final JdbcEmailDigestRepository digestRepository;
+    private final UserRepository userRepository;
+    private final EmailOutbox emailOutbox;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${email.digest.interval-minutes:1440}")
+    private long intervalMinutes;
+
+    @Value("${email.digest.max-entries:10}")
+    private int maxEntries;
+
+    @Value("${email.digest.check-interval-ms:60000}")
+    private long checkIntervalMs;
+
+    private ScheduledExecutorService scheduler;
+    private Counter thresholdFlushes;
+    private Counter scheduledFlushes;
+
+    @Autowired
+    public EmailDigest(AssessmentShardRouter router, JdbcEmailDigestRepository digestRepository,
+                       UserRepository userRepository, EmailOutbox emailOutbox, MeterRegistry meterRegistry) {
+        this.router = router;
+        this.digestRepository = digestRepository;
+        this.userRepository = userRepository;
+        this.emailOutbox = emailOutbox;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        // email_digest_entry itself is created on every shard by ShardedAssessmentRepository
+        thresholdFlushes = Counter.builder("email.digest.flushed").tag("reason", "threshold")
+            .description("Digest emails queued")
+            .register(meterRegistry);
+        scheduledFlushes = Counter.builder("email.digest.flushed").tag("reason", "schedule")
+            .description("Digest emails queued")
+            .register(meterRegistry);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-digest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushDue, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Adds assessment to user's pending digest on connection, a writer connection inside the
+     * assessment's transaction. Returns true if that filled the digest and it was queued, in
+     * which case the caller should wake the outbox once the transaction commits.
+     */
+    public boolean add(Connection connection, User user, Assessment assessment) throws SQLException {
+        int pending = digestRepository.add(connection, user.getId(), assessment.getId(),
+            Timestamp.valueOf(assessment.getTimestamp()).getTime(), assessment.getRisk_label());
+        if (pending < maxEntries) {
+            return false;
+        }
+        queueDigest(connection, user, digestRepository.take(connection, user.getId()));
+        thresholdFlushes.increment();
+        return true;
+    }
+
+    private void flushDue() {
+        try {
+            long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(intervalMinutes);
+            for (AssessmentShardRouter.Shard shard : router.getShards()) {
+                List<Long> due;
+                do {
+                    try (Connection connection = shard.getReadDataSource().getConnection()) {
+                        due = digestRepository.findDueUserIds(connection, cutoff, FLUSH_BATCH_SIZE);
+                    }
+                    for (Long userId : due) {
+                        flush(shard, userId);
+                    }
+                } while (due.size() == FLUSH_BATCH_SIZE);
+            }
+        } catch (Exception e) {
+            System.err.println("Digest email run failed: " + e.getMessage());
+        }
+    }
+
+    private void flush(AssessmentShardRouter.Shard shard, Long userId) {
+        User user = userRepository.findById(userId).orElse(null);
+        boolean queued;
+        // Holding the route lock keeps a split from copying the entries while they are taken
+        Lock lock = router.writeRouteLock();
+        lock.lock();
+        try {
+            // Entries left behind on a split source are sent from the new owner
+            if (!router.owns(shard.getIndex(), userId)) {
+                return;
+            }
+            queued = shard.getWriter().execute(connection -> {
+                List<JdbcEmailDigestRepository.Entry> entries = digestRepository.take(connection, userId);
+                // Entries of deleted or no longer verified users are dropped with nothing to send
+                if (entries.isEmpty() || user == null || !Boolean.TRUE.equals(user.getEmailVerified())) {
+                    return false;
+                }
+                queueDigest(connection, user, entries);
+                return true;
+            });
+        } finally {
+            lock.unlock();
+        }
+        if (queued) {
+            scheduledFlushes.increment();
+            emailOutbox.wakeUp();
+        }
+    }
+
+    private void queueDigest(Connection connection, User user, List<JdbcEmailDigestRepository.Entry> entries)
+            throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>(entries.size());
+        for (JdbcEmailDigestRepository.Entry entry : entries) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("date", DATE_FORMAT.format(Instant.ofEpochMilli(entry.getCreatedAt())));
+            row.put("riskLevel", RiskLabels.displayName(entry.getRiskLabel()));
+            rows.add(row);
+        }
+        String latest = entries.get(entries.size() - 1).getRiskLabel();
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("firstName", user.getFirstName());
+        payload.put("lastName", user.getLastName());
+        payload.put("latestRiskLevel", RiskLabels.displayName(latest));
+        payload.put("recommendation", RiskLabels.recommendation(latest));
+        payload.put("assessments", rows);
+        emailOutbox.enqueue(connection, EmailService.KIND_ASSESSMENT_DIGEST, user.getEmail(), payload);
+    }
+}
@@ -0,0 +1,304 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.repository.AssessmentShardRouter;
+import com.dementia.riskassessment.repository.JdbcEmailOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional email outbox. Producers call enqueue() inside the writer task that stores the
+ * user or assessment, so an email exists exactly when its row does and survives restarts.
+ * A poller claims due messages from every shard in batches and hands them to a pool of senders;
+ * failures are retried with exponential backoff and jitter, and after max-attempts the message
+ * is marked DEAD and left in the table for inspection. Delivery is at least once: a sender that
+ * dies after sending but before recording it lets the lease lapse and the message is sent again.
+ */
+@Component
+public class EmailOutbox {
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {};
+    private static final long HOUSEKEEPING_INTERVAL_MS = 30_000;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final AssessmentShardRouter router;
+    private final JdbcEmailOutboxRepository outboxRepository;
+    private final EmailService emailService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${email.outbox.threads:2}")
+    private int threads;
+
+    @Value("${email.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${email.outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.backoff-base-ms:5000}")
+    private long backoffBaseMs;
+
+    @Value("${email.outbox.backoff-max-ms:3600000}")
+    private long backoffMaxMs;
+
+    @Value("${email.outbox.lease-ms:120000}")
+    private long leaseMs;
+
+    @Value("${email.outbox.retention-hours:72}")
+    private long retentionHours;
+
+    // Holds at most one pending wakeup; the poller also wakes every poll interval
+    private final BlockingQueue<Boolean> wakeups = new ArrayBlockingQueue<>(1);
+    private final Map<String, AtomicLong> statusCounts = new ConcurrentHashMap<>();
+    private Semaphore inFlight;
+    private ExecutorService senders;
+    private Thread poller;
+    private volatile boolean running = true;
+    // Set when a claim came back full, so finishing senders wake the poller instead of it sleeping
+    private volatile boolean backlog;
+    private long lastHousekeeping;
+    private Counter retries;
+    private Counter deadLetters;
+
+    @Autowired
+    public EmailOutbox(AssessmentShardRouter router, JdbcEmailOutboxRepository outboxRepository,
+                       EmailService emailService, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.router = router;
+        this.outboxRepository = outboxRepository;
+        this.emailService = emailService;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (AssessmentShardRouter.Shard shard : router.getShards()) {
+            shard.getWriter().execute(connection -> {
+                outboxRepository.createSchema(connection);
+                return null;
+            });
+        }
+        for (String status : new String[] {JdbcEmailOutboxRepository.PENDING, JdbcEmailOutboxRepository.SENDING,
+                JdbcEmailOutboxRepository.DEAD}) {
+            AtomicLong count = statusCounts.computeIfAbsent(status, s -> new AtomicLong());
+            Gauge.builder("email.outbox.messages", count, AtomicLong::get)
+                .tag("status", status.toLowerCase())
+                .description("Outbox messages by status, across all shards")
+                .register(meterRegistry);
+        }
+        retries = Counter.builder("email.outbox.retries")
+            .description("Failed email sends scheduled for another attempt")
+            .register(meterRegistry);
+        deadLetters = Counter.builder("email.outbox.dead")
+            .description("Emails given up on after the maximum number of attempts")
+            .register(meterRegistry);
+
+        inFlight = new Semaphore(batchSize);
+        senders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "email-outbox-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller = new Thread(this::pollLoop, "email-outbox-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        poller.interrupt();
+        poller.join(5000);
+        // Claimed messages that do not finish here are reclaimed once their lease lapses
+        senders.shutdown();
+        if (!senders.awaitTermination(10, TimeUnit.SECONDS)) {
+            senders.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues an email on connection, which must be a writer connection inside the transaction
+     * that stores the row the email is about. Call wakeUp() once that transaction has committed.
+     */
+    public void enqueue(Connection connection, String kind, String recipient, Map<String, Object> payload)
+            throws SQLException {
+        if (!emailService.isConfigured()) {
+            System.err.println("Email service not configured. Skipping " + kind + " email to " + recipient);
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize " + kind + " email: " + e.getMessage(), e);
+        }
+        outboxRepository.insert(connection, kind, recipient, json, System.currentTimeMillis());
+    }
+
+    /**
+     * Makes the poller look for due messages now rather than at the next poll interval.
+     */
+    public void wakeUp() {
+        wakeups.offer(Boolean.TRUE);
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                backlog = false;
+                for (AssessmentShardRouter.Shard shard : router.getShards()) {
+                    int limit = inFlight.availablePermits();
+                    if (limit == 0) {
+                        backlog = true;
+                        break;
+                    }
+                    long now = System.currentTimeMillis();
+                    List<JdbcEmailOutboxRepository.Message> claimed = shard.getWriter().execute(connection ->
+                        outboxRepository.claim(connection, now, leaseMs, limit));
+                    if (claimed.size() == limit) {
+                        backlog = true;
+                    }
+                    for (JdbcEmailOutboxRepository.Message message : claimed) {
+                        inFlight.acquire();
+                        senders.execute(() -> {
+                            try {
+                                deliver(shard, message);
+                            } finally {
+                                inFlight.release();
+                                if (backlog) {
+                                    wakeUp();
+                                }
+                            }
+                        });
+                    }
+                }
+                if (System.currentTimeMillis() - lastHousekeeping >= HOUSEKEEPING_INTERVAL_MS) {
+                    housekeeping();
+                }
+                wakeups.poll(pollIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Email outbox poll failed: " + e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void deliver(AssessmentShardRouter.Shard shard, JdbcEmailOutboxRepository.Message message) {
+        int attempts = message.getAttempts() + 1;
+        long start = System.nanoTime();
+        try {
+            Map<String, Object> payload = objectMapper.readValue(message.getPayload(), PAYLOAD_TYPE);
+            emailService.deliver(message.getKind(), message.getRecipient(), payload);
+        } catch (Exception e) {
+            sendTimer(message.getKind(), "failed").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            failed(shard, message, attempts, e);
+            return;
+        }
+        sendTimer(message.getKind(), "sent").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        try {
+            shard.getWriter().execute(connection -> {
+                outboxRepository.markSent(connection, message.getId(), attempts, System.currentTimeMillis());
+                return null;
+            });
+        } catch (RuntimeException e) {
+            System.err.println("Email " + message.getId() + " was sent but could not be marked sent: " + e.getMessage());
+        }
+    }
+
+    private void failed(AssessmentShardRouter.Shard shard, JdbcEmailOutboxRepository.Message message, int attempts,
+                        Exception error) {
+        String reason = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (reason.length() > MAX_ERROR_LENGTH) {
+            reason = reason.substring(0, MAX_ERROR_LENGTH);
+        }
+        String status;
+        long nextAttemptAt = System.currentTimeMillis();
+        if (attempts >= maxAttempts) {
+            status = JdbcEmailOutboxRepository.DEAD;
+            deadLetters.increment();
+            System.err.println("Giving up on " + message.getKind() + " email to " + message.getRecipient()
+                + " after " + attempts + " attempts: " + reason);
+        } else {
+            status = JdbcEmailOutboxRepository.PENDING;
+            // Equal jitter: half the backoff is fixed, the other half random, so retries spread out
+            long backoff = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempts - 1, 30));
+            nextAttemptAt += backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            retries.increment();
+            System.err.println("Failed to send " + message.getKind() + " email to " + message.getRecipient()
+                + " (attempt " + attempts + "), retrying in " + (nextAttemptAt - System.currentTimeMillis()) + " ms: "
+                + reason);
+        }
+        String lastError = reason;
+        long retryAt = nextAttemptAt;
+        try {
+            shard.getWriter().execute(connection -> {
+                outboxRepository.markFailed(connection, message.getId(), status, attempts, retryAt, lastError);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            System.err.println("Failed to record email " + message.getId() + " failure: " + e.getMessage());
+        }
+    }
+
+    private Timer sendTimer(String kind, String outcome) {
+        return Timer.builder("email.send")
+            .tag("kind", kind.toLowerCase())
+            .tag("outcome", outcome)
+            .description("Time to hand an outbox email to the SMTP server")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Purges sent messages past retention and refreshes the status gauges.
+     */
+    private void housekeeping() {
+        lastHousekeeping = System.currentTimeMillis();
+        long cutoff = lastHousekeeping - TimeUnit.HOURS.toMillis(retentionHours);
+        Map<String, Long> totals = new ConcurrentHashMap<>();
+        for (AssessmentShardRouter.Shard shard : router.getShards()) {
+            shard.getWriter().execute(connection -> {
+                outboxRepository.deleteSentBefore(connection, cutoff);
+                return null;
+            });
+            try (Connection connection = shard.getReadDataSource().getConnection()) {
+                outboxRepository.countByStatus(connection).forEach((status, count) -> totals.merge(status, count, Long::sum));
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to count outbox messages: " + e.getMessage(), e);
+            }
+        }
+        statusCounts.forEach((status, count) -> count.set(totals.getOrDefault(status, 0L)));
+    }
+}
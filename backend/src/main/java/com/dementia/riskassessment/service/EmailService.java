@@ -9,11 +9,24 @@ import org.springframework.stereotype.Service;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 public class EmailService {
     
+    // Outbox message kinds, see EmailOutbox
+    public static final String KIND_VERIFICATION = "VERIFICATION";
+    public static final String KIND_RESEND_VERIFICATION = "RESEND_VERIFICATION";
+    public static final String KIND_ASSESSMENT_RESULTS = "ASSESSMENT_RESULTS";
+    public static final String KIND_ASSESSMENT_DIGEST = "ASSESSMENT_DIGEST";
+    
     private final JavaMailSender mailSender;
+    private final SmtpTransportPool transportPool;
+    private final EmailTemplates emailTemplates;
     
     @Value("${spring.mail.username:}")
     private String fromEmail;
@@ -22,8 +35,10 @@ public class EmailService {
     private String fromName;
     
     @Autowired
-    public EmailService(JavaMailSender mailSender) {
+    public EmailService(JavaMailSender mailSender, SmtpTransportPool transportPool, EmailTemplates emailTemplates) {
         this.mailSender = mailSender;
+        this.transportPool = transportPool;
+        this.emailTemplates = emailTemplates;
         // Debug: Log email configuration status
         if (fromEmail != null && !fromEmail.isEmpty()) {
             System.out.println("Email service configured with: " + fromEmail);
@@ -33,6 +48,47 @@ public class EmailService {
         }
     }
     
+    public boolean isConfigured() {
+        return mailSender != null && fromEmail != null && !fromEmail.isEmpty();
+    }
+    
+    /**
+     * Sends one outbox message; payload holds the arguments of the matching send method.
+     * Throws on failure so the outbox can retry.
+     */
+    @SuppressWarnings("unchecked")
+    public void deliver(String kind, String toEmail, Map<String, Object> payload) {
+        switch (kind) {
+            case KIND_VERIFICATION -> sendVerificationEmail(toEmail, (String) payload.get("firstName"),
+                (String) payload.get("verificationCode"));
+            case KIND_RESEND_VERIFICATION -> sendResendVerificationEmail(toEmail, (String) payload.get("firstName"),
+                (String) payload.get("verificationCode"));
+            case KIND_ASSESSMENT_RESULTS -> sendAssessmentResultsEmail(
+                toEmail,
+                (String) payload.get("firstName"),
+                (String) payload.get("lastName"),
+                (String) payload.get("riskLevel"),
+                (String) payload.get("recommendation"),
+                ((Number) payload.get("age")).intValue(),
+                ((Number) payload.get("reactionTime")).doubleValue(),
+                ((Number) payload.get("memoryScore")).doubleValue(),
+                ((Number) payload.get("speechPause")).doubleValue(),
+                ((Number) payload.get("wordRepetition")).doubleValue(),
+                ((Number) payload.get("taskError")).doubleValue(),
+                ((Number) payload.get("sleepHours")).doubleValue()
+            );
+            case KIND_ASSESSMENT_DIGEST -> sendAssessmentDigestEmail(
+                toEmail,
+                (String) payload.get("firstName"),
+                (String) payload.get("lastName"),
+                (String) payload.get("latestRiskLevel"),
+                (String) payload.get("recommendation"),
+                (List<Map<String, Object>>) payload.get("assessments")
+            );
+            default -> throw new IllegalArgumentException("Unknown email kind: " + kind);
+        }
+    }
+    
     public void sendVerificationEmail(String toEmail, String firstName, String verificationCode) {
         if (mailSender == null || fromEmail == null || fromEmail.isEmpty()) {
             System.err.println("Email service not configured. Skipping verification email to " + toEmail);
@@ -47,64 +103,15 @@ public class EmailService {
             helper.setTo(toEmail);
             helper.setSubject("Verify Your Email Address - Cortexa AI");
             
-            String htmlBody = String.format(
-                "<!DOCTYPE html>" +
-                "<html>" +
-                "<head>" +
-                "<meta charset='UTF-8'>" +
-                "<style>" +
-                "  body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; background-color: #f4f4f4; margin: 0; padding: 0; }" +
-                "  .container { max-width: 600px; margin: 0 auto; background-color: #ffffff; }" +
-                "  .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; }" +
-                "  .header h1 { margin: 0; font-size: 28px; font-weight: 600; }" +
-                "  .content { padding: 40px 30px; }" +
-                "  .greeting { font-size: 18px; color: #333; margin-bottom: 20px; }" +
-                "  .message { font-size: 16px; color: #555; margin-bottom: 30px; }" +
-                "  .code-container { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); border-radius: 12px; padding: 30px; text-align: center; margin: 30px 0; box-shadow: 0 4px 15px rgba(102, 126, 234, 0.3); }" +
-                "  .code-label { color: rgba(255, 255, 255, 0.9); font-size: 14px; text-transform: uppercase; letter-spacing: 1px; margin-bottom: 15px; font-weight: 500; }" +
-                "  .verification-code { font-size: 42px; font-weight: 700; color: #ffffff; letter-spacing: 8px; font-family: 'Courier New', monospace; text-shadow: 0 2px 4px rgba(0, 0, 0, 0.2); }" +
-                "  .expiry { color: #666; font-size: 14px; margin-top: 20px; }" +
-                "  .footer { background-color: #f8f9fa; padding: 25px 30px; text-align: center; border-top: 1px solid #e9ecef; }" +
-                "  .footer-text { color: #666; font-size: 14px; margin: 5px 0; }" +
-                "  .signature { color: #667eea; font-weight: 600; font-size: 16px; margin-top: 10px; }" +
-                "  .warning { background-color: #fff3cd; border-left: 4px solid #ffc107; padding: 15px; margin: 20px 0; border-radius: 4px; font-size: 14px; color: #856404; }" +
-                "</style>" +
-                "</head>" +
-                "<body>" +
-                "  <div class='container'>" +
-                "    <div class='header'>" +
-                "      <h1>🔐 Email Verification</h1>" +
-                "    </div>" +
-                "    <div class='content'>" +
-                "      <div class='greeting'>Hello %s,</div>" +
-                "      <div class='message'>" +
-                "        Thank you for registering with Cortexa AI! To complete your registration, please verify your email address by entering the verification code below." +
-                "      </div>" +
-                "      <div class='code-container'>" +
-                "        <div class='code-label'>Your Verification Code</div>" +
-                "        <div class='verification-code'>%s</div>" +
-                "      </div>" +
-                "      <div class='expiry'>⏰ This code will expire in 24 hours</div>" +
-                "      <div class='warning'>" +
-                "        <strong>⚠️ Security Notice:</strong> If you did not create an account, please ignore this email. Never share your verification code with anyone." +
-                "      </div>" +
-                "    </div>" +
-                "    <div class='footer'>" +
-                "      <div class='footer-text'>Need help? Contact our support team.</div>" +
-                "      <div class='signature'>Best regards,<br>Team Cortexa</div>" +
-                "    </div>" +
-                "  </div>" +
-                "</body>" +
-                "</html>",
-                firstName,
-                verificationCode
-            );
+            Map<String, Object> values = new HashMap<>();
+            values.put("firstName", firstName);
+            values.put("verificationCode", verificationCode);
+            String htmlBody = emailTemplates.get(EmailTemplates.VERIFICATION).render(values);
             
             helper.setText(htmlBody, true);
-            mailSender.send(message);
+            transportPool.send(message);
         } catch (MessagingException | UnsupportedEncodingException e) {
-            System.err.println("Failed to send verification email: " + e.getMessage());
-            e.printStackTrace();
+            throw new RuntimeException("Failed to send verification email: " + e.getMessage(), e);
         }
     }
     
@@ -146,92 +153,67 @@ public class EmailService {
                 riskIcon = "📊";
             }
             
-            String htmlBody = String.format(
-                "<!DOCTYPE html>" +
-                "<html>" +
-                "<head>" +
-                "<meta charset='UTF-8'>" +
-                "<style>" +
-                "  body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; background-color: #f4f4f4; margin: 0; padding: 0; }" +
-                "  .container { max-width: 600px; margin: 0 auto; background-color: #ffffff; }" +
-                "  .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; }" +
-                "  .header h1 { margin: 0; font-size: 28px; font-weight: 600; }" +
-                "  .content { padding: 40px 30px; }" +
-                "  .greeting { font-size: 18px; color: #333; margin-bottom: 20px; }" +
-                "  .message { font-size: 16px; color: #555; margin-bottom: 30px; }" +
-                "  .results-box { background-color: #f8f9fa; border-radius: 12px; padding: 25px; margin: 25px 0; border-left: 4px solid %s; }" +
-                "  .risk-level { font-size: 24px; font-weight: 700; color: %s; margin: 15px 0; }" +
-                "  .details-table { width: 100%%; margin: 20px 0; border-collapse: collapse; }" +
-                "  .details-table td { padding: 10px; border-bottom: 1px solid #e9ecef; }" +
-                "  .details-table td:first-child { font-weight: 600; color: #555; width: 50%%; }" +
-                "  .details-table td:last-child { color: #333; }" +
-                "  .recommendation-box { background-color: #e7f3ff; border-left: 4px solid #2196F3; padding: 20px; margin: 25px 0; border-radius: 4px; }" +
-                "  .recommendation-title { font-weight: 600; color: #1976D2; margin-bottom: 10px; font-size: 16px; }" +
-                "  .disclaimer { background-color: #fff3cd; border-left: 4px solid #ffc107; padding: 15px; margin: 20px 0; border-radius: 4px; font-size: 14px; color: #856404; }" +
-                "  .footer { background-color: #f8f9fa; padding: 25px 30px; text-align: center; border-top: 1px solid #e9ecef; }" +
-                "  .footer-text { color: #666; font-size: 14px; margin: 5px 0; }" +
-                "  .signature { color: #667eea; font-weight: 600; font-size: 16px; margin-top: 10px; }" +
-                "</style>" +
-                "</head>" +
-                "<body>" +
-                "  <div class='container'>" +
-                "    <div class='header'>" +
-                "      <h1>📊 Assessment Results</h1>" +
-                "    </div>" +
-                "    <div class='content'>" +
-                "      <div class='greeting'>Hello %s %s,</div>" +
-                "      <div class='message'>" +
-                "        Thank you for completing your cognitive risk assessment with Cortexa AI. Below are your detailed results." +
-                "      </div>" +
-                "      <div class='results-box'>" +
-                "        <div style='font-weight: 600; color: #555; margin-bottom: 10px;'>Risk Level</div>" +
-                "        <div class='risk-level'>%s %s</div>" +
-                "        <table class='details-table'>" +
-                "          <tr><td>Age</td><td>%d years</td></tr>" +
-                "          <tr><td>Reaction Time</td><td>%.2f ms</td></tr>" +
-                "          <tr><td>Memory Score</td><td>%.2f</td></tr>" +
-                "          <tr><td>Speech Pause</td><td>%.2f ms</td></tr>" +
-                "          <tr><td>Word Repetition Rate</td><td>%.2f</td></tr>" +
-                "          <tr><td>Task Error Rate</td><td>%.2f</td></tr>" +
-                "          <tr><td>Sleep Hours</td><td>%.2f hours</td></tr>" +
-                "        </table>" +
-                "      </div>" +
-                "      <div class='recommendation-box'>" +
-                "        <div class='recommendation-title'>💡 Recommendation</div>" +
-                "        <div style='color: #333;'>%s</div>" +
-                "      </div>" +
-                "      <div class='disclaimer'>" +
-                "        <strong>⚠️ Important Disclaimer:</strong> This assessment is a screening tool and not a medical diagnosis. Please consult with a healthcare professional for a comprehensive evaluation." +
-                "      </div>" +
-                "    </div>" +
-                "    <div class='footer'>" +
-                "      <div class='footer-text'>Need help? Contact our support team.</div>" +
-                "      <div class='signature'>Best regards,<br>Team Cortexa</div>" +
-                "    </div>" +
-                "  </div>" +
-                "</body>" +
-                "</html>",
-                riskColor,
-                riskColor,
-                firstName,
-                lastName,
-                riskIcon,
-                riskLevel != null ? riskLevel : "Unknown",
-                age,
-                reactionTime,
-                memoryScore,
-                speechPause,
-                wordRepetition,
-                taskError,
-                sleepHours,
-                recommendation
-            );
+            Map<String, Object> values = new HashMap<>();
+            values.put("riskColor", riskColor);
+            values.put("firstName", firstName);
+            values.put("lastName", lastName);
+            values.put("riskIcon", riskIcon);
+            values.put("riskLevel", riskLevel != null ? riskLevel : "Unknown");
+            values.put("age", age);
+            values.put("reactionTime", twoDecimals(reactionTime));
+            values.put("memoryScore", twoDecimals(memoryScore));
+            values.put("speechPause", twoDecimals(speechPause));
+            values.put("wordRepetition", twoDecimals(wordRepetition));
+            values.put("taskError", twoDecimals(taskError));
+            values.put("sleepHours", twoDecimals(sleepHours));
+            values.put("recommendation", recommendation);
+            String htmlBody = emailTemplates.get(EmailTemplates.ASSESSMENT_RESULTS).render(values);
             
             helper.setText(htmlBody, true);
-            mailSender.send(message);
+            transportPool.send(message);
         } catch (MessagingException | UnsupportedEncodingException e) {
-            System.err.println("Failed to send assessment results email: " + e.getMessage());
-            e.printStackTrace();
+            throw new RuntimeException("Failed to send assessment results email: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Sends one email summarizing several assessments; each entry of assessments has a date and riskLevel.
+     */
+    public void sendAssessmentDigestEmail(String toEmail, String firstName, String lastName,
+                                          String latestRiskLevel, String recommendation,
+                                          List<Map<String, Object>> assessments) {
+        if (mailSender == null || fromEmail == null || fromEmail.isEmpty()) {
+            System.err.println("Email service not configured. Skipping assessment digest email to " + toEmail);
+            return;
+        }
+        
+        try {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+            
+            helper.setFrom(fromEmail, "Cortexa AI");
+            helper.setTo(toEmail);
+            helper.setSubject("Your Assessment Digest - Cortexa AI");
+            
+            EmailTemplate rowTemplate = emailTemplates.get(EmailTemplates.ASSESSMENT_DIGEST_ROW);
+            StringBuilder rows = new StringBuilder(assessments.size() * 80);
+            for (Map<String, Object> assessment : assessments) {
+                rows.append(rowTemplate.render(assessment));
+            }
+            
+            Map<String, Object> values = new HashMap<>();
+            values.put("firstName", firstName);
+            values.put("lastName", lastName);
+            values.put("count", assessments.size());
+            values.put("latestRiskLevel", latestRiskLevel != null ? latestRiskLevel : "Unknown");
+            values.put("recommendation", recommendation);
+            values.put("rows", rows);
+            String htmlBody = emailTemplates.get(EmailTemplates.ASSESSMENT_DIGEST).render(values);
+            
+            helper.setText(htmlBody, true);
+            transportPool.send(message);
+        } catch (MessagingException | UnsupportedEncodingException e) {
+            throw new RuntimeException("Failed to send assessment digest email: " + e.getMessage(), e);
         }
     }
     
@@ -249,65 +231,20 @@ public class EmailService {
             helper.setTo(toEmail);
             helper.setSubject("Your New Verification Code - Cortexa AI");
             
-            String htmlBody = String.format(
-                "<!DOCTYPE html>" +
-                "<html>" +
-                "<head>" +
-                "<meta charset='UTF-8'>" +
-                "<style>" +
-                "  body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; background-color: #f4f4f4; margin: 0; padding: 0; }" +
-                "  .container { max-width: 600px; margin: 0 auto; background-color: #ffffff; }" +
-                "  .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; }" +
-                "  .header h1 { margin: 0; font-size: 28px; font-weight: 600; }" +
-                "  .content { padding: 40px 30px; }" +
-                "  .greeting { font-size: 18px; color: #333; margin-bottom: 20px; }" +
-                "  .message { font-size: 16px; color: #555; margin-bottom: 30px; }" +
-                "  .code-container { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); border-radius: 12px; padding: 30px; text-align: center; margin: 30px 0; box-shadow: 0 4px 15px rgba(102, 126, 234, 0.3); }" +
-                "  .code-label { color: rgba(255, 255, 255, 0.9); font-size: 14px; text-transform: uppercase; letter-spacing: 1px; margin-bottom: 15px; font-weight: 500; }" +
-                "  .verification-code { font-size: 42px; font-weight: 700; color: #ffffff; letter-spacing: 8px; font-family: 'Courier New', monospace; text-shadow: 0 2px 4px rgba(0, 0, 0, 0.2); }" +
-                "  .expiry { color: #666; font-size: 14px; margin-top: 20px; }" +
-                "  .footer { background-color: #f8f9fa; padding: 25px 30px; text-align: center; border-top: 1px solid #e9ecef; }" +
-                "  .footer-text { color: #666; font-size: 14px; margin: 5px 0; }" +
-                "  .signature { color: #667eea; font-weight: 600; font-size: 16px; margin-top: 10px; }" +
-                "  .warning { background-color: #fff3cd; border-left: 4px solid #ffc107; padding: 15px; margin: 20px 0; border-radius: 4px; font-size: 14px; color: #856404; }" +
-                "</style>" +
-                "</head>" +
-                "<body>" +
-                "  <div class='container'>" +
-                "    <div class='header'>" +
-                "      <h1>🔐 New Verification Code</h1>" +
-                "    </div>" +
-                "    <div class='content'>" +
-                "      <div class='greeting'>Hello %s,</div>" +
-                "      <div class='message'>" +
-                "        You requested a new verification code. Please use the code below to verify your email address." +
-                "      </div>" +
-                "      <div class='code-container'>" +
-                "        <div class='code-label'>Your New Verification Code</div>" +
-                "        <div class='verification-code'>%s</div>" +
-                "      </div>" +
-                "      <div class='expiry'>⏰ This code will expire in 24 hours</div>" +
-                "      <div class='warning'>" +
-                "        <strong>⚠️ Security Notice:</strong> If you did not request this code, please ignore this email. Never share your verification code with anyone." +
-                "      </div>" +
-                "    </div>" +
-                "    <div class='footer'>" +
-                "      <div class='footer-text'>Need help? Contact our support team.</div>" +
-                "      <div class='signature'>Best regards,<br>Team Cortexa</div>" +
-                "    </div>" +
-                "  </div>" +
-                "</body>" +
-                "</html>",
-                firstName,
-                verificationCode
-            );
+            Map<String, Object> values = new HashMap<>();
+            values.put("firstName", firstName);
+            values.put("verificationCode", verificationCode);
+            String htmlBody = emailTemplates.get(EmailTemplates.RESEND_VERIFICATION).render(values);
             
             helper.setText(htmlBody, true);
-            mailSender.send(message);
+            transportPool.send(message);
         } catch (MessagingException | UnsupportedEncodingException e) {
-            System.err.println("Failed to send resend verification email: " + e.getMessage());
-            e.printStackTrace();
+            throw new RuntimeException("Failed to send resend verification email: " + e.getMessage(), e);
         }
     }
+    
+    // Same output as %.2f (half-up), "null" included, without parsing a format string per value
+    static String twoDecimals(Double value) {
+        return value != null ? BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString() : "null";
+    }
 }
-
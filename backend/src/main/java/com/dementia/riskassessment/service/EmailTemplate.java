@@ -0,0 +1,120 @@
+package com.dementia.riskassessment.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HTML email template parsed once into literal segments and {{slot}} references.
+ * Rendering appends the segments and the HTML-escaped slot values into a per-thread buffer
+ * that is already large enough for the literals, so a render is one pass and one final copy.
+ * A {{{slot}}} is inserted as is, for HTML rendered from another template.
+ */
+public class EmailTemplate {
+
+    // Headroom for slot values on top of the literal text
+    private static final int SLOT_ALLOWANCE = 64;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final String name;
+    // literals[i] precedes slots[i]; the last literal follows the last slot
+    private final String[] literals;
+    private final String[] slots;
+    private final boolean[] raw;
+    private final int literalLength;
+
+    private EmailTemplate(String name, String[] literals, String[] slots, boolean[] raw) {
+        this.name = name;
+        this.literals = literals;
+        this.slots = slots;
+        this.raw = raw;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static EmailTemplate parse(String name, String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        List<Boolean> raw = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = source.indexOf("{{", position);
+            if (open < 0) {
+                break;
+            }
+            boolean unescaped = source.startsWith("{{{", open);
+            String closing = unescaped ? "}}}" : "}}";
+            int start = open + closing.length();
+            int close = source.indexOf(closing, start);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed " + (unescaped ? "{{{" : "{{") + " in email template "
+                    + name + " at offset " + open);
+            }
+            String slot = source.substring(start, close).trim();
+            if (slot.isEmpty()) {
+                throw new IllegalArgumentException("Empty slot in email template " + name + " at offset " + open);
+            }
+            literals.add(source.substring(position, open));
+            slots.add(slot);
+            raw.add(unescaped);
+            position = close + closing.length();
+        }
+        literals.add(source.substring(position));
+        boolean[] rawSlots = new boolean[raw.size()];
+        for (int i = 0; i < rawSlots.length; i++) {
+            rawSlots[i] = raw.get(i);
+        }
+        return new EmailTemplate(name, literals.toArray(new String[0]), slots.toArray(new String[0]), rawSlots);
+    }
+
+    /**
+     * Renders with values keyed by slot name; every slot must have a value. A null value renders
+     * as "null", the same text the String.format bodies these templates replaced produced.
+     */
+    public String render(Map<String, ?> values) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        out.ensureCapacity(literalLength + slots.length * SLOT_ALLOWANCE);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            if (!values.containsKey(slots[i])) {
+                throw new IllegalArgumentException("No value for slot " + slots[i] + " in email template " + name);
+            }
+            String value = String.valueOf(values.get(slots[i]));
+            if (raw[i]) {
+                out.append(value);
+            } else {
+                appendEscaped(out, value);
+            }
+        }
+        out.append(literals[slots.length]);
+        String rendered = out.toString();
+        // Do not let one unusually large render pin memory on a pooled thread
+        if (out.capacity() > 4 * (literalLength + slots.length * SLOT_ALLOWANCE)) {
+            BUFFER.remove();
+        }
+        return rendered;
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+}
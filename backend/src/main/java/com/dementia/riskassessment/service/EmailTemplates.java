@@ -0,0 +1,104 @@
+package com.dementia.riskassessment.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads and caches the email templates from email.templates.location (one &lt;name&gt;.html per
+ * template). All templates are parsed at startup so a broken one fails the boot. With
+ * email.templates.reload=true (for development, pointing the location at a file: directory)
+ * a template whose file changed is reparsed on its next use.
+ */
+@Component
+public class EmailTemplates {
+
+    public static final String VERIFICATION = "verification";
+    public static final String RESEND_VERIFICATION = "resend-verification";
+    public static final String ASSESSMENT_RESULTS = "assessment-results";
+    public static final String ASSESSMENT_DIGEST = "assessment-digest";
+    // One table row of the digest, rendered per assessment into the digest's {{{rows}}}
+    public static final String ASSESSMENT_DIGEST_ROW = "assessment-digest-row";
+
+    private static final String[] NAMES = {VERIFICATION, RESEND_VERIFICATION, ASSESSMENT_RESULTS, ASSESSMENT_DIGEST,
+        ASSESSMENT_DIGEST_ROW};
+    private static final long RELOAD_CHECK_INTERVAL_MS = 1000;
+
+    private static class Loaded {
+        final EmailTemplate template;
+        final long lastModified;
+        volatile long checkedAt;
+
+        Loaded(EmailTemplate template, long lastModified) {
+            this.template = template;
+            this.lastModified = lastModified;
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    private final ResourceLoader resourceLoader;
+    private final Map<String, Loaded> templates = new ConcurrentHashMap<>();
+
+    @Value("${email.templates.location:classpath:templates/email/}")
+    private String location;
+
+    @Value("${email.templates.reload:false}")
+    private boolean reload;
+
+    @Autowired
+    public EmailTemplates(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        for (String name : NAMES) {
+            templates.put(name, read(name));
+        }
+        System.out.println("Loaded " + NAMES.length + " email templates from " + location
+            + (reload ? " (reloading on change)" : ""));
+    }
+
+    public EmailTemplate get(String name) {
+        Loaded loaded = templates.get(name);
+        if (loaded == null) {
+            throw new IllegalArgumentException("Unknown email template: " + name);
+        }
+        if (reload && System.currentTimeMillis() - loaded.checkedAt >= RELOAD_CHECK_INTERVAL_MS) {
+            loaded.checkedAt = System.currentTimeMillis();
+            try {
+                if (resource(name).lastModified() != loaded.lastModified) {
+                    loaded = read(name);
+                    templates.put(name, loaded);
+                    System.out.println("Reloaded email template " + name);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // Keep serving the last good version while the file is being edited
+                System.err.println("Failed to reload email template " + name + ": " + e.getMessage());
+            }
+        }
+        return loaded.template;
+    }
+
+    private Resource resource(String name) {
+        return resourceLoader.getResource(location + name + ".html");
+    }
+
+    private Loaded read(String name) throws IOException {
+        Resource resource = resource(name);
+        long lastModified = reload ? resource.lastModified() : 0;
+        try (InputStream in = resource.getInputStream()) {
+            String source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return new Loaded(EmailTemplate.parse(name, source), lastModified);
+        }
+    }
+}
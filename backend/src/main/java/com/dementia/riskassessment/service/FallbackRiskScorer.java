@@ -0,0 +1,69 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+/**
+ * Provisional scorer used while the ML service is unavailable. Uses the exported forest when
+ * one is available and otherwise a points-based rule over the seven features. Every response
+ * is marked provisional so the assessment can be rescored once the ML service recovers.
+ */
+public class FallbackRiskScorer implements RiskPredictor {
+
+    private final RiskPredictor model;
+
+    /**
+     * @param model in-process model to use, or null to score with the built-in rules
+     */
+    public FallbackRiskScorer(RiskPredictor model) {
+        this.model = model;
+    }
+
+    @Override
+    public MLServiceResponse predictRisk(MLServiceRequest request) {
+        String riskLevel = model != null ? model.predictRisk(request).getRisk_level() : scoreByRules(request);
+        MLServiceResponse response = new MLServiceResponse(riskLevel);
+        response.setProvisional(true);
+        return response;
+    }
+
+    private String scoreByRules(MLServiceRequest request) {
+        int points = 0;
+
+        int age = request.getAge();
+        if (age >= 75) {
+            points += 2;
+        } else if (age >= 65) {
+            points += 1;
+        }
+
+        double memoryScore = request.getMemory_score();
+        if (memoryScore < 50) {
+            points += 2;
+        } else if (memoryScore < 70) {
+            points += 1;
+        }
+
+        if (request.getReaction_time_ms() > 600) {
+            points += 1;
+        }
+        if (request.getSpeech_pause_ms() > 800) {
+            points += 1;
+        }
+        if (request.getWord_repetition_rate() > 0.3) {
+            points += 1;
+        }
+        if (request.getTask_error_rate() > 0.3) {
+            points += 1;
+        }
+        double sleepHours = request.getSleep_hours();
+        if (sleepHours < 5 || sleepHours > 9.5) {
+            points += 1;
+        }
+
+        if (points >= 5) {
+            return "high";
+        }
+        return points >= 2 ? "medium" : "low";
+    }
+}
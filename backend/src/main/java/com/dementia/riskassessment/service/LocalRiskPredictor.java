@@ -0,0 +1,46 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+/**
+ * Scores assessments in-process with an exported random forest instead of calling the ML service.
+ */
+public class LocalRiskPredictor implements RiskPredictor {
+
+    private final RandomForestModel model;
+
+    // Per-thread scratch buffers so scoring does not allocate
+    private final ThreadLocal<double[]> featureBuffer;
+    private final ThreadLocal<double[]> probabilityBuffer;
+
+    public LocalRiskPredictor(RandomForestModel model) {
+        this.model = model;
+        this.featureBuffer = ThreadLocal.withInitial(() -> new double[RandomForestModel.FEATURE_COUNT]);
+        this.probabilityBuffer = ThreadLocal.withInitial(() -> new double[model.getClassCount()]);
+    }
+
+    @Override
+    public MLServiceResponse predictRisk(MLServiceRequest request) {
+        double[] features = featureBuffer.get();
+        features[0] = request.getAge();
+        features[1] = request.getReaction_time_ms();
+        features[2] = request.getMemory_score();
+        features[3] = request.getSpeech_pause_ms();
+        features[4] = request.getWord_repetition_rate();
+        features[5] = request.getTask_error_rate();
+        features[6] = request.getSleep_hours();
+
+        int classIndex = model.predictClass(features, probabilityBuffer.get());
+        return new MLServiceResponse(model.getClassLabel(classIndex));
+    }
+
+    @Override
+    public String getModelVersion() {
+        return model.getVersion();
+    }
+
+    public RandomForestModel getModel() {
+        return model;
+    }
+}
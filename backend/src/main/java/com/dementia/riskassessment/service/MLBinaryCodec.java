@@ -0,0 +1,93 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-layout binary frames for the ML service's /predict endpoint (see ml-service/README.md).
+ * A request is an 8-byte header ("CXF1", uint32 row count) followed by 56-byte rows:
+ * int32 age, 4 bytes padding, then six float64 features. The reply is "CXL1", uint32 row count
+ * and one byte per row indexing low/medium/high. All integers are little-endian.
+ * Frames are encoded into a per-thread buffer that is reused across calls.
+ */
+public final class MLBinaryCodec {
+
+    public static final String REQUEST_CONTENT_TYPE = "application/x-cortexa-features";
+    public static final String RESPONSE_CONTENT_TYPE = "application/x-cortexa-labels";
+
+    public static final int HEADER_SIZE = 8;
+    public static final int ROW_SIZE = 56;
+    public static final int MAX_ROWS = 1024;
+
+    private static final byte[] REQUEST_MAGIC = "CXF1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESPONSE_MAGIC = "CXL1".getBytes(StandardCharsets.US_ASCII);
+    private static final String[] RISK_LEVELS = {"low", "medium", "high"};
+
+    // Sized for the largest frame; the backing array is written straight to the request stream
+    private static final ThreadLocal<ByteBuffer> FRAME = ThreadLocal.withInitial(() ->
+        ByteBuffer.allocate(HEADER_SIZE + MAX_ROWS * ROW_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+    private MLBinaryCodec() {
+    }
+
+    public static int frameLength(int rows) {
+        return HEADER_SIZE + rows * ROW_SIZE;
+    }
+
+    /**
+     * Encodes requests into this thread's frame buffer and writes the frame to out.
+     */
+    public static void writeRequest(List<MLServiceRequest> requests, OutputStream out) throws IOException {
+        if (requests.isEmpty() || requests.size() > MAX_ROWS) {
+            throw new IllegalArgumentException("Binary frames carry 1 to " + MAX_ROWS + " rows, got " + requests.size());
+        }
+        ByteBuffer frame = FRAME.get();
+        frame.clear();
+        frame.put(REQUEST_MAGIC).putInt(requests.size());
+        for (MLServiceRequest request : requests) {
+            frame.putInt(request.getAge())
+                .putInt(0)
+                .putDouble(request.getReaction_time_ms())
+                .putDouble(request.getMemory_score())
+                .putDouble(request.getSpeech_pause_ms())
+                .putDouble(request.getWord_repetition_rate())
+                .putDouble(request.getTask_error_rate())
+                .putDouble(request.getSleep_hours());
+        }
+        out.write(frame.array(), 0, frame.position());
+    }
+
+    /**
+     * Reads a label frame, checking that it answers exactly expectedRows rows.
+     */
+    public static List<MLServiceResponse> readResponse(InputStream in, int expectedRows) throws IOException {
+        byte[] frame = in.readAllBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        if (frame.length < HEADER_SIZE || !Arrays.equals(frame, 0, 4, RESPONSE_MAGIC, 0, 4)) {
+            throw new IOException("Invalid binary response from ML service");
+        }
+        int rows = buffer.getInt(4);
+        if (rows != expectedRows || frame.length != HEADER_SIZE + rows) {
+            throw new IOException("ML service answered " + rows + " rows for " + expectedRows + " requests");
+        }
+        List<MLServiceResponse> responses = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int code = frame[HEADER_SIZE + i] & 0xFF;
+            if (code >= RISK_LEVELS.length) {
+                throw new IOException("Unknown risk level code " + code + " from ML service");
+            }
+            responses.add(new MLServiceResponse(RISK_LEVELS[code]));
+        }
+        return responses;
+    }
+}
@@ -0,0 +1,156 @@
+package com.dementia.riskassessment.service;
+
+/**
+ * Circuit breaker for the ML dependency.
+ * CLOSED: calls pass; outcomes go into a count-based sliding window. Once the window holds
+ * at least minimumCalls outcomes and the failure rate reaches the threshold, the circuit opens.
+ * OPEN: calls are rejected until openDurationMillis has elapsed, then the circuit goes HALF_OPEN.
+ * HALF_OPEN: up to halfOpenCalls trial calls pass. If they all succeed the circuit closes with
+ * an empty window; any failure reopens it.
+ * Retries are limited by a budget: every call earns retryRatio tokens, capped at maxRetryTokens,
+ * and every retry spends one token.
+ */
+public class MLCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final double retryRatio;
+    private final double maxRetryTokens;
+
+    private State state = State.CLOSED;
+    private int windowPos;
+    private int windowCount;
+    private int windowFailures;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+    private double retryTokens;
+
+    public MLCircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openDurationMillis,
+                            int halfOpenCalls, double retryRatio, double maxRetryTokens) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDurationMillis * 1_000_000L;
+        this.halfOpenCalls = halfOpenCalls;
+        this.retryRatio = retryRatio;
+        this.maxRetryTokens = maxRetryTokens;
+        this.retryTokens = maxRetryTokens;
+    }
+
+    /**
+     * Returns true if a call may go to the ML service now.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenPermits++;
+            return true;
+        }
+        retryTokens = Math.min(maxRetryTokens, retryTokens + retryRatio);
+        return true;
+    }
+
+    /**
+     * Spends a retry token if the budget allows another attempt.
+     */
+    public synchronized boolean tryAcquireRetry() {
+        if (state != State.CLOSED || retryTokens < 1.0) {
+            return false;
+        }
+        retryTokens -= 1.0;
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            halfOpenSuccesses++;
+            if (halfOpenSuccesses >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * Records a call that was rejected before reaching the ML service (for example by the
+     * concurrency limiter). It does not count as a failure; a half-open permit is returned.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowPos]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowPos] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPos = (windowPos + 1) % window.length;
+    }
+
+    private void transitionTo(State next) {
+        if (next == state) {
+            return;
+        }
+        System.out.println("ML circuit breaker " + state + " -> " + next);
+        state = next;
+        switch (next) {
+            case OPEN:
+                openedAt = System.nanoTime();
+                break;
+            case HALF_OPEN:
+                halfOpenPermits = 0;
+                halfOpenSuccesses = 0;
+                break;
+            case CLOSED:
+                windowPos = 0;
+                windowCount = 0;
+                windowFailures = 0;
+                break;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? 0.0 : (double) windowFailures / windowCount;
+    }
+}
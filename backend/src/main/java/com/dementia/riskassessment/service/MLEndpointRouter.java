@@ -0,0 +1,154 @@
+package com.dementia.riskassessment.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Chooses an ML replica for each call using least-outstanding-requests.
+ * Replicas are marked down after consecutive failures or a failed health probe and
+ * come back once a probe succeeds. Each replica keeps a ring of recent latencies
+ * from which its p95 is recomputed on every probe round.
+ */
+public class MLEndpointRouter {
+
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int FAILURES_BEFORE_DOWN = 3;
+
+    public static class Endpoint {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final long[] latencyNanos = new long[LATENCY_SAMPLES];
+        private int latencyCount;
+        private int latencyPos;
+        private volatile boolean healthy = true;
+        private volatile long p95Nanos;
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public long getP95Nanos() {
+            return p95Nanos;
+        }
+
+        synchronized void recordLatency(long nanos) {
+            latencyNanos[latencyPos] = nanos;
+            latencyPos = (latencyPos + 1) % LATENCY_SAMPLES;
+            if (latencyCount < LATENCY_SAMPLES) {
+                latencyCount++;
+            }
+        }
+
+        synchronized void recomputeP95() {
+            if (latencyCount == 0) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(latencyNanos, latencyCount);
+            Arrays.sort(sorted);
+            p95Nanos = sorted[(int) Math.ceil(latencyCount * 0.95) - 1];
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+
+    public MLEndpointRouter(List<String> urls) {
+        List<Endpoint> list = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            String trimmed = url.trim();
+            if (!trimmed.isEmpty()) {
+                list.add(new Endpoint(trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed));
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("At least one ML service URL is required");
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Reserves the healthy replica with the fewest outstanding requests, skipping exclude.
+     * Falls back to unhealthy replicas when none are healthy. Returns null only when
+     * exclude is the sole replica. Every reserved endpoint must be passed to release.
+     */
+    public Endpoint acquire(Endpoint exclude) {
+        Endpoint chosen = leastOutstanding(exclude, Endpoint::isHealthy);
+        if (chosen == null) {
+            chosen = leastOutstanding(exclude, endpoint -> true);
+        }
+        if (chosen != null) {
+            chosen.outstanding.incrementAndGet();
+        }
+        return chosen;
+    }
+
+    private Endpoint leastOutstanding(Endpoint exclude, Predicate<Endpoint> eligible) {
+        // Start at a random offset so ties are spread across replicas
+        int size = endpoints.size();
+        int start = size > 1 ? ThreadLocalRandom.current().nextInt(size) : 0;
+        Endpoint best = null;
+        for (int i = 0; i < size; i++) {
+            Endpoint endpoint = endpoints.get((start + i) % size);
+            if (endpoint == exclude || !eligible.test(endpoint)) {
+                continue;
+            }
+            if (best == null || endpoint.outstanding.get() < best.outstanding.get()) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    public void release(Endpoint endpoint, long latencyNanos, boolean success) {
+        endpoint.outstanding.decrementAndGet();
+        if (success) {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.recordLatency(latencyNanos);
+        } else if (endpoint.consecutiveFailures.incrementAndGet() >= FAILURES_BEFORE_DOWN && endpoint.healthy) {
+            endpoint.healthy = false;
+            System.err.println("ML replica " + endpoint.url + " marked down after " + FAILURES_BEFORE_DOWN + " failures");
+        }
+    }
+
+    /**
+     * Returns a reservation that was never used for a call.
+     */
+    public void cancel(Endpoint endpoint) {
+        endpoint.outstanding.decrementAndGet();
+    }
+
+    /**
+     * Applies the result of a health probe and refreshes the replica's latency percentile.
+     */
+    public void recordProbe(Endpoint endpoint, boolean healthy) {
+        if (healthy != endpoint.healthy) {
+            System.out.println("ML replica " + endpoint.url + " is now " + (healthy ? "up" : "down"));
+        }
+        if (healthy) {
+            endpoint.consecutiveFailures.set(0);
+        }
+        endpoint.healthy = healthy;
+        endpoint.recomputeP95();
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+}
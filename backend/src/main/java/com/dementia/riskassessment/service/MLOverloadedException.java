@@ -0,0 +1,12 @@
+package com.dementia.riskassessment.service;
+
+/**
+ * Thrown when a prediction is rejected because the adaptive concurrency limit for the
+ * ML service is reached and no slot freed up within the queue timeout.
+ */
+public class MLOverloadedException extends MLUnavailableException {
+
+    public MLOverloadedException(String message) {
+        super(message);
+    }
+}
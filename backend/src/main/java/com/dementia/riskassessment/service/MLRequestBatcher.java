@@ -0,0 +1,153 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent single-row predictions into batch calls.
+ * A dispatcher thread collects up to maxBatchSize pending requests, or whatever arrived within
+ * maxWaitMicros of the first one, and hands them to the batch sender. Each caller blocks on its
+ * own future, which is completed with the response at the same index in the batch.
+ */
+public class MLRequestBatcher {
+
+    private static class Pending {
+        final MLServiceRequest request;
+        final CompletableFuture<MLServiceResponse> result = new CompletableFuture<>();
+
+        Pending(MLServiceRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final Function<List<MLServiceRequest>, List<MLServiceResponse>> batchSender;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long callerTimeoutMillis;
+    private final BlockingQueue<Pending> queue;
+    private final Semaphore inFlight;
+    private final ExecutorService senders;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    public MLRequestBatcher(Function<List<MLServiceRequest>, List<MLServiceResponse>> batchSender,
+                            int maxBatchSize, long maxWaitMicros, int maxInFlight, long callerTimeoutMillis) {
+        this.batchSender = batchSender;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.callerTimeoutMillis = callerTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(maxBatchSize * 16);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.senders = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "ml-batch-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatchLoop, "ml-batch-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public MLServiceResponse submit(MLServiceRequest request) {
+        Pending pending = new Pending(request);
+        if (!running || !queue.offer(pending)) {
+            throw new RuntimeException("ML request queue is full. Please try again.");
+        }
+        try {
+            return pending.result.get(callerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for ML service", e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Timed out waiting for ML service batch", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Failed to communicate with ML service: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            List<Pending> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Requests that arrive while every sender is busy join the next batch
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                fail(batch, new RuntimeException("ML request batcher stopped"));
+                break;
+            }
+            senders.execute(() -> {
+                try {
+                    send(batch);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        List<MLServiceRequest> requests = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            requests.add(pending.request);
+        }
+        try {
+            List<MLServiceResponse> responses = batchSender.apply(requests);
+            if (responses == null || responses.size() != batch.size()) {
+                fail(batch, new RuntimeException("ML service returned " + (responses == null ? 0 : responses.size())
+                    + " predictions for a batch of " + batch.size()));
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(responses.get(i));
+            }
+        } catch (RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void fail(List<Pending> batch, RuntimeException error) {
+        for (Pending pending : batch) {
+            pending.result.completeExceptionally(error);
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        senders.shutdown();
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        fail(remaining, new RuntimeException("ML request batcher stopped"));
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+}
@@ -1,50 +1,370 @@
 package com.dementia.riskassessment.service;
 
+import com.dementia.riskassessment.dto.MLBatchRequest;
+import com.dementia.riskassessment.dto.MLBatchResponse;
 import com.dementia.riskassessment.dto.MLServiceRequest;
 import com.dementia.riskassessment.dto.MLServiceResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.RestClientException;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
 @Service
-public class MLServiceClient {
-    
+public class MLServiceClient implements RiskPredictor {
+
+    // Largest batch accepted by the ML service's /predict_batch endpoint
+    private static final int MAX_BATCH_ROWS = 1024;
+
+    private static final String MODEL_VERSION_HEADER = "X-Model-Version";
+
+    private static final MediaType BINARY_REQUEST_TYPE = MediaType.parseMediaType(MLBinaryCodec.REQUEST_CONTENT_TYPE);
+    private static final MediaType BINARY_RESPONSE_TYPE = MediaType.parseMediaType(MLBinaryCodec.RESPONSE_CONTENT_TYPE);
+
     private final RestTemplate restTemplate;
-    
+    private final MeterRegistry meterRegistry;
+
     @Value("${ml.service.url}")
     private String mlServiceUrl;
-    
-    public MLServiceClient() {
-        this.restTemplate = new RestTemplate();
+
+    // Comma-separated replica URLs; falls back to ml.service.url when empty
+    @Value("${ml.service.urls:}")
+    private List<String> mlServiceUrls;
+
+    // Wire format for predictions: json, or binary (fixed 56-byte rows posted to /predict)
+    @Value("${ml.service.protocol:json}")
+    private String protocol;
+
+    @Value("${ml.service.health-interval-ms:5000}")
+    private long healthIntervalMs;
+
+    // Hedging: if the first replica has not answered within its p95, ask a second one
+    @Value("${ml.service.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${ml.service.hedge.min-delay-ms:20}")
+    private long hedgeMinDelayMs;
+
+    @Value("${ml.service.hedge.max-threads:64}")
+    private int hedgeMaxThreads;
+
+    // Micro-batching: concurrent predictions are coalesced into /predict_batch calls
+    @Value("${ml.service.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${ml.service.batch.max-size:64}")
+    private int batchMaxSize;
+
+    @Value("${ml.service.batch.max-wait-micros:2000}")
+    private long batchMaxWaitMicros;
+
+    @Value("${ml.service.batch.max-in-flight:4}")
+    private int batchMaxInFlight;
+
+    @Value("${ml.service.batch.caller-timeout-ms:10000}")
+    private long batchCallerTimeoutMs;
+
+    private MLEndpointRouter router;
+    private ScheduledExecutorService healthProber;
+    private ThreadPoolExecutor hedgeExecutor;
+    private Counter hedgedCalls;
+    private MLRequestBatcher batcher;
+    private boolean binaryProtocol;
+
+    // Reported by the ML service in the X-Model-Version header of each prediction
+    private volatile String modelVersion;
+
+    @Autowired
+    public MLServiceClient(RestTemplate mlRestTemplate, MeterRegistry meterRegistry) {
+        this.restTemplate = mlRestTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        List<String> urls = mlServiceUrls == null ? List.of()
+            : mlServiceUrls.stream().filter(url -> !url.isBlank()).toList();
+        router = new MLEndpointRouter(urls.isEmpty() ? List.of(mlServiceUrl) : urls);
+        for (MLEndpointRouter.Endpoint endpoint : router.getEndpoints()) {
+            Gauge.builder("ml.replica.outstanding", endpoint, MLEndpointRouter.Endpoint::getOutstanding)
+                .tag("url", endpoint.getUrl())
+                .register(meterRegistry);
+            Gauge.builder("ml.replica.healthy", endpoint, e -> e.isHealthy() ? 1 : 0)
+                .tag("url", endpoint.getUrl())
+                .register(meterRegistry);
+        }
+        hedgedCalls = Counter.builder("ml.replica.hedged").description("Calls duplicated to a second replica")
+            .register(meterRegistry);
+
+        healthProber = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ml-health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthProber.scheduleWithFixedDelay(this::probeReplicas, healthIntervalMs, healthIntervalMs, TimeUnit.MILLISECONDS);
+
+        if (hedgeEnabled && router.getEndpoints().size() > 1) {
+            hedgeExecutor = new ThreadPoolExecutor(0, hedgeMaxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ml-hedge");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        System.out.println("ML service replicas: " + router.getEndpoints().size()
+            + (hedgeExecutor != null ? " (hedging enabled)" : ""));
+
+        binaryProtocol = "binary".equalsIgnoreCase(protocol);
+        if (binaryProtocol) {
+            System.out.println("ML service protocol: binary frames on /predict");
+        }
+
+        if (batchEnabled) {
+            if (batchMaxSize < 1 || batchMaxSize > MAX_BATCH_ROWS) {
+                int clamped = Math.max(1, Math.min(batchMaxSize, MAX_BATCH_ROWS));
+                System.err.println("ml.service.batch.max-size=" + batchMaxSize + " is outside the 1.." + MAX_BATCH_ROWS
+                    + " rows /predict_batch accepts, using " + clamped);
+                batchMaxSize = clamped;
+            }
+            batcher = new MLRequestBatcher(this::sendBatch, batchMaxSize, batchMaxWaitMicros,
+                batchMaxInFlight, batchCallerTimeoutMs);
+            System.out.println("ML request batching enabled: up to " + batchMaxSize + " rows or "
+                + batchMaxWaitMicros + "us per batch");
+        }
     }
-    
+
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+        healthProber.shutdownNow();
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    @Override
     public MLServiceResponse predictRisk(MLServiceRequest request) {
+        if (batcher != null) {
+            return batcher.submit(request);
+        }
+        if (binaryProtocol) {
+            return postBinary(List.of(request)).get(0);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<MLServiceRequest> entity = new HttpEntity<>(request, headers);
+
+        ResponseEntity<MLServiceResponse> response = execute(baseUrl -> restTemplate.postForEntity(
+            baseUrl + "/predict",
+            entity,
+            MLServiceResponse.class
+        ));
+
+        recordModelVersion(response.getHeaders());
+        return response.getBody();
+    }
+
+    @Override
+    public List<MLServiceResponse> predictRiskBatch(List<MLServiceRequest> requests) {
+        if (requests.size() <= MAX_BATCH_ROWS) {
+            return sendBatch(requests);
+        }
+        List<MLServiceResponse> responses = new ArrayList<>(requests.size());
+        for (int from = 0; from < requests.size(); from += MAX_BATCH_ROWS) {
+            int to = Math.min(from + MAX_BATCH_ROWS, requests.size());
+            responses.addAll(sendBatch(requests.subList(from, to)));
+        }
+        return responses;
+    }
+
+    private List<MLServiceResponse> sendBatch(List<MLServiceRequest> requests) {
+        if (binaryProtocol) {
+            return postBinary(requests);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<MLBatchRequest> entity = new HttpEntity<>(new MLBatchRequest(requests), headers);
+
+        ResponseEntity<MLBatchResponse> response = execute(baseUrl -> restTemplate.postForEntity(
+            baseUrl + "/predict_batch",
+            entity,
+            MLBatchResponse.class
+        ));
+
+        recordModelVersion(response.getHeaders());
+        MLBatchResponse body = response.getBody();
+        if (body == null || body.getPredictions() == null) {
+            throw new RuntimeException("ML service returned an empty batch response");
+        }
+        return body.getPredictions();
+    }
+
+    /**
+     * Posts up to MAX_BATCH_ROWS rows to /predict as one binary frame.
+     */
+    private List<MLServiceResponse> postBinary(List<MLServiceRequest> requests) {
+        return execute(baseUrl -> restTemplate.execute(
+            baseUrl + "/predict",
+            HttpMethod.POST,
+            request -> {
+                HttpHeaders headers = request.getHeaders();
+                headers.setContentType(BINARY_REQUEST_TYPE);
+                headers.setAccept(List.of(BINARY_RESPONSE_TYPE));
+                headers.setContentLength(MLBinaryCodec.frameLength(requests.size()));
+                MLBinaryCodec.writeRequest(requests, request.getBody());
+            },
+            response -> {
+                recordModelVersion(response.getHeaders());
+                return MLBinaryCodec.readResponse(response.getBody(), requests.size());
+            }
+        ));
+    }
+
+    /**
+     * Runs call against the least loaded replica, hedging to a second replica when enabled.
+     */
+    private <T> T execute(Function<String, T> call) {
+        MLEndpointRouter.Endpoint primary = router.acquire(null);
+        if (hedgeExecutor == null) {
+            return attempt(primary, call);
+        }
+
+        CompletableFuture<T> primaryResult;
+        try {
+            primaryResult = CompletableFuture.supplyAsync(() -> attempt(primary, call), hedgeExecutor);
+        } catch (RejectedExecutionException e) {
+            // Hedge pool saturated: call without hedging on this thread
+            return attempt(primary, call);
+        }
+
+        long hedgeDelayMs = Math.max(hedgeMinDelayMs, TimeUnit.NANOSECONDS.toMillis(primary.getP95Nanos()));
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<MLServiceRequest> entity = new HttpEntity<>(request, headers);
-            
-            ResponseEntity<MLServiceResponse> response = restTemplate.postForEntity(
-                mlServiceUrl + "/predict",
-                entity,
-                MLServiceResponse.class
-            );
-            
-            return response.getBody();
+            return primaryResult.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Fall through and hedge
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for ML service", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        MLEndpointRouter.Endpoint secondary = router.acquire(primary);
+        if (secondary == null) {
+            return await(primaryResult);
+        }
+        CompletableFuture<T> secondaryResult;
+        try {
+            secondaryResult = CompletableFuture.supplyAsync(() -> attempt(secondary, call), hedgeExecutor);
+        } catch (RejectedExecutionException e) {
+            router.cancel(secondary);
+            return await(primaryResult);
+        }
+        hedgedCalls.increment();
+
+        // First successful answer wins; fail only if both attempts fail
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<T> result : List.of(primaryResult, secondaryResult)) {
+            result.whenComplete((value, error) -> {
+                if (error == null) {
+                    winner.complete(value);
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+        return await(winner);
+    }
+
+    private <T> T attempt(MLEndpointRouter.Endpoint endpoint, Function<String, T> call) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.apply(endpoint.getUrl());
+            success = true;
+            return result;
         } catch (RestClientException e) {
             throw new RuntimeException("Failed to communicate with ML service: " + e.getMessage(), e);
+        } finally {
+            router.release(endpoint, System.nanoTime() - start, success);
         }
     }
-}
 
+    private <T> T await(CompletableFuture<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for ML service", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
 
+    private RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new RuntimeException("Failed to communicate with ML service: " + cause.getMessage(), cause);
+    }
 
+    private void probeReplicas() {
+        for (MLEndpointRouter.Endpoint endpoint : router.getEndpoints()) {
+            boolean healthy;
+            try {
+                Map<?, ?> health = restTemplate.getForObject(endpoint.getUrl() + "/health", Map.class);
+                healthy = health != null && "healthy".equals(health.get("status"));
+            } catch (RestClientException e) {
+                healthy = false;
+            }
+            router.recordProbe(endpoint, healthy);
+        }
+    }
 
+    private void recordModelVersion(HttpHeaders headers) {
+        String version = headers.getFirst(MODEL_VERSION_HEADER);
+        if (version != null && !version.equals(modelVersion)) {
+            modelVersion = version;
+        }
+    }
 
+    @Override
+    public String getModelVersion() {
+        return modelVersion;
+    }
 
+    public List<MLEndpointRouter.Endpoint> getEndpoints() {
+        return router.getEndpoints();
+    }
+}
@@ -0,0 +1,16 @@
+package com.dementia.riskassessment.service;
+
+/**
+ * Thrown when a prediction cannot be made because the ML service is unavailable,
+ * for example while the circuit breaker is open and no fallback is configured.
+ */
+public class MLUnavailableException extends RuntimeException {
+
+    public MLUnavailableException(String message) {
+        super(message);
+    }
+
+    public MLUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,140 @@
+package com.dementia.riskassessment.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the most recent primary-versus-candidate comparisons in a fixed-size ring buffer,
+ * along with lifetime counters for mirrored, dropped, failed and canary-served requests.
+ */
+public class ModelEvaluationRecorder {
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final String[] primaryLabels;
+    private final String[] candidateLabels;
+    private final long[] primaryNanos;
+    private final long[] candidateNanos;
+    private int size;
+    private int next;
+
+    private final LongAdder mirrored = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder candidateErrors = new LongAdder();
+    private final LongAdder canaryServed = new LongAdder();
+    private final LongAdder canaryFallbacks = new LongAdder();
+
+    public ModelEvaluationRecorder(int capacity) {
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.primaryLabels = new String[capacity];
+        this.candidateLabels = new String[capacity];
+        this.primaryNanos = new long[capacity];
+        this.candidateNanos = new long[capacity];
+    }
+
+    public synchronized void record(String primaryLabel, long primaryLatencyNanos,
+                                    String candidateLabel, long candidateLatencyNanos) {
+        timestamps[next] = System.currentTimeMillis();
+        primaryLabels[next] = primaryLabel;
+        candidateLabels[next] = candidateLabel;
+        primaryNanos[next] = primaryLatencyNanos;
+        candidateNanos[next] = candidateLatencyNanos;
+        next = (next + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+        mirrored.increment();
+    }
+
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    public void recordCandidateError() {
+        candidateErrors.increment();
+    }
+
+    public void recordCanary(boolean servedByCandidate) {
+        if (servedByCandidate) {
+            canaryServed.increment();
+        } else {
+            canaryFallbacks.increment();
+        }
+    }
+
+    /**
+     * Agreement rate over the samples currently in the buffer, or NaN when empty.
+     */
+    public synchronized double getAgreementRate() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        int agree = 0;
+        for (int i = 0; i < size; i++) {
+            if (primaryLabels[i].equalsIgnoreCase(candidateLabels[i])) {
+                agree++;
+            }
+        }
+        return (double) agree / size;
+    }
+
+    /**
+     * Summarizes the buffered samples and lists the latest ones, newest first.
+     */
+    public synchronized Map<String, Object> snapshot(int recentLimit) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("samples", size);
+        summary.put("mirrored", mirrored.sum());
+        summary.put("dropped", dropped.sum());
+        summary.put("candidateErrors", candidateErrors.sum());
+        summary.put("canaryServed", canaryServed.sum());
+        summary.put("canaryFallbacks", canaryFallbacks.sum());
+
+        Map<String, Integer> confusion = new LinkedHashMap<>();
+        long[] deltas = new long[size];
+        int agree = 0;
+        for (int i = 0; i < size; i++) {
+            if (primaryLabels[i].equalsIgnoreCase(candidateLabels[i])) {
+                agree++;
+            }
+            confusion.merge(primaryLabels[i].toLowerCase() + "->" + candidateLabels[i].toLowerCase(), 1, Integer::sum);
+            deltas[i] = candidateNanos[i] - primaryNanos[i];
+        }
+        summary.put("agreementRate", size == 0 ? null : (double) agree / size);
+        summary.put("confusion", confusion);
+
+        // Candidate minus primary latency; positive means the candidate is slower
+        if (size > 0) {
+            Arrays.sort(deltas);
+            long total = 0;
+            for (long delta : deltas) {
+                total += delta;
+            }
+            Map<String, Double> latencyDelta = new LinkedHashMap<>();
+            latencyDelta.put("meanMs", total / (double) size / 1_000_000.0);
+            latencyDelta.put("p50Ms", deltas[(int) Math.ceil(size * 0.50) - 1] / 1_000_000.0);
+            latencyDelta.put("p95Ms", deltas[(int) Math.ceil(size * 0.95) - 1] / 1_000_000.0);
+            summary.put("latencyDelta", latencyDelta);
+        }
+
+        List<Map<String, Object>> recent = new ArrayList<>();
+        for (int i = 0; i < Math.min(recentLimit, size); i++) {
+            int index = Math.floorMod(next - 1 - i, capacity);
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("timestamp", Instant.ofEpochMilli(timestamps[index]).toString());
+            sample.put("primary", primaryLabels[index]);
+            sample.put("candidate", candidateLabels[index]);
+            sample.put("primaryMs", primaryNanos[index] / 1_000_000.0);
+            sample.put("candidateMs", candidateNanos[index] / 1_000_000.0);
+            recent.add(sample);
+        }
+        summary.put("recent", recent);
+        return summary;
+    }
+}
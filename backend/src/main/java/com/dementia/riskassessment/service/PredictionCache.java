@@ -0,0 +1,141 @@
+package com.dementia.riskassessment.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, TTL-evicted map from a packed feature key to a risk label.
+ * The table is 4-way set associative over primitive arrays, so lookups do not allocate.
+ * Each set is guarded by one of a fixed number of lock stripes; when a set is full the
+ * least recently used entry is evicted.
+ */
+public class PredictionCache {
+
+    private static final int WAYS = 4;
+    private static final int LOCK_STRIPES = 64;
+    private static final long EMPTY = -1L;
+
+    private final int setMask;
+    private final long ttlNanos;
+    private final long[] keys;
+    private final String[] labels;
+    private final long[] expiresAt;
+    private final long[] lastAccess;
+    private final Object[] locks;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public PredictionCache(int maxEntries, long ttlNanos) {
+        int sets = Integer.highestOneBit(Math.max(maxEntries / WAYS, 1));
+        this.setMask = sets - 1;
+        this.ttlNanos = ttlNanos;
+        this.keys = new long[sets * WAYS];
+        this.labels = new String[sets * WAYS];
+        this.expiresAt = new long[sets * WAYS];
+        this.lastAccess = new long[sets * WAYS];
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Returns the cached label for key, or null on a miss. key must be non-negative.
+     */
+    public String get(long key) {
+        int set = setIndex(key);
+        int base = set * WAYS;
+        long now = System.nanoTime();
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            for (int slot = base; slot < base + WAYS; slot++) {
+                if (keys[slot] == key) {
+                    if (now - expiresAt[slot] >= 0) {
+                        clearSlot(slot);
+                        evictions.increment();
+                        break;
+                    }
+                    lastAccess[slot] = now;
+                    hits.increment();
+                    return labels[slot];
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(long key, String label) {
+        int set = setIndex(key);
+        int base = set * WAYS;
+        long now = System.nanoTime();
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            int target = -1;
+            int oldest = base;
+            for (int slot = base; slot < base + WAYS; slot++) {
+                if (keys[slot] == key || keys[slot] == EMPTY) {
+                    target = slot;
+                    break;
+                }
+                if (now - expiresAt[slot] >= 0) {
+                    // Reuse an expired slot before evicting a live one
+                    target = slot;
+                }
+                if (lastAccess[slot] - lastAccess[oldest] < 0) {
+                    oldest = slot;
+                }
+            }
+            if (target < 0) {
+                target = oldest;
+            }
+            if (keys[target] != EMPTY && keys[target] != key) {
+                evictions.increment();
+            }
+            keys[target] = key;
+            labels[target] = label;
+            expiresAt[target] = now + ttlNanos;
+            lastAccess[target] = now;
+        }
+    }
+
+    public void clear() {
+        for (int stripe = 0; stripe < LOCK_STRIPES; stripe++) {
+            synchronized (locks[stripe]) {
+                for (int set = stripe; set <= setMask; set += LOCK_STRIPES) {
+                    for (int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+                        clearSlot(slot);
+                    }
+                }
+            }
+        }
+    }
+
+    private void clearSlot(int slot) {
+        keys[slot] = EMPTY;
+        labels[slot] = null;
+    }
+
+    private int setIndex(long key) {
+        // Spread the packed feature bits before masking
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & setMask;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+}
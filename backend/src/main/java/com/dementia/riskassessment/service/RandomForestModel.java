@@ -0,0 +1,178 @@
+package com.dementia.riskassessment.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Random forest exported by ml-service/export_forest.py, flattened into primitive arrays.
+ * All trees share one node index space: node i of the forest has its split feature,
+ * threshold and child indices at position i, and its class fractions at
+ * [i * classCount, (i + 1) * classCount) in leafValues. Leaves have leftChild == -1.
+ */
+public class RandomForestModel {
+
+    public static final int FEATURE_COUNT = 7;
+
+    private final String version;
+    private final String[] classLabels;
+    private final double[] scalerMean;
+    private final double[] scalerScale;
+    private final int[] treeRoots;
+    private final int[] feature;
+    private final double[] threshold;
+    private final int[] leftChild;
+    private final int[] rightChild;
+    private final double[] leafValues;
+
+    private RandomForestModel(String version, String[] classLabels, double[] scalerMean, double[] scalerScale,
+                              int[] treeRoots, int[] feature, double[] threshold,
+                              int[] leftChild, int[] rightChild, double[] leafValues) {
+        this.version = version;
+        this.classLabels = classLabels;
+        this.scalerMean = scalerMean;
+        this.scalerScale = scalerScale;
+        this.treeRoots = treeRoots;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.leftChild = leftChild;
+        this.rightChild = rightChild;
+        this.leafValues = leafValues;
+    }
+
+    public static RandomForestModel load(InputStream in) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(in);
+
+        if (root.path("n_features").asInt() != FEATURE_COUNT) {
+            throw new IOException("Expected " + FEATURE_COUNT + " features, model has " + root.path("n_features").asInt());
+        }
+
+        JsonNode classesNode = root.path("classes");
+        String[] classLabels = new String[classesNode.size()];
+        for (int c = 0; c < classLabels.length; c++) {
+            classLabels[c] = classesNode.get(c).asText().toLowerCase().intern();
+        }
+        if (classLabels.length == 0) {
+            throw new IOException("Model has no classes");
+        }
+
+        double[] mean = readDoubles(root.path("scaler").path("mean"));
+        double[] scale = readDoubles(root.path("scaler").path("scale"));
+        if (mean.length != FEATURE_COUNT || scale.length != FEATURE_COUNT) {
+            throw new IOException("Scaler parameters do not match the feature count");
+        }
+
+        JsonNode trees = root.path("trees");
+        int nodeCount = 0;
+        for (JsonNode tree : trees) {
+            nodeCount += tree.path("feature").size();
+        }
+
+        int classCount = classLabels.length;
+        int[] treeRoots = new int[trees.size()];
+        int[] feature = new int[nodeCount];
+        double[] threshold = new double[nodeCount];
+        int[] leftChild = new int[nodeCount];
+        int[] rightChild = new int[nodeCount];
+        double[] leafValues = new double[nodeCount * classCount];
+
+        int offset = 0;
+        for (int t = 0; t < treeRoots.length; t++) {
+            JsonNode tree = trees.get(t);
+            JsonNode features = tree.path("feature");
+            JsonNode thresholds = tree.path("threshold");
+            JsonNode lefts = tree.path("children_left");
+            JsonNode rights = tree.path("children_right");
+            JsonNode values = tree.path("value");
+            int size = features.size();
+
+            treeRoots[t] = offset;
+            for (int n = 0; n < size; n++) {
+                int node = offset + n;
+                int left = lefts.get(n).asInt();
+                if (left < 0) {
+                    leftChild[node] = -1;
+                    rightChild[node] = -1;
+                    JsonNode leaf = values.get(n);
+                    for (int c = 0; c < classCount; c++) {
+                        leafValues[node * classCount + c] = leaf.get(c).asDouble();
+                    }
+                } else {
+                    int f = features.get(n).asInt();
+                    if (f < 0 || f >= FEATURE_COUNT) {
+                        throw new IOException("Tree " + t + " node " + n + " splits on unknown feature " + f);
+                    }
+                    feature[node] = f;
+                    threshold[node] = thresholds.get(n).asDouble();
+                    leftChild[node] = offset + left;
+                    rightChild[node] = offset + rights.get(n).asInt();
+                }
+            }
+            offset += size;
+        }
+
+        String version = root.path("model_version").asText("unknown");
+        return new RandomForestModel(version, classLabels, mean, scale, treeRoots, feature, threshold,
+            leftChild, rightChild, leafValues);
+    }
+
+    private static double[] readDoubles(JsonNode node) {
+        double[] values = new double[node.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = node.get(i).asDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Scales the raw features in place and returns the index of the predicted class.
+     * probabilities must hold at least getClassCount() entries and is overwritten.
+     */
+    public int predictClass(double[] features, double[] probabilities) {
+        int classCount = classLabels.length;
+        for (int f = 0; f < FEATURE_COUNT; f++) {
+            // sklearn compares float32 features against float64 thresholds
+            features[f] = (float) ((features[f] - scalerMean[f]) / scalerScale[f]);
+        }
+        for (int c = 0; c < classCount; c++) {
+            probabilities[c] = 0.0;
+        }
+
+        for (int root : treeRoots) {
+            int node = root;
+            while (leftChild[node] >= 0) {
+                node = features[feature[node]] <= threshold[node] ? leftChild[node] : rightChild[node];
+            }
+            int base = node * classCount;
+            for (int c = 0; c < classCount; c++) {
+                probabilities[c] += leafValues[base + c];
+            }
+        }
+
+        int best = 0;
+        for (int c = 1; c < classCount; c++) {
+            if (probabilities[c] > probabilities[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    public String getClassLabel(int classIndex) {
+        return classLabels[classIndex];
+    }
+
+    public int getClassCount() {
+        return classLabels.length;
+    }
+
+    public int getTreeCount() {
+        return treeRoots.length;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+}
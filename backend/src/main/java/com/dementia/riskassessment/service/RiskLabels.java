@@ -0,0 +1,70 @@
+package com.dementia.riskassessment.service;
+
+import java.util.Map;
+
+/**
+ * Display names and recommendations for risk labels, built once so read paths
+ * return shared constant strings instead of formatting them per row.
+ */
+public final class RiskLabels {
+
+    private static final String DEFAULT_RECOMMENDATION = "Continue monitoring your cognitive health.";
+
+    private static final Map<String, String> DISPLAY_NAMES = Map.of(
+        "low", "Low",
+        "medium", "Medium",
+        "high", "High"
+    );
+
+    private static final Map<String, String> RECOMMENDATIONS = Map.of(
+        "low", "Maintain cognitive health monitoring. Continue regular check-ups and healthy lifestyle practices.",
+        "medium", "Consider more frequent cognitive assessments and consult with a healthcare professional for further evaluation.",
+        "high", "Please consult with a healthcare professional for a comprehensive evaluation and appropriate care planning."
+    );
+
+    private static final Map<String, Integer> SEVERITY = Map.of(
+        "low", 0,
+        "medium", 1,
+        "high", 2
+    );
+
+    private RiskLabels() {
+    }
+
+    /**
+     * Capitalized label ("medium" -> "Medium"); unknown labels are formatted on the fly.
+     */
+    public static String displayName(String label) {
+        if (label == null || label.isEmpty()) {
+            return label;
+        }
+        String name = DISPLAY_NAMES.get(label);
+        if (name == null) {
+            name = DISPLAY_NAMES.get(label.toLowerCase());
+        }
+        return name != null ? name : label.substring(0, 1).toUpperCase() + label.substring(1).toLowerCase();
+    }
+
+    public static String recommendation(String label) {
+        if (label == null) {
+            return DEFAULT_RECOMMENDATION;
+        }
+        String recommendation = RECOMMENDATIONS.get(label);
+        if (recommendation == null) {
+            recommendation = RECOMMENDATIONS.getOrDefault(label.toLowerCase(), DEFAULT_RECOMMENDATION);
+        }
+        return recommendation;
+    }
+
+    /**
+     * "up", "down" or "stable" comparing the latest label with the previous one; null if either is missing or unknown.
+     */
+    public static String trend(String previousLabel, String latestLabel) {
+        Integer previous = previousLabel != null ? SEVERITY.get(previousLabel.toLowerCase()) : null;
+        Integer latest = latestLabel != null ? SEVERITY.get(latestLabel.toLowerCase()) : null;
+        if (previous == null || latest == null) {
+            return null;
+        }
+        return latest > previous ? "up" : latest < previous ? "down" : "stable";
+    }
+}
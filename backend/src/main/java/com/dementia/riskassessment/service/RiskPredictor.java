@@ -0,0 +1,35 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scores a feature vector into a risk level ("low", "medium" or "high").
+ * Implemented by the HTTP client for the Python ML service and by the in-process forest engine.
+ */
+public interface RiskPredictor {
+
+    MLServiceResponse predictRisk(MLServiceRequest request);
+
+    /**
+     * Scores several rows at once. Responses are returned in request order.
+     */
+    default List<MLServiceResponse> predictRiskBatch(List<MLServiceRequest> requests) {
+        List<MLServiceResponse> responses = new ArrayList<>(requests.size());
+        for (MLServiceRequest request : requests) {
+            responses.add(predictRisk(request));
+        }
+        return responses;
+    }
+
+    /**
+     * Identifies the model currently answering predictions, or null if unknown.
+     * Callers that cache predictions discard them when this changes.
+     */
+    default String getModelVersion() {
+        return null;
+    }
+}
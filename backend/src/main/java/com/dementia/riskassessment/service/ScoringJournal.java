@@ -0,0 +1,484 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.AssessmentRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only journal of assessments waiting for the ML service.
+ * Each line is "crc32-hex TAB json". A record is ACCEPTED (ticket, the assessment ID reserved
+ * for it and the original request), COMPLETED (ticket plus outcome) or FAILED. Appends are
+ * written by one thread that fsyncs once per group of queued records; callers return only
+ * after their record is on disk, and the in-memory tickets change only once it is.
+ * On startup, and every compact-interval-minutes from the writer thread, the file is rewritten
+ * with pending tickets plus outcomes younger than the retention period; replay discards a torn tail.
+ */
+@Component
+@ConditionalOnProperty(name = "assessment.deferred.enabled", havingValue = "true")
+public class ScoringJournal {
+
+    public enum Status { PENDING_SCORING, COMPLETED, FAILED }
+
+    public static class Ticket {
+        private final String ticketId;
+        private final AssessmentRequest request;
+        private final Instant submittedAt;
+        private volatile Status status = Status.PENDING_SCORING;
+        private volatile Long assessmentId;
+        private volatile String riskLevel;
+        private volatile boolean provisional;
+        private volatile String error;
+        private volatile Instant completedAt;
+
+        Ticket(String ticketId, Long assessmentId, AssessmentRequest request, Instant submittedAt) {
+            this.ticketId = ticketId;
+            this.assessmentId = assessmentId;
+            this.request = request;
+            this.submittedAt = submittedAt;
+        }
+
+        public String getTicketId() {
+            return ticketId;
+        }
+
+        public AssessmentRequest getRequest() {
+            return request;
+        }
+
+        public Instant getSubmittedAt() {
+            return submittedAt;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Long getAssessmentId() {
+            return assessmentId;
+        }
+
+        public String getRiskLevel() {
+            return riskLevel;
+        }
+
+        public boolean isProvisional() {
+            return provisional;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public Instant getCompletedAt() {
+            return completedAt;
+        }
+    }
+
+    private static class PendingWrite {
+        final byte[] line;
+        // Applied by the writer once the line is on disk, so compaction never sees undurable state
+        final Runnable onWritten;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        PendingWrite(byte[] line, Runnable onWritten) {
+            this.line = line;
+            this.onWritten = onWritten;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${assessment.deferred.journal-path:./data/scoring-journal.log}")
+    private String journalPath;
+
+    @Value("${assessment.deferred.retention-hours:24}")
+    private long retentionHours;
+
+    @Value("${assessment.deferred.compact-interval-minutes:60}")
+    private long compactIntervalMinutes;
+
+    private final Map<String, Ticket> tickets = new LinkedHashMap<>();
+    private final BlockingQueue<PendingWrite> writeQueue = new LinkedBlockingQueue<>();
+    private Path path;
+    private FileChannel channel;
+    private Thread writer;
+    private volatile boolean running;
+
+    @Autowired
+    public ScoringJournal(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        path = Paths.get(journalPath);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (Files.exists(path)) {
+            replay();
+            compact();
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        running = true;
+        writer = new Thread(this::writeLoop, "scoring-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        System.out.println("Scoring journal opened at " + path.toAbsolutePath() + " with " + getPendingCount()
+            + " pending tickets");
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Durably records a new assessment awaiting scoring and returns its ticket ID. The assessment
+     * is later stored under assessmentId, so a ticket replayed after a crash is stored only once.
+     */
+    public String accept(AssessmentRequest request, long assessmentId) {
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), assessmentId, request, Instant.now());
+        await(List.of(enqueue(acceptedRecord(ticket), () -> {
+            synchronized (tickets) {
+                tickets.put(ticket.ticketId, ticket);
+            }
+        })));
+        return ticket.ticketId;
+    }
+
+    /**
+     * Durably records outcomes for a batch of tickets with one fsync.
+     */
+    public void complete(List<Ticket> completed) {
+        List<CompletableFuture<Void>> writes = new ArrayList<>(completed.size());
+        Instant now = Instant.now();
+        for (Ticket ticket : completed) {
+            ObjectNode record = objectMapper.createObjectNode();
+            record.put("ticket", ticket.ticketId);
+            record.put("ts", now.toEpochMilli());
+            if (ticket.error == null) {
+                record.put("type", "COMPLETED");
+                record.put("assessmentId", ticket.assessmentId);
+                record.put("riskLevel", ticket.riskLevel);
+                record.put("provisional", ticket.provisional);
+            } else {
+                record.put("type", "FAILED");
+                record.put("error", ticket.error);
+            }
+            Status status = ticket.error == null ? Status.COMPLETED : Status.FAILED;
+            writes.add(enqueue(record, () -> {
+                ticket.completedAt = now;
+                ticket.status = status;
+            }));
+        }
+        await(writes);
+    }
+
+    public void markCompleted(Ticket ticket, Long assessmentId, String riskLevel, boolean provisional) {
+        ticket.assessmentId = assessmentId;
+        ticket.riskLevel = riskLevel;
+        ticket.provisional = provisional;
+        ticket.error = null;
+    }
+
+    public void markFailed(Ticket ticket, String error) {
+        ticket.error = error != null ? error : "Unknown error";
+    }
+
+    public Ticket getTicket(String ticketId) {
+        synchronized (tickets) {
+            return tickets.get(ticketId);
+        }
+    }
+
+    /**
+     * Returns up to limit pending tickets, oldest first.
+     */
+    public List<Ticket> pendingTickets(int limit) {
+        List<Ticket> pending = new ArrayList<>();
+        synchronized (tickets) {
+            for (Ticket ticket : tickets.values()) {
+                if (ticket.status == Status.PENDING_SCORING) {
+                    pending.add(ticket);
+                    if (pending.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return pending;
+    }
+
+    public int getPendingCount() {
+        synchronized (tickets) {
+            return (int) tickets.values().stream().filter(t -> t.status == Status.PENDING_SCORING).count();
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(ObjectNode record, Runnable onWritten) {
+        if (!running) {
+            throw new IllegalStateException("Scoring journal is closed");
+        }
+        byte[] line;
+        try {
+            line = encode(record);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize journal record", e);
+        }
+        PendingWrite write = new PendingWrite(line, onWritten);
+        writeQueue.add(write);
+        return write.written;
+    }
+
+    private void await(List<CompletableFuture<Void>> writes) {
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing scoring journal", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to write scoring journal: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingWrite> group = new ArrayList<>();
+        long compactIntervalNanos = TimeUnit.MINUTES.toNanos(compactIntervalMinutes);
+        long nextCompaction = System.nanoTime() + compactIntervalNanos;
+        while (running || !writeQueue.isEmpty()) {
+            try {
+                PendingWrite first = writeQueue.poll(Math.max(0, nextCompaction - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    group.add(first);
+                }
+            } catch (InterruptedException e) {
+                if (writeQueue.isEmpty()) {
+                    break;
+                }
+            }
+            if (System.nanoTime() - nextCompaction >= 0) {
+                compactLive();
+                nextCompaction = System.nanoTime() + compactIntervalNanos;
+            }
+            if (group.isEmpty() && writeQueue.isEmpty()) {
+                continue;
+            }
+            // Everything queued while the previous fsync ran shares the next one
+            writeQueue.drainTo(group);
+            try {
+                for (PendingWrite write : group) {
+                    ByteBuffer buffer = ByteBuffer.wrap(write.line);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                channel.force(false);
+                for (PendingWrite write : group) {
+                    write.onWritten.run();
+                    write.written.complete(null);
+                }
+            } catch (IOException e) {
+                for (PendingWrite write : group) {
+                    write.written.completeExceptionally(e);
+                }
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Rewrites the journal between write groups; only the writer thread appends, so nothing is lost.
+     */
+    private void compactLive() {
+        try {
+            channel.close();
+            compact();
+        } catch (IOException e) {
+            System.err.println("Scoring journal compaction failed: " + e.getMessage());
+        }
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            // Appends fail until the next compaction attempt reopens the file
+            System.err.println("Failed to reopen scoring journal: " + e.getMessage());
+        }
+    }
+
+    private void replay() throws IOException {
+        long validBytes = 0;
+        int records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode record = parse(line);
+                if (record == null) {
+                    System.err.println("Scoring journal: discarding corrupt tail after " + records + " records");
+                    break;
+                }
+                apply(record);
+                validBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                records++;
+            }
+        }
+        if (validBytes < Files.size(path)) {
+            try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                truncate.truncate(validBytes);
+            }
+        }
+    }
+
+    private JsonNode parse(String line) {
+        int tab = line.indexOf('\t');
+        if (tab != 8) {
+            return null;
+        }
+        byte[] json = line.substring(tab + 1).getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        if (!String.format("%08x", crc.getValue()).equals(line.substring(0, tab))) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void apply(JsonNode record) throws IOException {
+        String ticketId = record.path("ticket").asText();
+        Instant ts = Instant.ofEpochMilli(record.path("ts").asLong());
+        switch (record.path("type").asText()) {
+            case "ACCEPTED":
+                AssessmentRequest request = objectMapper.treeToValue(record.get("request"), AssessmentRequest.class);
+                // Journals written before IDs were reserved at acceptance have none
+                Long assessmentId = record.hasNonNull("assessmentId") ? record.get("assessmentId").asLong() : null;
+                tickets.put(ticketId, new Ticket(ticketId, assessmentId, request, ts));
+                break;
+            case "COMPLETED":
+            case "FAILED":
+                Ticket ticket = tickets.get(ticketId);
+                if (ticket == null) {
+                    break;
+                }
+                if (record.path("type").asText().equals("COMPLETED")) {
+                    ticket.assessmentId = record.path("assessmentId").asLong();
+                    ticket.riskLevel = record.path("riskLevel").asText(null);
+                    ticket.provisional = record.path("provisional").asBoolean(false);
+                    ticket.status = Status.COMPLETED;
+                } else {
+                    ticket.error = record.path("error").asText(null);
+                    ticket.status = Status.FAILED;
+                }
+                ticket.completedAt = ts;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void compact() throws IOException {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(retentionHours));
+        List<Ticket> retained;
+        synchronized (tickets) {
+            tickets.values().removeIf(t -> t.status != Status.PENDING_SCORING && t.completedAt.isBefore(cutoff));
+            retained = new ArrayList<>(tickets.values());
+        }
+
+        // Write the surviving state to a temporary file, then atomically replace the journal
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Ticket ticket : retained) {
+                writeDirect(out, acceptedRecord(ticket));
+                if (ticket.status != Status.PENDING_SCORING) {
+                    ObjectNode outcome = objectMapper.createObjectNode();
+                    outcome.put("ticket", ticket.ticketId);
+                    outcome.put("ts", ticket.completedAt.toEpochMilli());
+                    if (ticket.status == Status.COMPLETED) {
+                        outcome.put("type", "COMPLETED");
+                        outcome.put("assessmentId", ticket.assessmentId);
+                        outcome.put("riskLevel", ticket.riskLevel);
+                        outcome.put("provisional", ticket.provisional);
+                    } else {
+                        outcome.put("type", "FAILED");
+                        outcome.put("error", ticket.error);
+                    }
+                    writeDirect(out, outcome);
+                }
+            }
+            out.force(false);
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ObjectNode acceptedRecord(Ticket ticket) {
+        ObjectNode accepted = objectMapper.createObjectNode();
+        accepted.put("type", "ACCEPTED");
+        accepted.put("ticket", ticket.ticketId);
+        accepted.put("ts", ticket.submittedAt.toEpochMilli());
+        if (ticket.assessmentId != null) {
+            accepted.put("assessmentId", ticket.assessmentId);
+        }
+        accepted.set("request", objectMapper.valueToTree(ticket.request));
+        return accepted;
+    }
+
+    private void writeDirect(FileChannel out, ObjectNode record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(encode(record));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private byte[] encode(ObjectNode record) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        byte[] prefix = String.format("%08x\t", crc.getValue()).getBytes(StandardCharsets.US_ASCII);
+        byte[] line = new byte[prefix.length + json.length + 1];
+        System.arraycopy(prefix, 0, line, 0, prefix.length);
+        System.arraycopy(json, 0, line, prefix.length, json.length);
+        line[line.length - 1] = '\n';
+        return line;
+    }
+}
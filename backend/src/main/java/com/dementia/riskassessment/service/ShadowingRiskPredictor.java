@@ -0,0 +1,92 @@
+package com.dementia.riskassessment.service;
+
+import com.dementia.riskassessment.dto.MLServiceRequest;
+import com.dementia.riskassessment.dto.MLServiceResponse;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Evaluates a candidate model next to the primary predictor.
+ * Shadow mode scores the primary as usual, then mirrors a sampled fraction of requests to the
+ * candidate on a bounded executor; mirrors that do not fit are dropped, so the primary path
+ * never waits on the candidate. Canary mode answers a fraction of live requests with the
+ * candidate, falling back to the primary if the candidate fails. Batches go to the primary only.
+ */
+public class ShadowingRiskPredictor implements RiskPredictor {
+
+    private final RiskPredictor primary;
+    private final RiskPredictor candidate;
+    private final ModelEvaluationRecorder recorder;
+    private final ExecutorService mirrorExecutor;
+    private final double shadowFraction;
+    private final double canaryFraction;
+
+    public ShadowingRiskPredictor(RiskPredictor primary, RiskPredictor candidate, ModelEvaluationRecorder recorder,
+                                  ExecutorService mirrorExecutor, double shadowFraction, double canaryFraction) {
+        this.primary = primary;
+        this.candidate = candidate;
+        this.recorder = recorder;
+        this.mirrorExecutor = mirrorExecutor;
+        this.shadowFraction = shadowFraction;
+        this.canaryFraction = canaryFraction;
+    }
+
+    @Override
+    public MLServiceResponse predictRisk(MLServiceRequest request) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (canaryFraction > 0 && random.nextDouble() < canaryFraction) {
+            try {
+                MLServiceResponse response = candidate.predictRisk(request);
+                recorder.recordCanary(true);
+                return response;
+            } catch (RuntimeException e) {
+                recorder.recordCandidateError();
+                recorder.recordCanary(false);
+            }
+            return primary.predictRisk(request);
+        }
+
+        long start = System.nanoTime();
+        MLServiceResponse response = primary.predictRisk(request);
+        long primaryNanos = System.nanoTime() - start;
+
+        // Provisional answers come from the fallback scorer and say nothing about the primary model
+        if (shadowFraction > 0 && !response.isProvisional() && response.getRisk_level() != null
+                && random.nextDouble() < shadowFraction) {
+            String primaryLabel = response.getRisk_level();
+            try {
+                mirrorExecutor.execute(() -> mirror(request, primaryLabel, primaryNanos));
+            } catch (RejectedExecutionException e) {
+                recorder.recordDropped();
+            }
+        }
+        return response;
+    }
+
+    private void mirror(MLServiceRequest request, String primaryLabel, long primaryNanos) {
+        long start = System.nanoTime();
+        try {
+            MLServiceResponse response = candidate.predictRisk(request);
+            if (response.getRisk_level() == null) {
+                recorder.recordCandidateError();
+                return;
+            }
+            recorder.record(primaryLabel, primaryNanos, response.getRisk_level(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            recorder.recordCandidateError();
+        }
+    }
+
+    @Override
+    public List<MLServiceResponse> predictRiskBatch(List<MLServiceRequest> requests) {
+        return primary.predictRiskBatch(requests);
+    }
+
+    @Override
+    public String getModelVersion() {
+        return primary.getModelVersion();
+    }
+}
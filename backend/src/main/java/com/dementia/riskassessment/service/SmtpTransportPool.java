@@ -0,0 +1,258 @@
+package com.dementia.riskassessment.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a few authenticated SMTP connections open so each email does not pay for its own
+ * connect, STARTTLS and AUTH. A sender borrows a connection, sends over it and hands it back.
+ * Connections are recycled after max-messages-per-connection sends, and closed by a timer after
+ * max-idle-ms without use (servers drop idle sessions). A reused connection is checked with NOOP
+ * before sending; a send is retried once on a fresh connection only if it failed before DATA,
+ * so the server can never have accepted the message twice. Each connection's state is published
+ * as metrics tagged with its index.
+ */
+@Component
+public class SmtpTransportPool {
+
+    private class Connection {
+        // Read by the metrics gauges outside the connection's lock
+        private volatile Transport transport;
+        private volatile long openedAt;
+        private volatile long lastUsed;
+        private volatile int messages;
+
+        boolean isOpen() {
+            return transport != null;
+        }
+
+        void send(MimeMessage message) throws MessagingException {
+            long now = System.currentTimeMillis();
+            if (isOpen() && (messages >= maxMessagesPerConnection || now - lastUsed > maxIdleMs)) {
+                close();
+            }
+            // isConnected() sends NOOP: a session the server dropped is replaced before anything is sent
+            if (isOpen() && !transport.isConnected()) {
+                close();
+            }
+            boolean reused = isOpen();
+            if (!reused) {
+                open();
+            }
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+            } catch (MessagingException e) {
+                boolean beforeData = e instanceof SMTPSendFailedException failed && isEnvelope(failed.getCommand());
+                // Only rejected recipients leave the session usable; any other failure may have broken it
+                if (!(e instanceof SendFailedException) || e instanceof SMTPSendFailedException) {
+                    close();
+                }
+                // After DATA the server may already have the message; a retry could deliver it twice
+                if (!reused || !beforeData) {
+                    throw e;
+                }
+                open();
+                transport.sendMessage(message, message.getAllRecipients());
+            }
+            messages++;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        void open() throws MessagingException {
+            Session session = mailSender.getSession();
+            String protocol = mailSender.getProtocol() != null ? mailSender.getProtocol()
+                : session.getProperty("mail.transport.protocol");
+            Transport opened = session.getTransport(protocol != null ? protocol : "smtp");
+            try {
+                opened.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(),
+                    mailSender.getPassword());
+            } catch (MessagingException e) {
+                connectFailures.increment();
+                throw e;
+            }
+            connects.increment();
+            transport = opened;
+            openedAt = System.currentTimeMillis();
+            lastUsed = openedAt;
+            messages = 0;
+        }
+
+        boolean closeIfIdle() {
+            if (isOpen() && System.currentTimeMillis() - lastUsed > maxIdleMs) {
+                close();
+                return true;
+            }
+            return false;
+        }
+
+        void close() {
+            if (transport == null) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // Already gone; nothing to clean up
+            }
+            transport = null;
+            openedAt = 0;
+        }
+    }
+
+    private static boolean isEnvelope(String command) {
+        return command != null && (command.startsWith("MAIL FROM") || command.startsWith("RCPT TO"));
+    }
+
+    // Null when the mail sender is not a JavaMailSenderImpl; sends then go through it directly
+    private final JavaMailSenderImpl mailSender;
+    private final JavaMailSender fallbackSender;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${email.smtp.pool.size:2}")
+    private int size;
+
+    @Value("${email.smtp.pool.max-messages-per-connection:100}")
+    private int maxMessagesPerConnection;
+
+    @Value("${email.smtp.pool.max-idle-ms:30000}")
+    private long maxIdleMs;
+
+    @Value("${email.smtp.pool.borrow-timeout-ms:10000}")
+    private long borrowTimeoutMs;
+
+    private Connection[] connections;
+    private BlockingQueue<Connection> available;
+    private Counter connects;
+    private Counter connectFailures;
+    private ScheduledExecutorService idleCloser;
+
+    @Autowired
+    public SmtpTransportPool(JavaMailSender mailSender, MeterRegistry meterRegistry) {
+        this.mailSender = mailSender instanceof JavaMailSenderImpl ? (JavaMailSenderImpl) mailSender : null;
+        this.fallbackSender = mailSender;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        connects = Counter.builder("email.smtp.connects")
+            .description("SMTP connections opened (connect, STARTTLS and AUTH)")
+            .register(meterRegistry);
+        connectFailures = Counter.builder("email.smtp.connect.failures")
+            .description("SMTP connection attempts that failed")
+            .register(meterRegistry);
+        connections = new Connection[size];
+        available = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Connection connection = new Connection();
+            connections[i] = connection;
+            available.add(connection);
+            String tag = Integer.toString(i);
+            Gauge.builder("email.smtp.connection.open", connection, c -> c.isOpen() ? 1 : 0)
+                .tag("connection", tag)
+                .description("Whether the connection holds an open SMTP session")
+                .register(meterRegistry);
+            Gauge.builder("email.smtp.connection.messages", connection, c -> c.messages)
+                .tag("connection", tag)
+                .description("Messages sent on the connection's current session")
+                .register(meterRegistry);
+            Gauge.builder("email.smtp.connection.age", connection,
+                    c -> c.openedAt > 0 ? (System.currentTimeMillis() - c.openedAt) / 1000.0 : 0)
+                .tag("connection", tag)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        }
+        idleCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "smtp-idle-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMs = Math.max(1000, maxIdleMs / 2);
+        idleCloser.scheduleWithFixedDelay(this::closeIdle, checkMs, checkMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        idleCloser.shutdownNow();
+        for (Connection connection : connections) {
+            synchronized (connection) {
+                connection.close();
+            }
+        }
+    }
+
+    // Only connections sitting in the pool are checked, so a send is never cut off
+    private void closeIdle() {
+        int closed = 0;
+        for (Connection connection : connections) {
+            if (!available.remove(connection)) {
+                continue;
+            }
+            try {
+                synchronized (connection) {
+                    if (connection.closeIfIdle()) {
+                        closed++;
+                    }
+                }
+            } finally {
+                available.add(connection);
+            }
+        }
+        if (closed > 0) {
+            System.out.println("Closed " + closed + " idle SMTP connection(s)");
+        }
+    }
+
+    /**
+     * Sends message over a pooled connection, waiting up to borrow-timeout-ms for one to be free.
+     */
+    public void send(MimeMessage message) throws MessagingException {
+        if (mailSender == null) {
+            fallbackSender.send(message);
+            return;
+        }
+        Connection connection;
+        try {
+            connection = available.poll(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an SMTP connection");
+        }
+        if (connection == null) {
+            throw new MessagingException("No SMTP connection became free within " + borrowTimeoutMs + " ms");
+        }
+        try {
+            // Set here as JavaMailSenderImpl.send would, so headers are final before the DATA phase
+            if (message.getSentDate() == null) {
+                message.setSentDate(new Date());
+            }
+            message.saveChanges();
+            synchronized (connection) {
+                connection.send(message);
+            }
+        } finally {
+            available.add(connection);
+        }
+    }
+}
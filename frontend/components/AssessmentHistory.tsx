@@ -11,6 +11,13 @@ interface AssessmentHistoryItem {
   recommendation: string
 }
 
+interface AssessmentHistoryPage {
+  items: AssessmentHistoryItem[]
+  nextCursor: string | null
+}
+
+const PAGE_SIZE = 20
+
 interface AssessmentHistoryProps {
   userId: number
   onBack: () => void
@@ -20,6 +27,8 @@ export default function AssessmentHistory({ userId, onBack }: AssessmentHistoryP
   const [history, setHistory] = useState<AssessmentHistoryItem[]>([])
   const [loading, setLoading] = useState(true)
   const [error, setError] = useState<string | null>(null)
+  const [nextCursor, setNextCursor] = useState<string | null>(null)
+  const [loadingMore, setLoadingMore] = useState(false)
 
   useEffect(() => {
     fetchHistory()
@@ -29,8 +38,12 @@ export default function AssessmentHistory({ userId, onBack }: AssessmentHistoryP
     try {
       setLoading(true)
       setError(null)
-      const response = await axios.get(`http://localhost:8080/api/assessment/history/${userId}`)
-      setHistory(response.data)
+      const response = await axios.get<AssessmentHistoryPage>(
+        `http://localhost:8080/api/assessment/history/${userId}/page`,
+        { params: { limit: PAGE_SIZE } }
+      )
+      setHistory(response.data.items)
+      setNextCursor(response.data.nextCursor)
     } catch (err: any) {
       setError(err.response?.data?.message || 'Failed to load assessment history')
     } finally {
@@ -38,6 +51,23 @@ export default function AssessmentHistory({ userId, onBack }: AssessmentHistoryP
     }
   }
 
+  const fetchMore = async () => {
+    if (!nextCursor) return
+    try {
+      setLoadingMore(true)
+      const response = await axios.get<AssessmentHistoryPage>(
+        `http://localhost:8080/api/assessment/history/${userId}/page`,
+        { params: { limit: PAGE_SIZE, cursor: nextCursor } }
+      )
+      setHistory((previous) => [...previous, ...response.data.items])
+      setNextCursor(response.data.nextCursor)
+    } catch (err: any) {
+      setError(err.response?.data?.message || 'Failed to load assessment history')
+    } finally {
+      setLoadingMore(false)
+    }
+  }
+
   const formatDate = (dateString: string) => {
     const date = new Date(dateString)
     return date.toLocaleDateString('en-US', {
@@ -171,6 +201,11 @@ export default function AssessmentHistory({ userId, onBack }: AssessmentHistoryP
               </div>
             </div>
           ))}
+          {nextCursor && (
+            <button className={styles.loadMoreButton} onClick={fetchMore} disabled={loadingMore}>
+              {loadingMore ? 'Loading...' : 'Load older assessments'}
+            </button>
+          )}
         </div>
       )}
     </div>
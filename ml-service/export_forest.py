@@ -0,0 +1,72 @@
+"""
+Export the loaded RandomForest model, scaler and label encoder to a flat JSON
+file that the Java backend can score in-process (ml.predictor=local).
+Usage: python export_forest.py [output_path]
+"""
+import json
+import sys
+
+import numpy as np
+
+import main
+
+FEATURE_NAMES = ['age', 'reaction_time_ms', 'memory_score',
+                 'speech_pause_ms', 'word_repetition_rate',
+                 'task_error_rate', 'sleep_hours']
+
+
+def decode_classes(model, label_encoder):
+    classes = list(model.classes_)
+    if len(classes) > 0 and isinstance(classes[0], (int, np.integer)):
+        if label_encoder is not None:
+            classes = list(label_encoder.inverse_transform(classes))
+        else:
+            classes = [['low', 'medium', 'high'][int(c) % 3] for c in classes]
+    return [str(c).lower() for c in classes]
+
+
+def export_tree(estimator):
+    tree = estimator.tree_
+    # value has shape (n_nodes, n_outputs, n_classes); normalize to class fractions
+    value = tree.value[:, 0, :].astype(np.float64)
+    totals = value.sum(axis=1, keepdims=True)
+    totals[totals == 0] = 1.0
+    value = value / totals
+    return {
+        "feature": tree.feature.tolist(),
+        "threshold": tree.threshold.tolist(),
+        "children_left": tree.children_left.tolist(),
+        "children_right": tree.children_right.tolist(),
+        "value": value.tolist()
+    }
+
+
+def export(output_path):
+    main.load_model_and_preprocessors()
+    model = main.model
+    scaler = main.scaler
+
+    if not hasattr(model, 'estimators_'):
+        raise ValueError(f"Only tree ensembles can be exported. Type: {type(model).__name__}")
+
+    bundle = {
+        "format": "cortexa-forest-v1",
+        "model_version": main.model_version,
+        "n_features": len(FEATURE_NAMES),
+        "feature_names": FEATURE_NAMES,
+        "classes": decode_classes(model, main.label_encoder),
+        "scaler": {
+            "mean": np.asarray(scaler.mean_, dtype=np.float64).tolist(),
+            "scale": np.asarray(scaler.scale_, dtype=np.float64).tolist()
+        },
+        "trees": [export_tree(estimator) for estimator in model.estimators_]
+    }
+
+    with open(output_path, 'w') as f:
+        json.dump(bundle, f)
+
+    print(f"Exported {len(bundle['trees'])} trees to {output_path} (version {bundle['model_version']})")
+
+
+if __name__ == "__main__":
+    export(sys.argv[1] if len(sys.argv) > 1 else "forest_model.json")
@@ -1,9 +1,11 @@
-from fastapi import FastAPI, HTTPException
+from fastapi import FastAPI, HTTPException, Request, Response
 from fastapi.middleware.cors import CORSMiddleware
-from pydantic import BaseModel, Field
+from pydantic import BaseModel, Field, ValidationError
+import hashlib
 import joblib
 import numpy as np
 import os
+import secrets
 from typing import List
 
 app = FastAPI(title="Dementia Risk Assessment ML Service")
@@ -25,9 +27,37 @@ LABEL_ENCODER_PATH = os.path.join(os.path.dirname(__file__), "label_encoder.pkl"
 model = None
 scaler = None
 label_encoder = None
+model_version = "unknown"
+
+MODEL_VERSION_HEADER = "X-Model-Version"
+
+# Differs per process: a dummy model or scaler fitted on random data differs on every start and replica
+PROCESS_TOKEN = secrets.token_hex(4)
+
+def compute_model_version(artifacts, randomized):
+    # Short hash over the model, scaler and label encoder actually in use; clients use it to
+    # invalidate cached predictions. artifacts maps each component to the pickle it was loaded
+    # from, or None for a default; randomized adds the per-process token
+    digest = hashlib.sha256()
+    for name in sorted(artifacts):
+        digest.update(name.encode())
+        path = artifacts[name]
+        if path is None:
+            digest.update(b'default')
+            continue
+        with open(path, 'rb') as f:
+            for chunk in iter(lambda: f.read(65536), b''):
+                digest.update(chunk)
+    version = digest.hexdigest()[:16]
+    if randomized:
+        version += "-" + PROCESS_TOKEN
+    return version
 
 def load_model_and_preprocessors():
-    global model, scaler, label_encoder
+    global model, scaler, label_encoder, model_version
+    # Component name -> pickle it came from (None for a default), for the model version
+    artifacts = {'model': None, 'scaler': None, 'label_encoder': None}
+    randomized = False
     try:
         if os.path.exists(MODEL_PATH):
             try:
@@ -58,6 +88,7 @@ def load_model_and_preprocessors():
                 if not hasattr(model, 'predict'):
                     raise ValueError(f"Loaded object does not have 'predict' method. Type: {type(model)}")
                 
+                artifacts['model'] = MODEL_PATH
                 print(f"Model loaded successfully (type: {type(model).__name__})")
             except Exception as e:
                 print(f"Warning: Error loading model from {MODEL_PATH}: {e}")
@@ -69,6 +100,7 @@ def load_model_and_preprocessors():
                 X_dummy = np.random.rand(100, 7)
                 y_dummy = np.random.choice(['low', 'medium', 'high'], 100)
                 model.fit(X_dummy, y_dummy)
+                randomized = True
         else:
             print(f"Warning: Model file not found at {MODEL_PATH}")
             print("Creating a dummy model for testing...")
@@ -79,10 +111,12 @@ def load_model_and_preprocessors():
             X_dummy = np.random.rand(100, 7)
             y_dummy = np.random.choice(['low', 'medium', 'high'], 100)
             model.fit(X_dummy, y_dummy)
+            randomized = True
         
         if os.path.exists(SCALER_PATH):
             try:
                 scaler = joblib.load(SCALER_PATH)
+                artifacts['scaler'] = SCALER_PATH
                 print("Scaler loaded successfully")
             except Exception as e:
                 print(f"Warning: Error loading scaler from {SCALER_PATH}: {e}")
@@ -91,16 +125,19 @@ def load_model_and_preprocessors():
                 scaler = StandardScaler()
                 # Fit on dummy data
                 scaler.fit(np.random.rand(100, 7))
+                randomized = True
         else:
             print(f"Warning: Scaler file not found at {SCALER_PATH}, using default StandardScaler")
             from sklearn.preprocessing import StandardScaler
             scaler = StandardScaler()
             # Fit on dummy data
             scaler.fit(np.random.rand(100, 7))
+            randomized = True
         
         if os.path.exists(LABEL_ENCODER_PATH):
             try:
                 label_encoder = joblib.load(LABEL_ENCODER_PATH)
+                artifacts['label_encoder'] = LABEL_ENCODER_PATH
                 print("Label encoder loaded successfully")
             except Exception as e:
                 print(f"Warning: Error loading label encoder from {LABEL_ENCODER_PATH}: {e}")
@@ -114,7 +151,8 @@ def load_model_and_preprocessors():
             label_encoder = LabelEncoder()
             label_encoder.fit(['low', 'medium', 'high'])
         
-        print("Model and preprocessors loaded successfully")
+        model_version = compute_model_version(artifacts, randomized)
+        print(f"Model and preprocessors loaded successfully (version {model_version})")
     except Exception as e:
         print(f"Error loading model: {e}")
         print("Please ensure you have the correct versions of numpy and scikit-learn installed.")
@@ -153,77 +191,199 @@ async def health():
         "model_loaded": model is not None,
         "model_type": type(model).__name__ if model is not None else None,
         "model_has_predict": hasattr(model, 'predict') if model is not None else False,
+        "model_version": model_version,
         "scaler_loaded": scaler is not None,
         "label_encoder_loaded": label_encoder is not None
     }
 
-@app.post("/predict", response_model=PredictionResponse)
-async def predict(request: PredictionRequest):
-    try:
-        # Check if model is loaded and valid
-        if model is None:
-            raise HTTPException(status_code=500, detail="Model not loaded")
-        
-        if not hasattr(model, 'predict'):
-            raise HTTPException(status_code=500, detail=f"Model object does not have 'predict' method. Type: {type(model)}")
-        
-        # Prepare feature array in the correct order
-        features = np.array([[
-            request.age,
-            request.reaction_time_ms,
-            request.memory_score,
-            request.speech_pause_ms,
-            request.word_repetition_rate,
-            request.task_error_rate,
-            request.sleep_hours
-        ]])
-        
-        # Scale features
-        if scaler is None:
-            raise HTTPException(status_code=500, detail="Scaler not loaded")
-        features_scaled = scaler.transform(features)
-        
-        # Predict
-        prediction = model.predict(features_scaled)[0]
-        
-        # If prediction is numeric (encoded), decode it
-        if isinstance(prediction, (int, np.integer)):
+class BatchPredictionRequest(BaseModel):
+    items: List[PredictionRequest] = Field(..., min_length=1, max_length=1024, description="Rows to score")
+
+class BatchPredictionResponse(BaseModel):
+    predictions: List[PredictionResponse] = Field(..., description="Risk levels in request order")
+
+RISK_LEVELS = ['low', 'medium', 'high']
+
+def to_feature_matrix(items):
+    # Prepare feature array in the correct order
+    return np.array([[
+        item.age,
+        item.reaction_time_ms,
+        item.memory_score,
+        item.speech_pause_ms,
+        item.word_repetition_rate,
+        item.task_error_rate,
+        item.sleep_hours
+    ] for item in items], dtype=np.float64)
+
+def predict_risk_levels(features):
+    """Scale and score a (n, 7) feature matrix, returning n risk level strings."""
+    # Check if model is loaded and valid
+    if model is None:
+        raise HTTPException(status_code=500, detail="Model not loaded")
+    
+    if not hasattr(model, 'predict'):
+        raise HTTPException(status_code=500, detail=f"Model object does not have 'predict' method. Type: {type(model)}")
+    
+    # Scale features
+    if scaler is None:
+        raise HTTPException(status_code=500, detail="Scaler not loaded")
+    features_scaled = scaler.transform(features)
+    
+    # Predict all rows in one vectorized call
+    predictions = np.asarray(model.predict(features_scaled))
+    
+    # If predictions are numeric (encoded), decode them
+    if np.issubdtype(predictions.dtype, np.integer):
+        try:
             if label_encoder is None:
-                # If no label encoder, map numeric values
-                risk_level = ['low', 'medium', 'high'][prediction % 3]
-            else:
-                try:
-                    risk_level = label_encoder.inverse_transform([prediction])[0]
-                except:
-                    risk_level = ['low', 'medium', 'high'][prediction % 3]
-        else:
-            risk_level = str(prediction).lower()
-        
-        # Ensure risk level is one of the expected values
-        if risk_level not in ['low', 'medium', 'high']:
-            # Fallback logic based on prediction probability or value
-            if hasattr(model, 'predict_proba'):
-                try:
-                    proba = model.predict_proba(features_scaled)[0]
-                    risk_level = ['low', 'medium', 'high'][np.argmax(proba)]
-                except:
-                    risk_level = 'medium'  # Default fallback
-            else:
-                risk_level = 'medium'  # Default fallback
-        
+                raise ValueError("No label encoder")
+            risk_levels = [str(label).lower() for label in label_encoder.inverse_transform(predictions)]
+        except Exception:
+            # If no usable label encoder, map numeric values
+            risk_levels = [RISK_LEVELS[int(p) % 3] for p in predictions]
+    else:
+        risk_levels = [str(p).lower() for p in predictions]
+    
+    # Ensure every risk level is one of the expected values
+    invalid = [i for i, level in enumerate(risk_levels) if level not in RISK_LEVELS]
+    if invalid:
+        # Fallback logic based on prediction probability
+        proba = None
+        if hasattr(model, 'predict_proba'):
+            try:
+                proba = model.predict_proba(features_scaled[invalid])
+            except Exception:
+                proba = None
+        for row, i in enumerate(invalid):
+            risk_levels[i] = RISK_LEVELS[int(np.argmax(proba[row])) % 3] if proba is not None else 'medium'
+    
+    return risk_levels
+
+def prediction_error(e):
+    import traceback
+    error_detail = f"Prediction error: {str(e)}\nType: {type(e).__name__}"
+    if model is not None:
+        error_detail += f"\nModel type: {type(model).__name__}"
+        error_detail += f"\nModel has predict: {hasattr(model, 'predict')}"
+    print(f"Error details: {error_detail}")
+    print(traceback.format_exc())
+    return HTTPException(status_code=500, detail=f"Prediction error: {str(e)}")
+
+# Binary protocol, negotiated by Content-Type on /predict. All integers little-endian.
+# Request:  "CXF1" magic, uint32 row count, then one 56-byte row per assessment:
+#           int32 age, 4 bytes padding, float64 x 6 (feature order as in to_feature_matrix)
+# Response: "CXL1" magic, uint32 row count, then one uint8 per row indexing RISK_LEVELS
+BINARY_CONTENT_TYPE = "application/x-cortexa-features"
+BINARY_RESPONSE_TYPE = "application/x-cortexa-labels"
+BINARY_REQUEST_MAGIC = b"CXF1"
+BINARY_RESPONSE_MAGIC = b"CXL1"
+BINARY_HEADER_SIZE = 8
+BINARY_MAX_ROWS = 1024
+
+BINARY_ROW = np.dtype([
+    ('age', '<i4'),
+    ('pad', '<i4'),
+    ('reaction_time_ms', '<f8'),
+    ('memory_score', '<f8'),
+    ('speech_pause_ms', '<f8'),
+    ('word_repetition_rate', '<f8'),
+    ('task_error_rate', '<f8'),
+    ('sleep_hours', '<f8')
+])
+
+# Same bounds as PredictionRequest: (field, lower, lower inclusive, upper)
+BINARY_BOUNDS = [
+    ('age', 0, True, 120),
+    ('reaction_time_ms', 0, False, None),
+    ('memory_score', 0, True, 100),
+    ('speech_pause_ms', 0, False, None),
+    ('word_repetition_rate', 0, True, 1),
+    ('task_error_rate', 0, True, 1),
+    ('sleep_hours', 0, True, 24)
+]
+
+def decode_binary_features(body):
+    """Decode a binary request frame into a (n, 7) feature matrix without per-row Python work."""
+    if len(body) < BINARY_HEADER_SIZE or body[:4] != BINARY_REQUEST_MAGIC:
+        raise HTTPException(status_code=400, detail="Invalid binary frame header")
+    count = int.from_bytes(body[4:8], 'little')
+    if count < 1 or count > BINARY_MAX_ROWS:
+        raise HTTPException(status_code=422, detail=f"Row count must be between 1 and {BINARY_MAX_ROWS}")
+    if len(body) != BINARY_HEADER_SIZE + count * BINARY_ROW.itemsize:
+        raise HTTPException(status_code=400, detail="Binary frame length does not match row count")
+    
+    rows = np.frombuffer(body, dtype=BINARY_ROW, count=count, offset=BINARY_HEADER_SIZE)
+    for field, lower, inclusive, upper in BINARY_BOUNDS:
+        column = rows[field]
+        bad = (column < lower) if inclusive else (column <= lower)
+        if upper is not None:
+            bad |= column > upper
+        bad |= np.isnan(column) if column.dtype.kind == 'f' else False
+        if bad.any():
+            raise HTTPException(status_code=422, detail=f"{field} out of range in row {int(np.argmax(bad))}")
+    
+    features = np.empty((count, 7), dtype=np.float64)
+    for i, field in enumerate(BINARY_ROW.names[:1] + BINARY_ROW.names[2:]):
+        features[:, i] = rows[field]
+    return features
+
+def encode_binary_labels(risk_levels):
+    codes = np.array([RISK_LEVELS.index(level) for level in risk_levels], dtype=np.uint8)
+    return BINARY_RESPONSE_MAGIC + len(risk_levels).to_bytes(4, 'little') + codes.tobytes()
+
+@app.post("/predict", response_model=PredictionResponse, openapi_extra={
+    "requestBody": {
+        "content": {
+            "application/json": {"schema": PredictionRequest.model_json_schema()},
+            BINARY_CONTENT_TYPE: {"schema": {"type": "string", "format": "binary"}}
+        },
+        "required": True
+    }
+})
+async def predict(request: Request, response: Response):
+    body = await request.body()
+    content_type = request.headers.get("content-type", "").split(";")[0].strip().lower()
+    
+    if content_type == BINARY_CONTENT_TYPE:
+        features = decode_binary_features(body)
+        try:
+            risk_levels = predict_risk_levels(features)
+        except HTTPException:
+            raise
+        except Exception as e:
+            raise prediction_error(e)
+        return Response(content=encode_binary_labels(risk_levels), media_type=BINARY_RESPONSE_TYPE,
+                        headers={MODEL_VERSION_HEADER: model_version})
+    
+    try:
+        item = PredictionRequest.model_validate_json(body)
+    except ValidationError as e:
+        raise HTTPException(status_code=422, detail=e.errors(include_url=False))
+    
+    try:
+        response.headers[MODEL_VERSION_HEADER] = model_version
+        risk_level = predict_risk_levels(to_feature_matrix([item]))[0]
         return PredictionResponse(risk_level=risk_level)
     
     except HTTPException:
         raise
     except Exception as e:
-        import traceback
-        error_detail = f"Prediction error: {str(e)}\nType: {type(e).__name__}"
-        if model is not None:
-            error_detail += f"\nModel type: {type(model).__name__}"
-            error_detail += f"\nModel has predict: {hasattr(model, 'predict')}"
-        print(f"Error details: {error_detail}")
-        print(traceback.format_exc())
-        raise HTTPException(status_code=500, detail=f"Prediction error: {str(e)}")
+        raise prediction_error(e)
+
+@app.post("/predict_batch", response_model=BatchPredictionResponse)
+async def predict_batch(request: BatchPredictionRequest, response: Response):
+    try:
+        response.headers[MODEL_VERSION_HEADER] = model_version
+        risk_levels = predict_risk_levels(to_feature_matrix(request.items))
+        return BatchPredictionResponse(
+            predictions=[PredictionResponse(risk_level=level) for level in risk_levels]
+        )
+    
+    except HTTPException:
+        raise
+    except Exception as e:
+        raise prediction_error(e)
 
 if __name__ == "__main__":
     import uvicorn